@@ -22,6 +22,7 @@ import org.terracotta.context.query.Matchers;
 import org.terracotta.context.query.Query;
 import org.terracotta.statistics.OperationStatistic;
 import org.terracotta.statistics.Time;
+import org.terracotta.statistics.archive.RollupArchive;
 import org.terracotta.statistics.extended.CompoundOperation;
 import org.terracotta.statistics.extended.CompoundOperationImpl;
 import org.terracotta.statistics.extended.CountOperation;
@@ -69,10 +70,20 @@ public class StatisticsRegistry {
   private final int historySize;
   private final long historyInterval;
   private final TimeUnit historyIntervalUnit;
+  private final RollupArchive.Resolution[] historyRollups;
+  private volatile long latencySamples = 0L;
+  private volatile TimeUnit latencySampleUnit = TimeUnit.SECONDS;
   private final List<ExposedStatistic> registrations = new CopyOnWriteArrayList<ExposedStatistic>();
 
   public StatisticsRegistry(Class<? extends OperationType> operationTypeClazz, Object contextObject, ScheduledExecutorService executor, long averageWindowDuration,
                             TimeUnit averageWindowUnit, int historySize, long historyInterval, TimeUnit historyIntervalUnit, long timeToDisable, TimeUnit timeToDisableUnit) {
+    this(operationTypeClazz, contextObject, executor, averageWindowDuration, averageWindowUnit, historySize, historyInterval, historyIntervalUnit,
+        timeToDisable, timeToDisableUnit, new RollupArchive.Resolution[0]);
+  }
+
+  public StatisticsRegistry(Class<? extends OperationType> operationTypeClazz, Object contextObject, ScheduledExecutorService executor, long averageWindowDuration,
+                            TimeUnit averageWindowUnit, int historySize, long historyInterval, TimeUnit historyIntervalUnit, long timeToDisable, TimeUnit timeToDisableUnit,
+                            RollupArchive.Resolution ... historyRollups) {
     if (!operationTypeClazz.isEnum()) {
       throw new IllegalArgumentException("StatisticsRegistry operationTypeClazz must be enum");
     }
@@ -83,6 +94,7 @@ public class StatisticsRegistry {
     this.historySize = historySize;
     this.historyInterval = historyInterval;
     this.historyIntervalUnit = historyIntervalUnit;
+    this.historyRollups = historyRollups.clone();
 
     this.executor = executor;
     this.timeToDisable = timeToDisable;
@@ -138,6 +150,21 @@ public class StatisticsRegistry {
     }
   }
 
+  /**
+   * Sets the latency sampling rate of all operations.
+   *
+   * @param samples the target number of samples, or zero to sample every operation
+   * @param unit    the period the target number of samples is per
+   * @see CompoundOperation#setLatencySampling(long, TimeUnit)
+   */
+  public synchronized void setLatencySampling(long samples, TimeUnit unit) {
+    latencySamples = samples;
+    latencySampleUnit = unit;
+    for (CompoundOperation<?> o : standardOperations.values()) {
+      o.setLatencySampling(samples, unit);
+    }
+  }
+
   public void registerCompoundOperation(String name, Set<String> tags, Map<String, Object> properties, OperationType operationType, Set<?> operations) {
     Result result = getCompoundOperation(operationType).compound((Set) operations);
     ExposedStatistic exposedStatistic = new ExposedStatistic(name, operationType.type(), tags, properties, result);
@@ -174,7 +201,10 @@ public class StatisticsRegistry {
       } else {
         CompoundOperation<?> newOperation = new CompoundOperationImpl(discovered, operationType.type(),
             averageWindowDuration, averageWindowUnit, executor, historySize,
-            historyInterval, historyIntervalUnit);
+            historyInterval, historyIntervalUnit, historyRollups);
+        if (latencySamples != 0L) {
+          newOperation.setLatencySampling(latencySamples, latencySampleUnit);
+        }
         if (standardOperations.replace(operationType, operation, newOperation)) {
           return newOperation;
         } else {
@@ -202,7 +232,7 @@ public class StatisticsRegistry {
       } else {
         CompoundOperationImpl compoundOperation = new CompoundOperationImpl(statistic, t.type(),
             averageWindowDuration, averageWindowUnit, executor, historySize,
-            historyInterval, historyIntervalUnit);
+            historyInterval, historyIntervalUnit, historyRollups);
         standardOperations.put(t, compoundOperation);
       }
     }
@@ -36,6 +36,13 @@ public abstract class AbstractOperationStatistic<T extends Enum<T>> extends Abst
   @ContextAttribute("tags") public final Set<String> tags;
   @ContextAttribute("properties") public final Map<String, Object> properties;
   @ContextAttribute("type") public final Class<T> type;
+
+  /**
+   * Dispatcher for the current set of derived statistics.
+   */
+  volatile OperationDispatcher<T> dispatcher = OperationDispatcher.idle();
+
+  private Time.TimeSource timeSource = Time.GLOBAL;
   
   /**
    * Create an operation statistics for a given operation result type.
@@ -49,7 +56,30 @@ public abstract class AbstractOperationStatistic<T extends Enum<T>> extends Abst
     this.properties = Collections.unmodifiableMap(new HashMap<String, Object>(properties));
     this.type = type;
   }
+
+  @Override
+  public synchronized void addDerivedStatistic(ChainedOperationObserver<? super T> derived) {
+    super.addDerivedStatistic(derived);
+    dispatcher = OperationDispatcher.create(type, timeSource, derivedStatistics);
+  }
+
+  @Override
+  public synchronized void removeDerivedStatistic(ChainedOperationObserver<? super T> derived) {
+    super.removeDerivedStatistic(derived);
+    dispatcher = OperationDispatcher.create(type, timeSource, derivedStatistics);
+  }
   
+  @Override
+  public synchronized void setTimeSource(Time.TimeSource source) {
+    timeSource = source;
+    dispatcher = OperationDispatcher.create(type, timeSource, derivedStatistics);
+  }
+
+  @Override
+  public void flush() {
+    //no-op
+  }
+
   @Override
   public Class<T> type() {
     return type;
@@ -90,11 +120,6 @@ public abstract class AbstractOperationStatistic<T extends Enum<T>> extends Abst
   
   @Override
   public void begin() {
-    if (!derivedStatistics.isEmpty()) {
-      long time = Time.time();
-      for (ChainedOperationObserver<? super T> observer : derivedStatistics) {
-        observer.begin(time);
-      }
-    }
+    dispatcher.begin();
   }
 }
@@ -0,0 +1,271 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.terracotta.statistics.archive.SamplingScheduler;
+import org.terracotta.statistics.util.VicariousThreadLocal;
+
+/**
+ * An operation statistic that buffers parameterless completions in per-thread
+ * buffers.
+ * <p>
+ * Each recording thread counts its completions in a private buffer that no
+ * other thread writes to, so the hot path never contends on a shared cache
+ * line.  A buffer is published to the shared counters, and on to the derived
+ * statistics as a batch, by its owner once it holds {@code maxCount}
+ * completions.  Independently a shared background publisher flushes every
+ * buffer each {@code maxAge}, so completions recorded by threads that then go
+ * idle are still published within {@code maxAge}.  The publisher thread is
+ * started when the first completion is buffered and stops once no buffered
+ * statistics remain reachable.  Readers can publish all buffers synchronously
+ * through {@link #flush()}; {@link #count(Enum)} and the {@code sum} methods
+ * always do so and are therefore exact.
+ * <p>
+ * Completions are only buffered when none of the derived statistics routed
+ * their result also observe {@code begin} calls.  Parameterized, timed and
+ * batched completions are never buffered.  Buffered completions reach the
+ * derived statistics timestamped with the time they are published, which is
+ * at most {@code maxAge} after they completed.
+ *
+ * @param <T> the operation result enum type
+ */
+class BufferedOperationStatistic<T extends Enum<T>> extends GeneralOperationStatistic<T> {
+
+  private final int maxCount;
+  private final long maxAge;
+  private final Time.TimeSource clock;
+  private final AtomicBoolean publishing = new AtomicBoolean();
+
+  private final CopyOnWriteArrayList<ThreadBuffer> buffers = new CopyOnWriteArrayList<ThreadBuffer>();
+  private final ThreadLocal<ThreadBuffer> threadBuffer = new VicariousThreadLocal<ThreadBuffer>() {
+    @Override
+    protected ThreadBuffer initialValue() {
+      ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread(), counts.width());
+      buffers.add(buffer);
+      if (maxAge > 0 && publishing.compareAndSet(false, true)) {
+        StalenessPublisher.register(BufferedOperationStatistic.this);
+      }
+      return buffer;
+    }
+  };
+
+  /**
+   * Create a buffered operation statistic for a given operation result type.
+   *
+   * @param properties a set of context properties
+   * @param type operation result type
+   * @param maxCount maximum number of unpublished completions per thread
+   * @param maxAge maximum age of an unpublished completion
+   * @param unit unit of {@code maxAge}
+   */
+  BufferedOperationStatistic(String name, Set<String> tags, Map<String, ? extends Object> properties, Class<T> type, int maxCount, long maxAge, TimeUnit unit) {
+    this(name, tags, properties, type, maxCount, maxAge, unit, null);
+  }
+
+  /*
+   * A non-null clock additionally has each owning thread check the age of its
+   * buffer on every completion.
+   */
+  BufferedOperationStatistic(String name, Set<String> tags, Map<String, ? extends Object> properties, Class<T> type, int maxCount, long maxAge, TimeUnit unit, Time.TimeSource clock) {
+    super(name, tags, properties, type);
+    if (maxCount <= 0) {
+      throw new IllegalArgumentException("Maximum count must be positive: " + maxCount);
+    }
+    if (maxAge < 0) {
+      throw new IllegalArgumentException("Maximum age must not be negative: " + maxAge);
+    }
+    this.maxAge = unit.toNanos(maxAge);
+    this.maxCount = this.maxAge == 0 ? 1 : maxCount;
+    this.clock = clock;
+  }
+
+  @Override
+  public void end(T result) {
+    if (dispatcher.deferrable(result)) {
+      threadBuffer.get().record(result.ordinal());
+    } else {
+      super.end(result);
+    }
+  }
+
+  @Override
+  public long count(T type) {
+    flush();
+    return super.count(type);
+  }
+
+  @Override
+  public long sum(Set<T> types) {
+    flush();
+    return super.sum(types);
+  }
+
+  @Override
+  public long sum() {
+    flush();
+    return super.sum();
+  }
+
+  @Override
+  public void flush() {
+    for (ThreadBuffer buffer : buffers) {
+      buffer.publish();
+      if (buffer.isOrphaned()) {
+        buffers.remove(buffer);
+      }
+    }
+  }
+
+  /**
+   * A single thread's unpublished completions.
+   * <p>
+   * The recorded totals are only ever written by the owning thread, using
+   * ordered writes, and only ever increase.  Publishing (by any thread)
+   * forwards the difference between the recorded and published totals.
+   */
+  final class ThreadBuffer {
+
+    private final WeakReference<Thread> owner;
+    private final AtomicLongArray recorded;
+    private final long[] published;
+
+    /*
+     * Owner thread only.
+     */
+    private int pending;
+    private long oldest;
+
+    ThreadBuffer(Thread owner, int width) {
+      this.owner = new WeakReference<Thread>(owner);
+      this.recorded = new AtomicLongArray(width);
+      this.published = new long[width];
+    }
+
+    void record(int index) {
+      recorded.lazySet(index, recorded.get(index) + 1);
+      if (++pending >= maxCount) {
+        publish();
+      } else if (clock != null) {
+        long now = clock.time();
+        if (pending == 1) {
+          oldest = now;
+        } else if (now - oldest >= maxAge) {
+          publish();
+        }
+      }
+    }
+
+    void publish() {
+      if (owner.get() == Thread.currentThread()) {
+        pending = 0;
+      }
+      synchronized (this) {
+        long[] batch = null;
+        for (int i = 0; i < published.length; i++) {
+          long delta = recorded.get(i) - published[i];
+          if (delta != 0) {
+            if (batch == null) {
+              batch = new long[published.length];
+            }
+            batch[i] = delta;
+            published[i] += delta;
+            counts.add(i, delta);
+          }
+        }
+        if (batch != null) {
+          dispatcher.endBatch(batch, 0L);
+        }
+      }
+    }
+
+    boolean isOrphaned() {
+      Thread thread = owner.get();
+      return thread == null || !thread.isAlive();
+    }
+  }
+
+  /**
+   * Background publisher shared by all buffered statistics.
+   * <p>
+   * Statistics are flushed once per {@code maxAge}, with statistics of equal
+   * age sharing a single tick.  The executor is created on the first
+   * registration and shut down when the last registered statistic has been
+   * garbage collected.
+   */
+  static final class StalenessPublisher implements SamplingScheduler.Task {
+
+    private static ScheduledExecutorService executor;
+    private static SamplingScheduler scheduler;
+    private static int registered;
+
+    private final WeakReference<BufferedOperationStatistic<?>> statistic;
+    private final long period;
+
+    private StalenessPublisher(BufferedOperationStatistic<?> statistic) {
+      this.statistic = new WeakReference<BufferedOperationStatistic<?>>(statistic);
+      this.period = statistic.maxAge;
+    }
+
+    static synchronized void register(BufferedOperationStatistic<?> statistic) {
+      if (registered++ == 0) {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Buffered Statistic Publisher");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+        scheduler = SamplingScheduler.forExecutor(executor);
+      }
+      scheduler.register(statistic.maxAge, new StalenessPublisher(statistic));
+    }
+
+    static synchronized void unregister(StalenessPublisher publisher) {
+      scheduler.unregister(publisher.period, publisher);
+      if (--registered == 0) {
+        executor.shutdown();
+        executor = null;
+        scheduler = null;
+      }
+    }
+
+    static synchronized boolean running() {
+      return executor != null;
+    }
+
+    @Override
+    public void sample(long timestamp) {
+      BufferedOperationStatistic<?> stat = statistic.get();
+      if (stat == null) {
+        unregister(this);
+      } else {
+        stat.flush();
+      }
+    }
+  }
+}
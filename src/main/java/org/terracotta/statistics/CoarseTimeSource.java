@@ -0,0 +1,132 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A time source that trades precision for cheap reads.
+ * <p>
+ * A daemon ticker thread samples a delegate time source at a fixed resolution
+ * and publishes the result through volatile fields, so that reading the time
+ * is a single volatile load instead of a call to {@link System#nanoTime()}.
+ * Returned times lag the delegate by at most the resolution (plus scheduling
+ * jitter) and share its origin, so coarse and precise times can be compared.
+ * <p>
+ * The ticker thread exits when {@link #stop()} is called or when the source
+ * becomes unreachable.
+ */
+public class CoarseTimeSource implements Time.TimeSource {
+
+  private final Time.TimeSource delegate;
+  private final long resolution;
+
+  private volatile long time;
+  private volatile long absoluteTime;
+  private volatile boolean stopped;
+
+  /**
+   * Creates a coarse view of the {@link Time#GLOBAL global} time source.
+   *
+   * @param resolution tick period
+   * @param unit tick period unit
+   */
+  public CoarseTimeSource(long resolution, TimeUnit unit) {
+    this(Time.GLOBAL, resolution, unit);
+  }
+
+  /**
+   * Creates a coarse view of the given time source.
+   *
+   * @param delegate the precise time source
+   * @param resolution tick period
+   * @param unit tick period unit
+   */
+  public CoarseTimeSource(Time.TimeSource delegate, long resolution, TimeUnit unit) {
+    if (resolution <= 0) {
+      throw new IllegalArgumentException("Resolution must be positive: " + resolution);
+    }
+    this.delegate = delegate;
+    this.resolution = unit.toNanos(resolution);
+    tick();
+    Thread ticker = new Thread(new Ticker(this, this.resolution), "Statistics Coarse Clock [" + this.resolution + "ns]");
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  @Override
+  public long time() {
+    return time;
+  }
+
+  @Override
+  public long absoluteTime() {
+    return absoluteTime;
+  }
+
+  /**
+   * Returns the tick period of this source.
+   *
+   * @param unit the unit to return the period in
+   * @return the tick period
+   */
+  public long resolution(TimeUnit unit) {
+    return unit.convert(resolution, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Stops the ticker thread.
+   * <p>
+   * Once stopped this source returns the last published times forever.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  void tick() {
+    time = delegate.time();
+    absoluteTime = delegate.absoluteTime();
+  }
+
+  /**
+   * Ticker task, only weakly referencing its source.
+   */
+  static class Ticker implements Runnable {
+
+    private final WeakReference<CoarseTimeSource> source;
+    private final long period;
+
+    Ticker(CoarseTimeSource source, long period) {
+      this.source = new WeakReference<CoarseTimeSource>(source);
+      this.period = period;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        LockSupport.parkNanos(period);
+        CoarseTimeSource s = source.get();
+        if (s == null || s.stopped) {
+          return;
+        } else {
+          s.tick();
+        }
+      }
+    }
+  }
+}
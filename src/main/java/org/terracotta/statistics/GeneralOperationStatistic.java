@@ -19,9 +19,8 @@ import java.util.EnumMap;
 import java.util.Map;
 import java.util.Set;
 
-import org.terracotta.statistics.jsr166e.LongAdder;
-import org.terracotta.statistics.observer.OperationObserver;
-import org.terracotta.statistics.observer.ChainedOperationObserver;
+import org.terracotta.statistics.observer.TimedOperationObserver;
+import org.terracotta.statistics.util.StripedCounterBlock;
 
 /**
  * An operation observer that tracks operation result counts and can drive further derived statistics.
@@ -30,7 +29,8 @@ import org.terracotta.statistics.observer.ChainedOperationObserver;
  */
 class GeneralOperationStatistic<T extends Enum<T>> extends AbstractOperationStatistic<T> implements OperationStatistic<T> {
   
-  private final EnumMap<T, LongAdder> counts;
+  final StripedCounterBlock counts;
+  private final TimedObserver timed = new TimedObserver();
   
   /**
    * Create an operation statistics for a given operation result type.
@@ -40,10 +40,7 @@ class GeneralOperationStatistic<T extends Enum<T>> extends AbstractOperationStat
    */
   GeneralOperationStatistic(String name, Set<String> tags, Map<String, ? extends Object> properties, Class<T> type) {
     super(name, tags, properties, type);
-    this.counts = new EnumMap<T, LongAdder>(type);
-    for (T t : type.getEnumConstants()) {
-      counts.put(t, new LongAdder());
-    }
+    this.counts = new StripedCounterBlock(type.getEnumConstants().length);
   }
   
   /**
@@ -54,42 +51,125 @@ class GeneralOperationStatistic<T extends Enum<T>> extends AbstractOperationStat
    */
   @Override
   public long count(T type) {
-    return counts.get(type).sum();
+    return counts.sum(type.ordinal());
   }
 
   @Override
   public long sum(Set<T> types) {
-    long sum = 0;
-    for (T t : types) {
-      sum += counts.get(t).sum();
+    if (types.size() == 1) {
+      return count(types.iterator().next());
+    } else {
+      long[] totals = counts.sums();
+      long sum = 0;
+      for (T t : types) {
+        sum += totals[t.ordinal()];
+      }
+      return sum;
     }
-    return sum;
+  }
+
+  @Override
+  public long sum() {
+    return counts.sum();
   }
   
   @Override
   public void end(T result) {
-    counts.get(result).increment();
-    if (!derivedStatistics.isEmpty()) {
-      long time = Time.time();
-      for (ChainedOperationObserver<? super T> observer : derivedStatistics) {
-        observer.end(time, result);
-      }
-    }
+    counts.increment(result.ordinal());
+    dispatcher.end(result);
   }
   
+  @Override
+  public void end(T result, long parameter) {
+    counts.increment(result.ordinal());
+    dispatcher.end(result, parameter);
+  }
+
+  @Override
+  public void end(T result, long parameter0, long parameter1) {
+    counts.increment(result.ordinal());
+    dispatcher.end(result, parameter0, parameter1);
+  }
+
   @Override
   public void end(T result, long ... parameters) {
-    counts.get(result).increment();
-    if (!derivedStatistics.isEmpty()) {
-      long time = Time.time();
-      for (ChainedOperationObserver<? super T> observer : derivedStatistics) {
-        observer.end(time, result, parameters);
+    counts.increment(result.ordinal());
+    dispatcher.end(result, parameters);
+  }
+
+  @Override
+  public void endBatch(long[] batch, long elapsed) {
+    if (batch.length > counts.width()) {
+      throw new IllegalArgumentException("Batch has " + batch.length + " counts but " + type + " only has " + counts.width() + " results");
+    }
+    for (int i = 0; i < batch.length; i++) {
+      if (batch[i] < 0) {
+        throw new IllegalArgumentException("Negative count " + batch[i] + " for " + type.getEnumConstants()[i]);
       }
     }
+    for (int i = 0; i < batch.length; i++) {
+      long count = batch[i];
+      if (count != 0) {
+        counts.add(i, count);
+      }
+    }
+    dispatcher.endBatch(batch, elapsed);
   }
   
+  @Override
+  public TimedOperationObserver<T> asTimedObserver() {
+    return timed;
+  }
+
   @Override
   public String toString() {
-    return counts.toString();
+    long[] totals = counts.sums();
+    Map<T, Long> snapshot = new EnumMap<T, Long>(type);
+    for (T t : type.getEnumConstants()) {
+      snapshot.put(t, totals[t.ordinal()]);
+    }
+    return snapshot.toString();
+  }
+
+  /**
+   * Token based view of this statistic.
+   * <p>
+   * The token is the operation start time, which is handed to the derived
+   * statistics on completion so that no per-thread state is needed.
+   */
+  class TimedObserver implements TimedOperationObserver<T> {
+
+    @Override
+    public long begin() {
+      return dispatcher.timedBegin();
+    }
+
+    @Override
+    public void end(long token, T result) {
+      counts.increment(result.ordinal());
+      dispatcher.end(token, result);
+    }
+
+    @Override
+    public void end(long token, T result, long parameter) {
+      counts.increment(result.ordinal());
+      dispatcher.end(token, result, parameter);
+    }
+
+    @Override
+    public void end(long token, T result, long parameter0, long parameter1) {
+      counts.increment(result.ordinal());
+      dispatcher.end(token, result, parameter0, parameter1);
+    }
+
+    @Override
+    public void end(long token, T result, long ... parameters) {
+      counts.increment(result.ordinal());
+      dispatcher.end(token, result, parameters);
+    }
+
+    GeneralOperationStatistic<T> statistic() {
+      return GeneralOperationStatistic.this;
+    }
   }
 }
@@ -0,0 +1,544 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.terracotta.statistics.observer.ChainedOperationObserver;
+import org.terracotta.statistics.observer.ClockedObserver;
+import org.terracotta.statistics.observer.StartTimeObserver;
+import org.terracotta.statistics.observer.TargetedOperationObserver;
+import org.terracotta.statistics.observer.TimedOperationObserver;
+import org.terracotta.statistics.util.VicariousThreadLocal;
+
+/**
+ * An immutable dispatcher that forwards operation events to derived statistics.
+ * <p>
+ * A statistic with no derived statistics holds the shared {@link #idle()}
+ * dispatcher whose methods are all empty, so that while no derived statistic
+ * is attached the hot path is the result counter increment plus an inlinable
+ * no-op call.  Attaching or detaching a derived statistic swaps in a freshly
+ * built {@link Routing} dispatcher (or the idle one when the last is removed).
+ *
+ * @param <T> the operation result type
+ */
+abstract class OperationDispatcher<T extends Enum<T>> {
+
+  @SuppressWarnings("rawtypes")
+  private static final OperationDispatcher IDLE = new Idle();
+
+  /**
+   * Returns the shared no-op dispatcher.
+   *
+   * @param <T> the operation result type
+   * @return the idle dispatcher
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends Enum<T>> OperationDispatcher<T> idle() {
+    return IDLE;
+  }
+
+  /**
+   * Returns a dispatcher for the given derived statistics.
+   *
+   * @param <T> the operation result type
+   * @param type the operation result type
+   * @param timeSource the statistic's time source
+   * @param observers the derived statistics
+   * @return a dispatcher
+   */
+  static <T extends Enum<T>> OperationDispatcher<T> create(Class<T> type, Time.TimeSource timeSource, Collection<ChainedOperationObserver<? super T>> observers) {
+    if (observers.isEmpty()) {
+      return idle();
+    } else {
+      return new Routing<T>(type, timeSource, observers);
+    }
+  }
+
+  /**
+   * Dispatches an operation begin.
+   */
+  abstract void begin();
+
+  /**
+   * Returns the token for a timed operation beginning now.
+   * <p>
+   * Tokens are always read from the statistic's own time source.
+   *
+   * @return the start time, or {@link TimedOperationObserver#UNTIMED}
+   */
+  abstract long timedBegin();
+
+  abstract void end(T result);
+
+  abstract void end(T result, long parameter);
+
+  abstract void end(T result, long parameter0, long parameter1);
+
+  abstract void end(T result, long ... parameters);
+
+  abstract void end(long startTime, T result);
+
+  abstract void end(long startTime, T result, long parameter);
+
+  abstract void end(long startTime, T result, long parameter0, long parameter1);
+
+  abstract void end(long startTime, T result, long ... parameters);
+
+  /**
+   * Returns {@code true} if completions with this result may be deferred and
+   * later delivered as part of a batch.
+   * <p>
+   * This is the case when no observer routed this result also receives
+   * {@code begin} calls or start times, since such observers pair each
+   * completion with the beginning of the same operation.
+   *
+   * @param result the operation result
+   * @return {@code true} if completions may be batched
+   */
+  abstract boolean deferrable(T result);
+
+  /**
+   * Dispatches a batch of completions.
+   *
+   * @param counts completion counts indexed by result ordinal
+   * @param elapsed elapsed time of the batch
+   */
+  abstract void endBatch(long[] counts, long elapsed);
+
+  /**
+   * Dispatcher used when no derived statistics are registered.
+   */
+  @SuppressWarnings("rawtypes")
+  static final class Idle extends OperationDispatcher {
+
+    @Override
+    void begin() {
+      //no-op
+    }
+
+    @Override
+    long timedBegin() {
+      return TimedOperationObserver.UNTIMED;
+    }
+
+    @Override
+    void end(Enum result) {
+      //no-op
+    }
+
+    @Override
+    void end(Enum result, long parameter) {
+      //no-op
+    }
+
+    @Override
+    void end(Enum result, long parameter0, long parameter1) {
+      //no-op
+    }
+
+    @Override
+    void end(Enum result, long... parameters) {
+      //no-op
+    }
+
+    @Override
+    void end(long startTime, Enum result) {
+      //no-op
+    }
+
+    @Override
+    void end(long startTime, Enum result, long parameter) {
+      //no-op
+    }
+
+    @Override
+    void end(long startTime, Enum result, long parameter0, long parameter1) {
+      //no-op
+    }
+
+    @Override
+    void end(long startTime, Enum result, long... parameters) {
+      //no-op
+    }
+
+    @Override
+    boolean deferrable(Enum result) {
+      return true;
+    }
+
+    @Override
+    void endBatch(long[] counts, long elapsed) {
+      //no-op
+    }
+  }
+
+  /**
+   * Dispatcher holding per-result routing tables.
+   * <p>
+   * Observers implementing {@link TargetedOperationObserver} are only routed
+   * the calls they declare an interest in, all other observers receive every
+   * call.  Within each table observers are grouped by time source, so that
+   * every source involved in a call is read exactly once.
+   * <p>
+   * If any {@link StartTimeObserver}s are registered the start time of each
+   * operation is captured once per thread on begin, and handed to all of them
+   * on completion.
+   */
+  static final class Routing<T extends Enum<T>> extends OperationDispatcher<T> {
+
+    private final T[] results;
+    private final Time.TimeSource timeSource;
+    private final Route<T> begin;
+    private final Route<T>[] end;
+    private final boolean[] deferrable;
+    private final ThreadLocal<StartTime> startTimes;
+
+    @SuppressWarnings("unchecked")
+    Routing(Class<T> type, Time.TimeSource timeSource, Collection<ChainedOperationObserver<? super T>> observers) {
+      this.results = type.getEnumConstants();
+      this.timeSource = timeSource;
+      int width = results.length;
+      List<ChainedOperationObserver<? super T>> begins = new ArrayList<ChainedOperationObserver<? super T>>();
+      List<ChainedOperationObserver<? super T>> paired = new ArrayList<ChainedOperationObserver<? super T>>();
+      List<List<ChainedOperationObserver<? super T>>> ends = new ArrayList<List<ChainedOperationObserver<? super T>>>(width);
+      for (int i = 0; i < width; i++) {
+        ends.add(new ArrayList<ChainedOperationObserver<? super T>>());
+      }
+      for (ChainedOperationObserver<? super T> observer : observers) {
+        if (observer instanceof TargetedOperationObserver<?>) {
+          TargetedOperationObserver<?> targeted = (TargetedOperationObserver<?>) observer;
+          if (observer instanceof StartTimeObserver<?>) {
+            paired.add(observer);
+          } else if (targeted.requiresBegin()) {
+            begins.add(observer);
+          }
+          for (Enum<?> target : targeted.targets()) {
+            ends.get(target.ordinal()).add(observer);
+          }
+        } else {
+          begins.add(observer);
+          for (List<ChainedOperationObserver<? super T>> end : ends) {
+            end.add(observer);
+          }
+        }
+      }
+
+      this.begin = new Route<T>(timeSource, begins);
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      Route<T>[] routes = new Route[width];
+      this.end = routes;
+      this.deferrable = new boolean[width];
+      paired.addAll(begins);
+      for (int i = 0; i < width; i++) {
+        this.end[i] = new Route<T>(timeSource, ends.get(i));
+        this.deferrable[i] = Collections.disjoint(paired, ends.get(i));
+      }
+      if (paired.size() > begins.size()) {
+        this.startTimes = new VicariousThreadLocal<StartTime>() {
+          @Override
+          protected StartTime initialValue() {
+            return new StartTime();
+          }
+        };
+      } else {
+        this.startTimes = null;
+      }
+    }
+
+    @Override
+    void begin() {
+      Route<T> route = begin;
+      ChainedOperationObserver<? super T>[] observers = route.observers;
+      Time.TimeSource[] sources = route.sources;
+      Time.TimeSource current = null;
+      long time = 0L;
+      if (startTimes != null) {
+        current = timeSource;
+        time = current.time();
+        startTimes.get().time = time;
+      }
+      for (int i = 0; i < observers.length; i++) {
+        if (sources[i] != current) {
+          current = sources[i];
+          time = current.time();
+        }
+        observers[i].begin(time);
+      }
+    }
+
+    @Override
+    long timedBegin() {
+      if (begin.observers.length == 0 && startTimes == null) {
+        return TimedOperationObserver.UNTIMED;
+      } else {
+        return timeSource.time();
+      }
+    }
+
+    @Override
+    void end(T result) {
+      long startTime = startTimes == null ? TimedOperationObserver.UNTIMED : startTimes.get().take();
+      Route<T> route = end[result.ordinal()];
+      ChainedOperationObserver<? super T>[] observers = route.observers;
+      Time.TimeSource[] sources = route.sources;
+      boolean[] timed = route.timed;
+      Time.TimeSource current = null;
+      long time = 0L;
+      for (int i = 0; i < observers.length; i++) {
+        if (sources[i] != current) {
+          current = sources[i];
+          time = current.time();
+        }
+        if (timed[i]) {
+          observers[i].end(time, startTime, result);
+        } else {
+          observers[i].end(time, result);
+        }
+      }
+    }
+
+    @Override
+    void end(T result, long parameter) {
+      long startTime = startTimes == null ? TimedOperationObserver.UNTIMED : startTimes.get().take();
+      Route<T> route = end[result.ordinal()];
+      ChainedOperationObserver<? super T>[] observers = route.observers;
+      Time.TimeSource[] sources = route.sources;
+      boolean[] timed = route.timed;
+      Time.TimeSource current = null;
+      long time = 0L;
+      for (int i = 0; i < observers.length; i++) {
+        if (sources[i] != current) {
+          current = sources[i];
+          time = current.time();
+        }
+        if (timed[i]) {
+          observers[i].end(time, startTime, result, parameter);
+        } else {
+          observers[i].end(time, result, parameter);
+        }
+      }
+    }
+
+    @Override
+    void end(T result, long parameter0, long parameter1) {
+      long startTime = startTimes == null ? TimedOperationObserver.UNTIMED : startTimes.get().take();
+      Route<T> route = end[result.ordinal()];
+      ChainedOperationObserver<? super T>[] observers = route.observers;
+      Time.TimeSource[] sources = route.sources;
+      boolean[] timed = route.timed;
+      Time.TimeSource current = null;
+      long time = 0L;
+      for (int i = 0; i < observers.length; i++) {
+        if (sources[i] != current) {
+          current = sources[i];
+          time = current.time();
+        }
+        if (timed[i]) {
+          observers[i].end(time, startTime, result, parameter0, parameter1);
+        } else {
+          observers[i].end(time, result, parameter0, parameter1);
+        }
+      }
+    }
+
+    @Override
+    void end(T result, long ... parameters) {
+      long startTime = startTimes == null ? TimedOperationObserver.UNTIMED : startTimes.get().take();
+      Route<T> route = end[result.ordinal()];
+      ChainedOperationObserver<? super T>[] observers = route.observers;
+      Time.TimeSource[] sources = route.sources;
+      boolean[] timed = route.timed;
+      Time.TimeSource current = null;
+      long time = 0L;
+      for (int i = 0; i < observers.length; i++) {
+        if (sources[i] != current) {
+          current = sources[i];
+          time = current.time();
+        }
+        if (timed[i]) {
+          observers[i].end(time, startTime, result, parameters);
+        } else {
+          observers[i].end(time, result, parameters);
+        }
+      }
+    }
+
+    @Override
+    void end(long startTime, T result) {
+      Route<T> route = end[result.ordinal()];
+      ChainedOperationObserver<? super T>[] observers = route.observers;
+      Time.TimeSource[] sources = route.sources;
+      Time.TimeSource current = null;
+      long time = 0L;
+      for (int i = 0; i < observers.length; i++) {
+        if (sources[i] != current) {
+          current = sources[i];
+          time = current.time();
+        }
+        observers[i].end(time, startTime, result);
+      }
+    }
+
+    @Override
+    void end(long startTime, T result, long parameter) {
+      Route<T> route = end[result.ordinal()];
+      ChainedOperationObserver<? super T>[] observers = route.observers;
+      Time.TimeSource[] sources = route.sources;
+      Time.TimeSource current = null;
+      long time = 0L;
+      for (int i = 0; i < observers.length; i++) {
+        if (sources[i] != current) {
+          current = sources[i];
+          time = current.time();
+        }
+        observers[i].end(time, startTime, result, parameter);
+      }
+    }
+
+    @Override
+    void end(long startTime, T result, long parameter0, long parameter1) {
+      Route<T> route = end[result.ordinal()];
+      ChainedOperationObserver<? super T>[] observers = route.observers;
+      Time.TimeSource[] sources = route.sources;
+      Time.TimeSource current = null;
+      long time = 0L;
+      for (int i = 0; i < observers.length; i++) {
+        if (sources[i] != current) {
+          current = sources[i];
+          time = current.time();
+        }
+        observers[i].end(time, startTime, result, parameter0, parameter1);
+      }
+    }
+
+    @Override
+    void end(long startTime, T result, long ... parameters) {
+      Route<T> route = end[result.ordinal()];
+      ChainedOperationObserver<? super T>[] observers = route.observers;
+      Time.TimeSource[] sources = route.sources;
+      Time.TimeSource current = null;
+      long time = 0L;
+      for (int i = 0; i < observers.length; i++) {
+        if (sources[i] != current) {
+          current = sources[i];
+          time = current.time();
+        }
+        observers[i].end(time, startTime, result, parameters);
+      }
+    }
+
+    @Override
+    boolean deferrable(T result) {
+      return deferrable[result.ordinal()];
+    }
+
+    /**
+     * Each time source is read at most once for the whole batch, as long as
+     * the routes involved share their source ordering.
+     */
+    @Override
+    void endBatch(long[] counts, long elapsed) {
+      Time.TimeSource current = null;
+      long time = 0L;
+      for (int r = 0; r < counts.length; r++) {
+        long count = counts[r];
+        if (count > 0) {
+          T result = results[r];
+          Route<T> route = end[r];
+          ChainedOperationObserver<? super T>[] observers = route.observers;
+          Time.TimeSource[] sources = route.sources;
+          for (int i = 0; i < observers.length; i++) {
+            if (sources[i] != current) {
+              current = sources[i];
+              time = current.time();
+            }
+            observers[i].endBatch(time, result, count, elapsed);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A set of observers and the time sources their event times come from,
+   * ordered so that observers sharing a source are adjacent.
+   */
+  static final class Route<T extends Enum<T>> {
+
+    final ChainedOperationObserver<? super T>[] observers;
+    final Time.TimeSource[] sources;
+    final boolean[] timed;
+
+    @SuppressWarnings("unchecked")
+    Route(Time.TimeSource defaultSource, List<ChainedOperationObserver<? super T>> members) {
+      Map<Time.TimeSource, List<ChainedOperationObserver<? super T>>> grouped = new LinkedHashMap<Time.TimeSource, List<ChainedOperationObserver<? super T>>>();
+      for (ChainedOperationObserver<? super T> observer : members) {
+        Time.TimeSource source = timeSourceFor(observer, defaultSource);
+        List<ChainedOperationObserver<? super T>> group = grouped.get(source);
+        if (group == null) {
+          group = new ArrayList<ChainedOperationObserver<? super T>>();
+          grouped.put(source, group);
+        }
+        group.add(observer);
+      }
+
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      ChainedOperationObserver<? super T>[] array = new ChainedOperationObserver[members.size()];
+      this.observers = array;
+      this.sources = new Time.TimeSource[members.size()];
+      this.timed = new boolean[members.size()];
+      int i = 0;
+      for (Map.Entry<Time.TimeSource, List<ChainedOperationObserver<? super T>>> e : grouped.entrySet()) {
+        for (ChainedOperationObserver<? super T> observer : e.getValue()) {
+          observers[i] = observer;
+          sources[i] = e.getKey();
+          timed[i] = observer instanceof StartTimeObserver<?>;
+          i++;
+        }
+      }
+    }
+
+    private static Time.TimeSource timeSourceFor(ChainedOperationObserver<?> observer, Time.TimeSource defaultSource) {
+      if (observer instanceof ClockedObserver) {
+        Time.TimeSource source = ((ClockedObserver) observer).timeSource();
+        if (source != null) {
+          return source;
+        }
+      }
+      return defaultSource;
+    }
+  }
+
+  /**
+   * Per-thread start time of the current operation.
+   */
+  static final class StartTime {
+
+    long time = TimedOperationObserver.UNTIMED;
+
+    long take() {
+      long t = time;
+      time = TimedOperationObserver.UNTIMED;
+      return t;
+    }
+  }
+}
@@ -19,6 +19,7 @@ import java.util.Set;
 
 import org.terracotta.statistics.observer.ChainedOperationObserver;
 import org.terracotta.statistics.observer.OperationObserver;
+import org.terracotta.statistics.observer.TimedOperationObserver;
 
 /**
  *
@@ -49,4 +50,32 @@ public interface OperationStatistic<T extends Enum<T>> extends OperationObserver
   public long sum(Set<T> types);
   
   public long sum();
+
+  /**
+   * Return a token based view of this statistic.
+   * <p>
+   * Operations recorded through the returned observer update this statistic
+   * exactly as those recorded directly do, but carry their start time in the
+   * token rather than in thread-local state.
+   *
+   * @return a {@code TimedOperationObserver} view
+   */
+  public TimedOperationObserver<T> asTimedObserver();
+
+  /**
+   * Set the time source used to timestamp events passed to derived statistics.
+   * <p>
+   * Derived statistics implementing {@code ClockedObserver} may override this
+   * with a source of their own.
+   *
+   * @param source the time source
+   */
+  public void setTimeSource(Time.TimeSource source);
+
+  /**
+   * Publish any recordings still buffered by the recording threads.
+   * <p>
+   * Statistics that do not buffer recordings implement this as a no-op.
+   */
+  public void flush();
 }
@@ -0,0 +1,108 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A coarse time source whose ticker only runs while it is in use.
+ * <p>
+ * Users bracket their use of the source with {@link #acquire()} and
+ * {@link #release()}.  The first acquire starts a {@link CoarseTimeSource}
+ * ticking over the delegate, and the last release stops it.  While no user
+ * holds the source, reads fall through to the delegate directly, so an idle
+ * source costs no thread and follows the delegate (including a mocked
+ * {@link Time#GLOBAL global} source) exactly.
+ */
+public class SharedCoarseTimeSource implements Time.TimeSource {
+
+  private final Time.TimeSource delegate;
+  private final long resolution;
+  private final TimeUnit unit;
+
+  private volatile CoarseTimeSource coarse;
+  private int users;
+
+  /**
+   * Creates a shared coarse view of the {@link Time#GLOBAL global} time source.
+   *
+   * @param resolution tick period
+   * @param unit tick period unit
+   */
+  public SharedCoarseTimeSource(long resolution, TimeUnit unit) {
+    this(Time.GLOBAL, resolution, unit);
+  }
+
+  /**
+   * Creates a shared coarse view of the given time source.
+   *
+   * @param delegate the precise time source
+   * @param resolution tick period
+   * @param unit tick period unit
+   */
+  public SharedCoarseTimeSource(Time.TimeSource delegate, long resolution, TimeUnit unit) {
+    if (resolution <= 0) {
+      throw new IllegalArgumentException("Resolution must be positive: " + resolution);
+    }
+    this.delegate = delegate;
+    this.resolution = resolution;
+    this.unit = unit;
+  }
+
+  @Override
+  public long time() {
+    CoarseTimeSource current = coarse;
+    return current == null ? delegate.time() : current.time();
+  }
+
+  @Override
+  public long absoluteTime() {
+    CoarseTimeSource current = coarse;
+    return current == null ? delegate.absoluteTime() : current.absoluteTime();
+  }
+
+  /**
+   * Registers a user, starting the ticker if this is the first.
+   */
+  public synchronized void acquire() {
+    if (users++ == 0) {
+      coarse = new CoarseTimeSource(delegate, resolution, unit);
+    }
+  }
+
+  /**
+   * Deregisters a user, stopping the ticker if this was the last.
+   *
+   * @throws IllegalStateException if there are no users
+   */
+  public synchronized void release() {
+    if (users == 0) {
+      throw new IllegalStateException("Time source is not acquired");
+    } else if (--users == 0) {
+      coarse.stop();
+      coarse = null;
+    }
+  }
+
+  /**
+   * Returns whether the ticker is currently running.
+   *
+   * @return {@code true} if acquired by at least one user
+   */
+  public synchronized boolean ticking() {
+    return coarse != null;
+  }
+}
@@ -16,10 +16,12 @@
 package org.terracotta.statistics;
 
 import org.terracotta.statistics.observer.OperationObserver;
+import org.terracotta.statistics.observer.TimedOperationObserver;
 
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public final class StatisticBuilder {
 
@@ -55,6 +57,15 @@ public final class StatisticBuilder {
     /** The type. */
     private final Class<T> type;
 
+    /** The time source. */
+    private Time.TimeSource timeSource;
+
+    /** The per-thread buffer size, zero if unbuffered. */
+    private int bufferCount;
+
+    /** The per-thread buffer age in nanoseconds. */
+    private long bufferAge;
+
     /**
      * Instantiates a new operation statistic builder.
      *
@@ -65,6 +76,38 @@ public final class StatisticBuilder {
       this.type = type;
     }
 
+    /**
+     * Time source.
+     *
+     * @param source
+     *          the time source derived statistics are timestamped with
+     * @return the operation statistic builder
+     */
+    public OperationStatisticBuilder<T> timeSource(Time.TimeSource source) {
+      this.timeSource = source;
+      return this;
+    }
+
+    /**
+     * Buffered.
+     *
+     * @param maxCount
+     *          the maximum number of unpublished completions per thread
+     * @param maxAge
+     *          the maximum age of an unpublished completion
+     * @param unit
+     *          the unit of {@code maxAge}
+     * @return the operation statistic builder
+     */
+    public OperationStatisticBuilder<T> buffered(int maxCount, long maxAge, TimeUnit unit) {
+      if (maxCount <= 0) {
+        throw new IllegalArgumentException("Maximum count must be positive: " + maxCount);
+      }
+      this.bufferCount = maxCount;
+      this.bufferAge = unit.toNanos(maxAge);
+      return this;
+    }
+
     /**
      * Builds the.
      *
@@ -74,7 +117,33 @@ public final class StatisticBuilder {
       if (context == null || name == null) {
         throw new IllegalStateException();
       } else {
-        return StatisticsManager.createOperationStatistic(context, name, tags, type);
+        OperationObserver<T> observer;
+        if (bufferCount > 0) {
+          observer = StatisticsManager.createBufferedOperationStatistic(context, name, tags, type, bufferCount, bufferAge, TimeUnit.NANOSECONDS);
+        } else {
+          observer = StatisticsManager.createOperationStatistic(context, name, tags, type);
+        }
+        if (timeSource != null) {
+          StatisticsManager.getOperationStatisticFor(observer).setTimeSource(timeSource);
+        }
+        return observer;
+      }
+    }
+
+    /**
+     * Builds a token based observer.
+     *
+     * @return the timed operation observer
+     */
+    public TimedOperationObserver<T> buildTimed() {
+      if (context == null || name == null) {
+        throw new IllegalStateException();
+      } else {
+        TimedOperationObserver<T> observer = StatisticsManager.createTimedOperationStatistic(context, name, tags, type);
+        if (timeSource != null) {
+          StatisticsManager.getOperationStatisticFor(observer).setTimeSource(timeSource);
+        }
+        return observer;
       }
     }
   }
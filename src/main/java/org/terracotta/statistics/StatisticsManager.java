@@ -25,12 +25,14 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import org.terracotta.context.ContextCreationListener;
 import org.terracotta.context.ContextElement;
 import org.terracotta.context.ContextManager;
 import org.terracotta.context.TreeNode;
 import org.terracotta.statistics.observer.OperationObserver;
+import org.terracotta.statistics.observer.TimedOperationObserver;
 
 public class StatisticsManager extends ContextManager {
   
@@ -53,6 +55,26 @@ public class StatisticsManager extends ContextManager {
     return stat;
   }
 
+  public static <T extends Enum<T>> OperationObserver<T> createBufferedOperationStatistic(Object context, String name, Set<String> tags, Class<T> eventTypes, int maxCount, long maxAge, TimeUnit unit) {
+    return createBufferedOperationStatistic(context, name, tags, Collections.<String, Object>emptyMap(), eventTypes, maxCount, maxAge, unit);
+  }
+
+  public static <T extends Enum<T>> OperationObserver<T> createBufferedOperationStatistic(Object context, String name, Set<String> tags, Map<String, ? extends Object> properties, Class<T> resultType, int maxCount, long maxAge, TimeUnit unit) {
+    OperationStatistic<T> stat = new BufferedOperationStatistic<T>(name, tags, properties, resultType, maxCount, maxAge, unit);
+    associate(context).withChild(stat);
+    return stat;
+  }
+
+  public static <T extends Enum<T>> TimedOperationObserver<T> createTimedOperationStatistic(Object context, String name, Set<String> tags, Class<T> eventTypes) {
+    return createTimedOperationStatistic(context, name, tags, Collections.<String, Object>emptyMap(), eventTypes);
+  }
+
+  public static <T extends Enum<T>> TimedOperationObserver<T> createTimedOperationStatistic(Object context, String name, Set<String> tags, Map<String, ? extends Object> properties, Class<T> resultType) {
+    OperationStatistic<T> stat = createOperationStatistic(name, tags, properties, resultType);
+    associate(context).withChild(stat);
+    return stat.asTimedObserver();
+  }
+
   private static <T extends Enum<T>> OperationStatistic<T> createOperationStatistic(String name, Set<String> tags, Map<String, ? extends Object> properties, Class<T> resultType) {
     return new GeneralOperationStatistic<T>(name, tags, properties, resultType);
   }
@@ -71,6 +93,14 @@ public class StatisticsManager extends ContextManager {
     }
   }
   
+  public static <T extends Enum<T>> OperationStatistic<T> getOperationStatisticFor(TimedOperationObserver<T> observer) {
+    if (observer instanceof GeneralOperationStatistic.TimedObserver) {
+      return ((GeneralOperationStatistic<T>.TimedObserver) observer).statistic();
+    } else {
+      return null;
+    }
+  }
+  
   public static <T extends Number> void createPassThroughStatistic(Object context, String name, Set<String> tags, Callable<T> source) {
     createPassThroughStatistic(context, name, tags, Collections.<String, Object>emptyMap(), source);
   }
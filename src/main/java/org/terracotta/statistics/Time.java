@@ -33,6 +33,23 @@ public final class Time {
     }
   };
 
+  /**
+   * A time source that delegates to the framework wide {@link #time()} and
+   * {@link #absoluteTime()} methods.
+   */
+  public static final TimeSource GLOBAL = new TimeSource() {
+
+    @Override
+    public long time() {
+      return Time.time();
+    }
+
+    @Override
+    public long absoluteTime() {
+      return Time.absoluteTime();
+    }
+  };
+
   private Time() {
     //static
   }
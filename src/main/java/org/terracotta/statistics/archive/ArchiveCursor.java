@@ -0,0 +1,77 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+/**
+ * Read position within a statistic archive.
+ * <p>
+ * Passing the same cursor to successive incremental reads of an archive
+ * returns each sample at most once: every read returns only the samples
+ * accepted since the previous one and then advances the cursor.  Samples that
+ * were evicted from the archive before they could be read are counted rather
+ * than returned.
+ * <p>
+ * A cursor tracks a single archive and is not thread-safe.
+ */
+public final class ArchiveCursor {
+
+  private long position;
+  private long missed;
+
+  /**
+   * Creates a cursor positioned before the first sample of an archive.
+   */
+  public ArchiveCursor() {
+    this(0L);
+  }
+
+  ArchiveCursor(long position) {
+    this.position = position;
+  }
+
+  /**
+   * Returns the number of samples accepted by the archive before this cursor.
+   *
+   * @return the cursor position
+   */
+  public long position() {
+    return position;
+  }
+
+  /**
+   * Returns the number of unread samples that were evicted from the archive
+   * before the most recent read could return them.
+   *
+   * @return the samples missed by the last read
+   */
+  public long missed() {
+    return missed;
+  }
+
+  /**
+   * Returns {@code true} if the most recent read missed any samples.
+   *
+   * @return {@code true} if samples were missed
+   */
+  public boolean overwritten() {
+    return missed > 0;
+  }
+
+  void advance(long next, long missed) {
+    this.position = next;
+    this.missed = missed;
+  }
+}
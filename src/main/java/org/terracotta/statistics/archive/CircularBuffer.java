@@ -15,6 +15,7 @@
  */
 package org.terracotta.statistics.archive;
 
+import java.lang.reflect.Array;
 import java.util.Arrays;
 
 /**
@@ -53,4 +54,30 @@ public class CircularBuffer<E> {
       return copy;
     }
   }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Returns the newest {@code count} elements, oldest first.
+   *
+   * @param type the array type to return
+   * @param count the maximum number of elements to return
+   * @return the newest elements
+   */
+  public synchronized <T> T[] toArray(Class<T[]> type, int count) {
+    int length = Math.min(count, size);
+    T[] copy = type.cast(Array.newInstance(type.getComponentType(), length));
+    int start = writeIndex - length;
+    if (start < 0) {
+      start += buffer.length;
+      int head = buffer.length - start;
+      System.arraycopy(buffer, start, copy, 0, head);
+      System.arraycopy(buffer, 0, copy, head, length - head);
+    } else {
+      System.arraycopy(buffer, start, copy, 0, length);
+    }
+    return copy;
+  }
 }
@@ -0,0 +1,690 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A sample archive that stores timestamps and values in parallel primitive
+ * ring arrays.
+ * <p>
+ * Samples are unboxed on arrival, so the archive holds no per-sample objects.
+ * The contents can be read without allocation either by copying into caller
+ * supplied arrays or by visiting each sample with a primitive callback.  The
+ * boxed {@link #getArchive()} view is retained for compatibility with
+ * {@link StatisticArchive}.
+ * <p>
+ * Integral samples are stored as-is, floating point samples as their raw
+ * {@code long} bits.  The encoding is fixed by the type given at construction,
+ * or otherwise by the first non-null sample accepted.  Null samples are
+ * retained in the boxed view but skipped by the primitive reads.  Sample
+ * types other than {@code Long}, {@code Integer}, {@code Double} and
+ * {@code Float} cannot be unboxed losslessly; for those the archive falls
+ * back to storing boxed samples in a {@link StatisticArchive}, with the
+ * primitive reads converting through {@link Number#longValue()} and
+ * {@link Number#doubleValue()}.
+ * <p>
+ * The archive expects a single writer: {@link #accept(Timestamped)} must not
+ * be called concurrently with itself.  Each slot carries the sequence number
+ * of the sample it holds, which the writer invalidates before and publishes
+ * after updating the slot.  Readers take no lock, they validate the sequence
+ * either side of reading a slot and skip samples overwritten underneath them.
+ * Neither side ever waits for the other.  Changes of capacity and clearing
+ * replace the ring wholesale; a sample racing with either may be lost.
+ *
+ * @param <T> the sample type
+ */
+public class PrimitiveStatisticArchive<T extends Number> implements SampleSink<Timestamped<T>> {
+
+  /*
+   * Slot stamp marking a write in progress.
+   */
+  private static final long WRITING = -1L;
+
+  private final AtomicReference<Ring> ring = new AtomicReference<Ring>();
+
+  private volatile int capacity;
+  private volatile Codec codec;
+  private volatile long clearedAt;
+  private volatile StatisticArchive<T> boxed;
+
+  public PrimitiveStatisticArchive(int capacity) {
+    this.capacity = capacity;
+  }
+
+  public PrimitiveStatisticArchive(Class<T> type, int capacity) {
+    this(capacity);
+    this.codec = Codec.forType(type);
+    if (codec == null) {
+      this.boxed = new StatisticArchive<T>(capacity);
+    }
+  }
+
+  public synchronized void setCapacity(int samples) {
+    if (samples != capacity) {
+      capacity = samples;
+      StatisticArchive<T> b = boxed;
+      if (b != null) {
+        b.setCapacity(samples);
+        return;
+      }
+      Ring current = ring.get();
+      if (current != null) {
+        ring.set(current.resize(samples));
+      }
+    }
+  }
+
+  @Override
+  public void accept(Timestamped<T> object) {
+    StatisticArchive<T> b = boxed;
+    if (b != null) {
+      b.accept(object);
+      return;
+    }
+    T sample = object.getSample();
+    Codec c = codec;
+    if (c == null && sample != null) {
+      c = Codec.forType(sample.getClass());
+      if (c == null) {
+        fallback().accept(object);
+        return;
+      }
+      codec = c;
+    }
+    Ring r = ring.get();
+    if (r == null) {
+      r = new Ring(capacity, clearedAt);
+      if (!ring.compareAndSet(null, r)) {
+        r = ring.get();
+        if (r == null) {
+          return;
+        }
+      }
+    }
+    if (sample == null) {
+      r.write(object.getTimestamp(), 0L, true);
+    } else {
+      r.write(object.getTimestamp(), c.encode(sample), false);
+    }
+  }
+
+  /**
+   * Discards all samples.
+   * <p>
+   * Sample positions continue from where they left off, so cursors remain
+   * valid and report the discarded samples as missed.
+   */
+  public synchronized void clear() {
+    StatisticArchive<T> b = boxed;
+    if (b != null) {
+      b.clear();
+      return;
+    }
+    Ring current = ring.get();
+    if (current != null) {
+      clearedAt = current.count;
+      ring.set(null);
+    }
+  }
+
+  /**
+   * Returns the number of samples currently held, including null samples.
+   *
+   * @return the sample count
+   */
+  public int size() {
+    StatisticArchive<T> b = boxed;
+    if (b != null) {
+      return b.getArchive().size();
+    }
+    Ring r = ring.get();
+    return r == null ? 0 : r.size();
+  }
+
+  /**
+   * Copies the newest non-null samples, oldest first, into the supplied arrays.
+   *
+   * @param timestamps destination for the sample timestamps
+   * @param values destination for the sample values
+   * @return the number of samples copied
+   * @throws IllegalStateException if the samples are not integral
+   */
+  public int read(long[] timestamps, long[] values) {
+    checkIntegral();
+    StatisticArchive<T> b = boxed;
+    if (b != null) {
+      return readBoxed(b.getArchive(), timestamps, values, null);
+    }
+    Ring r = ring.get();
+    if (r == null) {
+      return 0;
+    }
+    int limit = Math.min(timestamps.length, values.length);
+    int count = 0;
+    long end = r.count;
+    for (long sequence = r.first(end, limit); sequence < end && count < limit; sequence++) {
+      int index = r.index(sequence);
+      long stamp = r.stamps.get(index);
+      long timestamp = r.timestamps.get(index);
+      long value = r.values.get(index);
+      if (r.stamps.get(index) == stamp && stamp >>> 1 == sequence && (stamp & 1) == 0) {
+        timestamps[count] = timestamp;
+        values[count] = value;
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Copies the newest non-null samples, oldest first, into the supplied arrays.
+   * <p>
+   * Integral samples are widened to {@code double}.
+   *
+   * @param timestamps destination for the sample timestamps
+   * @param values destination for the sample values
+   * @return the number of samples copied
+   */
+  public int read(long[] timestamps, double[] values) {
+    StatisticArchive<T> b = boxed;
+    if (b != null) {
+      return readBoxed(b.getArchive(), timestamps, null, values);
+    }
+    Ring r = ring.get();
+    if (r == null) {
+      return 0;
+    }
+    int limit = Math.min(timestamps.length, values.length);
+    int count = 0;
+    long end = r.count;
+    for (long sequence = r.first(end, limit); sequence < end && count < limit; sequence++) {
+      int index = r.index(sequence);
+      long stamp = r.stamps.get(index);
+      long timestamp = r.timestamps.get(index);
+      long value = r.values.get(index);
+      if (r.stamps.get(index) == stamp && stamp >>> 1 == sequence && (stamp & 1) == 0) {
+        timestamps[count] = timestamp;
+        values[count] = codec.asDouble(value);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Passes each non-null sample, oldest first, to the given visitor.
+   *
+   * @param visitor the sample visitor
+   * @throws IllegalStateException if the samples are not integral
+   */
+  public void visitLongs(LongVisitor visitor) {
+    checkIntegral();
+    StatisticArchive<T> b = boxed;
+    if (b != null) {
+      visitBoxed(b.getArchive(), visitor, null);
+      return;
+    }
+    Ring r = ring.get();
+    if (r != null) {
+      long end = r.count;
+      walk(r, r.oldest(end), end, visitor, null);
+    }
+  }
+
+  /**
+   * Passes each non-null sample, oldest first, to the given visitor.
+   * <p>
+   * Integral samples are widened to {@code double}.
+   *
+   * @param visitor the sample visitor
+   */
+  public void visitDoubles(DoubleVisitor visitor) {
+    StatisticArchive<T> b = boxed;
+    if (b != null) {
+      visitBoxed(b.getArchive(), null, visitor);
+      return;
+    }
+    Ring r = ring.get();
+    if (r != null) {
+      long end = r.count;
+      walk(r, r.oldest(end), end, null, visitor);
+    }
+  }
+
+  /**
+   * Passes each non-null sample accepted since the cursor's last read, oldest
+   * first, to the given visitor and advances the cursor.
+   *
+   * @param cursor the read position
+   * @param visitor the sample visitor
+   * @throws IllegalStateException if the samples are not integral
+   */
+  public void visitLongs(ArchiveCursor cursor, LongVisitor visitor) {
+    checkIntegral();
+    visit(cursor, visitor, null);
+  }
+
+  /**
+   * Passes each non-null sample accepted since the cursor's last read, oldest
+   * first, to the given visitor and advances the cursor.
+   * <p>
+   * Integral samples are widened to {@code double}.
+   *
+   * @param cursor the read position
+   * @param visitor the sample visitor
+   */
+  public void visitDoubles(ArchiveCursor cursor, DoubleVisitor visitor) {
+    visit(cursor, null, visitor);
+  }
+
+  /**
+   * Returns a boxed snapshot of the archive contents, oldest first.
+   *
+   * @return a list of timestamped samples
+   */
+  public List<Timestamped<T>> getArchive() {
+    StatisticArchive<T> b = boxed;
+    if (b != null) {
+      return b.getArchive();
+    }
+    Ring r = ring.get();
+    if (r == null) {
+      return Collections.emptyList();
+    } else {
+      long end = r.count;
+      return snapshot(r, r.oldest(end), end);
+    }
+  }
+
+  /**
+   * Returns a boxed snapshot of the samples accepted since the cursor's last
+   * read, oldest first, and advances the cursor.
+   *
+   * @param cursor the read position
+   * @return a list of timestamped samples
+   */
+  public List<Timestamped<T>> getArchive(ArchiveCursor cursor) {
+    StatisticArchive<T> b = boxed;
+    if (b != null) {
+      return b.getArchive(cursor);
+    }
+    Ring r = ring.get();
+    long end = r == null ? clearedAt : r.count;
+    long start = Math.min(cursor.position(), end);
+    if (r == null) {
+      cursor.advance(end, end - start);
+      return Collections.emptyList();
+    } else {
+      long oldest = Math.max(start, r.oldest(end));
+      List<Timestamped<T>> samples = snapshot(r, oldest, end);
+      cursor.advance(end, oldest - start + (end - oldest - samples.size()));
+      return samples;
+    }
+  }
+
+  private void visit(ArchiveCursor cursor, LongVisitor longs, DoubleVisitor doubles) {
+    StatisticArchive<T> b = boxed;
+    if (b != null) {
+      visitBoxed(b.getArchive(cursor), longs, doubles);
+      return;
+    }
+    Ring r = ring.get();
+    long end = r == null ? clearedAt : r.count;
+    long start = Math.min(cursor.position(), end);
+    if (r == null) {
+      cursor.advance(end, end - start);
+    } else {
+      long oldest = Math.max(start, r.oldest(end));
+      cursor.advance(end, oldest - start + walk(r, oldest, end, longs, doubles));
+    }
+  }
+
+  /*
+   * Visits the consistent non-null samples in [start, end), returning the
+   * number of samples lost to concurrent overwrites.
+   */
+  private long walk(Ring r, long start, long end, LongVisitor longs, DoubleVisitor doubles) {
+    long lost = 0;
+    for (long sequence = start; sequence < end; sequence++) {
+      int index = r.index(sequence);
+      long stamp = r.stamps.get(index);
+      long timestamp = r.timestamps.get(index);
+      long value = r.values.get(index);
+      if (r.stamps.get(index) != stamp || stamp >>> 1 != sequence) {
+        lost++;
+      } else if ((stamp & 1) == 0) {
+        if (longs != null) {
+          longs.visit(timestamp, value);
+        } else {
+          doubles.visit(timestamp, codec.asDouble(value));
+        }
+      }
+    }
+    return lost;
+  }
+
+  /*
+   * Boxed view of the consistent samples in [start, end), including nulls.
+   */
+  private List<Timestamped<T>> snapshot(Ring r, long start, long end) {
+    int length = (int) (end - start);
+    final long[] snapshotTimestamps = new long[length];
+    final long[] snapshotValues = new long[length];
+    final boolean[] snapshotMissing = new boolean[length];
+    final Codec snapshotCodec = codec;
+    int count = 0;
+    for (long sequence = start; sequence < end; sequence++) {
+      int index = r.index(sequence);
+      long stamp = r.stamps.get(index);
+      long timestamp = r.timestamps.get(index);
+      long value = r.values.get(index);
+      if (r.stamps.get(index) == stamp && stamp >>> 1 == sequence) {
+        snapshotTimestamps[count] = timestamp;
+        snapshotValues[count] = value;
+        snapshotMissing[count] = (stamp & 1) == 1;
+        count++;
+      }
+    }
+    if (count == 0) {
+      return Collections.emptyList();
+    }
+    final int size = count;
+    return new AbstractList<Timestamped<T>>() {
+
+      @Override
+      public Timestamped<T> get(int index) {
+        if (index >= size) {
+          throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        @SuppressWarnings("unchecked")
+        T sample = snapshotMissing[index] ? null : (T) snapshotCodec.decode(snapshotValues[index]);
+        return new StatisticSampler.Sample<T>(snapshotTimestamps[index], sample);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /*
+   * Switches to boxed storage, carrying over the (necessarily null) samples
+   * already held.
+   */
+  private synchronized StatisticArchive<T> fallback() {
+    StatisticArchive<T> b = boxed;
+    if (b == null) {
+      b = new StatisticArchive<T>(capacity);
+      for (Timestamped<T> sample : getArchive()) {
+        b.accept(sample);
+      }
+      boxed = b;
+      ring.set(null);
+    }
+    return b;
+  }
+
+  private static int readBoxed(List<? extends Timestamped<? extends Number>> samples, long[] timestamps, long[] longs, double[] doubles) {
+    int limit = Math.min(timestamps.length, longs == null ? doubles.length : longs.length);
+    int first = samples.size();
+    for (int present = 0; first > 0 && present < limit; ) {
+      if (samples.get(--first).getSample() != null) {
+        present++;
+      }
+    }
+    int count = 0;
+    for (int i = first; i < samples.size() && count < limit; i++) {
+      Timestamped<? extends Number> sample = samples.get(i);
+      Number value = sample.getSample();
+      if (value != null) {
+        timestamps[count] = sample.getTimestamp();
+        if (longs == null) {
+          doubles[count] = value.doubleValue();
+        } else {
+          longs[count] = value.longValue();
+        }
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void visitBoxed(List<? extends Timestamped<? extends Number>> samples, LongVisitor longs, DoubleVisitor doubles) {
+    for (Timestamped<? extends Number> sample : samples) {
+      Number value = sample.getSample();
+      if (value == null) {
+        continue;
+      } else if (longs == null) {
+        doubles.visit(sample.getTimestamp(), value.doubleValue());
+      } else {
+        longs.visit(sample.getTimestamp(), value.longValue());
+      }
+    }
+  }
+
+  private void checkIntegral() {
+    Codec c = codec;
+    if (c != null && !c.integral) {
+      throw new IllegalStateException("Archive holds floating point samples");
+    }
+  }
+
+  /**
+   * Callback receiving integral archive samples.
+   */
+  public interface LongVisitor {
+
+    void visit(long timestamp, long value);
+  }
+
+  /**
+   * Callback receiving archive samples as {@code double} values.
+   */
+  public interface DoubleVisitor {
+
+    void visit(long timestamp, double value);
+  }
+
+  /**
+   * The sample ring.
+   * <p>
+   * Sample {@code n} lives in slot {@code n % capacity}, stamped with
+   * {@code n << 1} plus one if the sample was null.  {@code count} is only
+   * written by the single writer, after the slot is published.  Sequence
+   * numbers carry on across ring replacement, {@code start} being the first
+   * sequence this ring can hold.
+   */
+  static final class Ring {
+
+    final int capacity;
+    final long start;
+    final AtomicLongArray stamps;
+    final AtomicLongArray timestamps;
+    final AtomicLongArray values;
+
+    volatile long count;
+
+    Ring(int capacity, long start) {
+      this.capacity = capacity;
+      this.start = start;
+      this.count = start;
+      this.stamps = new AtomicLongArray(capacity);
+      this.timestamps = new AtomicLongArray(capacity);
+      this.values = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++) {
+        stamps.set(i, WRITING);
+      }
+    }
+
+    int index(long sequence) {
+      return (int) (sequence % capacity);
+    }
+
+    int size() {
+      return (int) Math.min(count - start, capacity);
+    }
+
+    /*
+     * Sequence of the oldest sample that can still be held given {@code end}.
+     */
+    long oldest(long end) {
+      return Math.max(start, end - capacity);
+    }
+
+    /*
+     * Sequence of the oldest of the newest {@code limit} non-null samples
+     * before {@code end}.
+     */
+    long first(long end, int limit) {
+      long sequence = end;
+      for (long oldest = oldest(end), present = 0; sequence > oldest && present < limit; ) {
+        long stamp = stamps.get(index(--sequence));
+        if (stamp >>> 1 != sequence) {
+          return sequence + 1;
+        } else if ((stamp & 1) == 0) {
+          present++;
+        }
+      }
+      return sequence;
+    }
+
+    void write(long timestamp, long value, boolean missing) {
+      long sequence = count;
+      put(sequence, timestamp, value, missing);
+      count = sequence + 1;
+    }
+
+    void put(long sequence, long timestamp, long value, boolean missing) {
+      int index = index(sequence);
+      stamps.set(index, WRITING);
+      timestamps.set(index, timestamp);
+      values.set(index, value);
+      stamps.set(index, (sequence << 1) | (missing ? 1 : 0));
+    }
+
+    /*
+     * Copies the newest consistent samples into a new ring, preserving their
+     * sequence numbers.
+     */
+    Ring resize(int newCapacity) {
+      long end = count;
+      long first = Math.max(oldest(end), end - newCapacity);
+      Ring resized = new Ring(newCapacity, first);
+      resized.count = end;
+      for (long sequence = first; sequence < end; sequence++) {
+        int index = index(sequence);
+        long stamp = stamps.get(index);
+        long timestamp = timestamps.get(index);
+        long value = values.get(index);
+        if (stamps.get(index) == stamp && stamp >>> 1 == sequence) {
+          resized.put(sequence, timestamp, value, (stamp & 1) == 1);
+        }
+      }
+      return resized;
+    }
+  }
+
+  enum Codec {
+    LONG(true) {
+      @Override
+      long encode(Number value) {
+        return value.longValue();
+      }
+
+      @Override
+      Number decode(long bits) {
+        return bits;
+      }
+    },
+    INTEGER(true) {
+      @Override
+      long encode(Number value) {
+        return value.intValue();
+      }
+
+      @Override
+      Number decode(long bits) {
+        return (int) bits;
+      }
+    },
+    DOUBLE(false) {
+      @Override
+      long encode(Number value) {
+        return Double.doubleToRawLongBits(value.doubleValue());
+      }
+
+      @Override
+      Number decode(long bits) {
+        return Double.longBitsToDouble(bits);
+      }
+
+      @Override
+      double asDouble(long bits) {
+        return Double.longBitsToDouble(bits);
+      }
+    },
+    FLOAT(false) {
+      @Override
+      long encode(Number value) {
+        return Float.floatToRawIntBits(value.floatValue());
+      }
+
+      @Override
+      Number decode(long bits) {
+        return Float.intBitsToFloat((int) bits);
+      }
+
+      @Override
+      double asDouble(long bits) {
+        return Float.intBitsToFloat((int) bits);
+      }
+    };
+
+    final boolean integral;
+
+    Codec(boolean integral) {
+      this.integral = integral;
+    }
+
+    abstract long encode(Number value);
+
+    abstract Number decode(long bits);
+
+    double asDouble(long bits) {
+      return bits;
+    }
+
+    static Codec forType(Class<?> type) {
+      if (Long.class.equals(type)) {
+        return LONG;
+      } else if (Integer.class.equals(type)) {
+        return INTEGER;
+      } else if (Double.class.equals(type)) {
+        return DOUBLE;
+      } else if (Float.class.equals(type)) {
+        return FLOAT;
+      } else {
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,347 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A multi-resolution sample archive.
+ * <p>
+ * Raw samples are kept in a fixed size {@link PrimitiveStatisticArchive}.
+ * Each configured {@link Resolution} additionally consolidates the samples as
+ * they arrive into fixed period rollups recording the minimum, maximum,
+ * average and last value seen, for example:
+ * <pre>
+ *   new RollupArchive&lt;Long&gt;(300,
+ *       new Resolution(1, TimeUnit.MINUTES, 1440),
+ *       new Resolution(1, TimeUnit.HOURS, 720));
+ * </pre>
+ * keeps 1 second samples for 5 minutes, 1 minute rollups for 24 hours and
+ * 1 hour rollups for 30 days.  Each resolution holds a fixed number of
+ * immutable rollups in a ring, so the footprint of an archive is fixed by its
+ * configuration.  Storage is allocated on the first completed rollup and
+ * released by {@link #clear()}.
+ * <p>
+ * Rollup periods are aligned to multiples of the period since the epoch.
+ * Null and NaN samples are archived raw but do not contribute to any rollup.
+ * Samples arriving after a later period has begun at a resolution are
+ * dropped from that resolution, and counted by {@link #getLateSamples(int)}.
+ * <p>
+ * Like {@link PrimitiveStatisticArchive} the archive expects a single writer,
+ * and neither writer nor readers take a lock.  The partial rollup is
+ * republished as an immutable snapshot on each sample, and readers of the
+ * completed rollups validate each against the sequence the writer is
+ * overwriting, skipping any rollup replaced underneath them.  Clearing
+ * replaces the rollups wholesale; a sample racing with it may be lost.
+ *
+ * @param <T> the sample type
+ */
+public class RollupArchive<T extends Number> implements SampleSink<Timestamped<T>> {
+
+  private final PrimitiveStatisticArchive<T> raw;
+  private final Resolution[] resolutions;
+  private volatile Tier[] tiers;
+
+  public RollupArchive(int rawSamples, Resolution ... resolutions) {
+    this(new PrimitiveStatisticArchive<T>(rawSamples), resolutions);
+  }
+
+  /**
+   * Creates a rollup archive recording its raw samples in to an existing
+   * archive.
+   *
+   * @param raw the raw sample archive
+   * @param resolutions the rollup resolutions
+   */
+  public RollupArchive(PrimitiveStatisticArchive<T> raw, Resolution ... resolutions) {
+    this.raw = raw;
+    this.resolutions = resolutions.clone();
+    this.tiers = createTiers(this.resolutions);
+  }
+
+  private static Tier[] createTiers(Resolution[] resolutions) {
+    Tier[] tiers = new Tier[resolutions.length];
+    for (int i = 0; i < resolutions.length; i++) {
+      tiers[i] = new Tier(resolutions[i]);
+    }
+    return tiers;
+  }
+
+  @Override
+  public void accept(Timestamped<T> object) {
+    raw.accept(object);
+    T sample = object.getSample();
+    if (sample != null) {
+      double value = sample.doubleValue();
+      if (Double.isNaN(value)) {
+        return;
+      }
+      long timestamp = object.getTimestamp();
+      for (Tier tier : tiers) {
+        tier.add(timestamp, value);
+      }
+    }
+  }
+
+  public synchronized void clear() {
+    raw.clear();
+    tiers = createTiers(resolutions);
+  }
+
+  /**
+   * Returns the number of rollup resolutions.
+   *
+   * @return the resolution count
+   */
+  public int resolutions() {
+    return resolutions.length;
+  }
+
+  /**
+   * Returns the raw sample archive.
+   *
+   * @return the raw archive
+   */
+  public PrimitiveStatisticArchive<T> raw() {
+    return raw;
+  }
+
+  /**
+   * Returns the raw samples, oldest first.
+   *
+   * @return a list of timestamped samples
+   */
+  public List<Timestamped<T>> getArchive() {
+    return raw.getArchive();
+  }
+
+  /**
+   * Returns the completed rollups at the given resolution, oldest first.
+   *
+   * @param resolution index of the resolution in construction order
+   * @return a list of rollups
+   */
+  public List<Rollup> getRollups(int resolution) {
+    return tiers[resolution].rollups();
+  }
+
+  /**
+   * Returns the rollup currently being consolidated at the given resolution.
+   *
+   * @param resolution index of the resolution in construction order
+   * @return the partial rollup, or {@code null} if there is none
+   */
+  public Rollup getCurrentRollup(int resolution) {
+    return tiers[resolution].current();
+  }
+
+  /**
+   * Returns the number of samples dropped from the given resolution for
+   * arriving after a later rollup period had begun.
+   *
+   * @param resolution index of the resolution in construction order
+   * @return the late sample count
+   */
+  public long getLateSamples(int resolution) {
+    return tiers[resolution].late();
+  }
+
+  /**
+   * A rollup period and retention.
+   */
+  public static final class Resolution {
+
+    private final long period;
+    private final int rollups;
+
+    /**
+     * Creates a resolution retaining {@code rollups} periods.
+     *
+     * @param period the rollup period
+     * @param unit the period unit
+     * @param rollups the number of rollups retained
+     */
+    public Resolution(long period, TimeUnit unit, int rollups) {
+      this.period = unit.toMillis(period);
+      if (this.period <= 0) {
+        throw new IllegalArgumentException("Rollup period must be at least one millisecond");
+      }
+      if (rollups <= 0) {
+        throw new IllegalArgumentException("Must retain at least one rollup");
+      }
+      this.rollups = rollups;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof Resolution) {
+        Resolution other = (Resolution) obj;
+        return period == other.period && rollups == other.rollups;
+      } else {
+        return false;
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (period ^ (period >>> 32)) * 31 + rollups;
+    }
+  }
+
+  /**
+   * A consolidated summary of the samples within one period.
+   * <p>
+   * The timestamp is the start of the period and the sample value is the
+   * average.
+   */
+  public static final class Rollup implements Timestamped<Double> {
+
+    private final long timestamp;
+    private final long count;
+    private final double minimum;
+    private final double maximum;
+    private final double sum;
+    private final double last;
+
+    Rollup(long timestamp, long count, double minimum, double maximum, double sum, double last) {
+      this.timestamp = timestamp;
+      this.count = count;
+      this.minimum = minimum;
+      this.maximum = maximum;
+      this.sum = sum;
+      this.last = last;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    @Override
+    public Double getSample() {
+      return average();
+    }
+
+    public long count() {
+      return count;
+    }
+
+    public double minimum() {
+      return minimum;
+    }
+
+    public double maximum() {
+      return maximum;
+    }
+
+    public double average() {
+      return sum / count;
+    }
+
+    public double last() {
+      return last;
+    }
+
+    @Override
+    public String toString() {
+      return "[min=" + minimum + ", max=" + maximum + ", avg=" + average() + ", last=" + last + "] @ " + new Date(timestamp);
+    }
+  }
+
+  static final class Tier {
+
+    private final long period;
+    private final int capacity;
+
+    /*
+     * Completed rollups; the writer announces the sequence it is about to
+     * overwrite in writing before storing it, and publishes it in archived.
+     */
+    private volatile AtomicReferenceArray<Rollup> slots;
+    private volatile long writing = -1L;
+    private volatile long archived;
+    private volatile Rollup current;
+    private volatile long late;
+    private long latestStart = Long.MIN_VALUE;
+
+    Tier(Resolution resolution) {
+      this.period = resolution.period;
+      this.capacity = resolution.rollups;
+    }
+
+    void add(long timestamp, double value) {
+      long start = timestamp - (((timestamp % period) + period) % period);
+      if (start < latestStart) {
+        late++;
+        return;
+      }
+      latestStart = start;
+      Rollup partial = current;
+      if (partial != null && start > partial.timestamp) {
+        archive(partial);
+        partial = null;
+      }
+      if (partial == null) {
+        current = new Rollup(start, 1L, value, value, value, value);
+      } else {
+        current = new Rollup(partial.timestamp, partial.count + 1, Math.min(partial.minimum, value),
+            Math.max(partial.maximum, value), partial.sum + value, value);
+      }
+    }
+
+    private void archive(Rollup rollup) {
+      AtomicReferenceArray<Rollup> s = slots;
+      if (s == null) {
+        s = new AtomicReferenceArray<Rollup>(capacity);
+        slots = s;
+      }
+      long sequence = archived;
+      writing = sequence;
+      s.set((int) (sequence % capacity), rollup);
+      archived = sequence + 1;
+    }
+
+    List<Rollup> rollups() {
+      AtomicReferenceArray<Rollup> s = slots;
+      if (s == null) {
+        return Collections.emptyList();
+      }
+      long end = archived;
+      long start = Math.max(0L, end - capacity);
+      List<Rollup> rollups = new ArrayList<Rollup>((int) (end - start));
+      for (long sequence = start; sequence < end; sequence++) {
+        Rollup rollup = s.get((int) (sequence % capacity));
+        if (writing < sequence + capacity) {
+          rollups.add(rollup);
+        }
+      }
+      return Collections.unmodifiableList(rollups);
+    }
+
+    Rollup current() {
+      return current;
+    }
+
+    long late() {
+      return late;
+    }
+  }
+}
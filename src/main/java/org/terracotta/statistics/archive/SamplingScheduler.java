@@ -0,0 +1,143 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.util.Collections.newSetFromMap;
+import static org.terracotta.statistics.Time.absoluteTime;
+
+/**
+ * Drives periodic sampling tasks from a single scheduled tick per period.
+ * <p>
+ * Tasks registered with the same period are grouped, and each group owns one
+ * fixed rate execution on the underlying executor.  On every tick the group
+ * reads the clock once and hands that timestamp to each of its tasks in turn.
+ * Registering and unregistering a task is therefore a set update; an
+ * execution is only scheduled or cancelled when a group is created or
+ * emptied.
+ */
+public class SamplingScheduler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SamplingScheduler.class);
+
+  /*
+   * Schedulers are only weakly referenced since each one strongly references
+   * its executor: the samplers using a scheduler keep it alive.
+   */
+  private static final Map<ScheduledExecutorService, WeakReference<SamplingScheduler>> SCHEDULERS = new WeakHashMap<ScheduledExecutorService, WeakReference<SamplingScheduler>>();
+
+  private final ScheduledExecutorService executor;
+  private final Map<Long, Group> groups = new HashMap<Long, Group>();
+
+  /**
+   * Returns the scheduler shared by all samplers using the given executor.
+   *
+   * @param executor the executor to run the ticks on
+   * @return the shared scheduler
+   */
+  public static SamplingScheduler forExecutor(ScheduledExecutorService executor) {
+    synchronized (SCHEDULERS) {
+      WeakReference<SamplingScheduler> ref = SCHEDULERS.get(executor);
+      SamplingScheduler scheduler = ref == null ? null : ref.get();
+      if (scheduler == null) {
+        scheduler = new SamplingScheduler(executor);
+        SCHEDULERS.put(executor, new WeakReference<SamplingScheduler>(scheduler));
+      }
+      return scheduler;
+    }
+  }
+
+  SamplingScheduler(ScheduledExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Registers a task to be run every {@code period} nanoseconds.
+   *
+   * @param period the sampling period in nanoseconds
+   * @param task the task to run
+   */
+  public synchronized void register(long period, Task task) {
+    Group group = groups.get(period);
+    if (group == null) {
+      group = new Group();
+      group.execution = executor.scheduleAtFixedRate(group, period, period, TimeUnit.NANOSECONDS);
+      groups.put(period, group);
+    }
+    group.tasks.add(task);
+  }
+
+  /**
+   * Unregisters a task previously registered with the given period.
+   *
+   * @param period the sampling period in nanoseconds
+   * @param task the task to remove
+   */
+  public synchronized void unregister(long period, Task task) {
+    Group group = groups.get(period);
+    if (group != null && group.tasks.remove(task) && group.tasks.isEmpty()) {
+      group.execution.cancel(false);
+      groups.remove(period);
+    }
+  }
+
+  synchronized int groupCount() {
+    return groups.size();
+  }
+
+  /**
+   * A periodic task driven by a {@link SamplingScheduler}.
+   */
+  public interface Task {
+
+    /**
+     * Takes a sample.
+     *
+     * @param timestamp the absolute time of this tick in milliseconds
+     */
+    void sample(long timestamp);
+  }
+
+  static class Group implements Runnable {
+
+    final Set<Task> tasks = newSetFromMap(new ConcurrentHashMap<Task, Boolean>());
+    ScheduledFuture<?> execution;
+
+    @Override
+    public void run() {
+      long timestamp = absoluteTime();
+      for (Task task : tasks) {
+        try {
+          task.sample(timestamp);
+        } catch (RuntimeException e) {
+          LOGGER.warn("Sampling task " + task + " failed", e);
+        }
+      }
+    }
+  }
+}
@@ -29,6 +29,7 @@ public class StatisticArchive<T> implements SampleSink<Timestamped<T>> {
 
   private volatile int size;
   private volatile CircularBuffer<Timestamped<T>> buffer;
+  private long accepted;
   
   public StatisticArchive(int size) {
     this(size, DevNull.DEV_NULL);
@@ -58,6 +59,7 @@ public class StatisticArchive<T> implements SampleSink<Timestamped<T>> {
       buffer = new CircularBuffer<Timestamped<T>>(size);
     }
     overspill.accept(buffer.insert(object));
+    accepted++;
   }
 
   public synchronized void clear() {
@@ -72,4 +74,25 @@ public class StatisticArchive<T> implements SampleSink<Timestamped<T>> {
       return Collections.unmodifiableList(Arrays.asList((Timestamped<T>[]) read.toArray(Timestamped[].class)));
     }
   }
+
+  /**
+   * Returns the samples accepted since the cursor's last read, oldest first,
+   * and advances the cursor.
+   *
+   * @param cursor the read position
+   * @return the new samples
+   */
+  public synchronized List<Timestamped<T>> getArchive(ArchiveCursor cursor) {
+    long start = Math.min(cursor.position(), accepted);
+    CircularBuffer<Timestamped<T>> read = buffer;
+    int available = (int) Math.min(accepted - start, read == null ? 0 : read.size());
+    cursor.advance(accepted, accepted - start - available);
+    if (available == 0) {
+      return Collections.emptyList();
+    } else {
+      @SuppressWarnings("unchecked")
+      Timestamped<T>[] samples = (Timestamped<T>[]) read.toArray(Timestamped[].class, available);
+      return Collections.unmodifiableList(Arrays.asList(samples));
+    }
+  }
 }
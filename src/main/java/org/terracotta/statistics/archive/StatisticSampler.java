@@ -18,14 +18,12 @@ package org.terracotta.statistics.archive;
 import java.util.Date;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.terracotta.statistics.ValueStatistic;
 
-import static org.terracotta.statistics.Time.absoluteTime;
-
 /**
  *
  * @author cdennis
@@ -34,9 +32,10 @@ public class StatisticSampler<T extends Number> {
 
   private final boolean exclusiveExecutor;
   private final ScheduledExecutorService executor;
-  private final Runnable task;
+  private final SamplingScheduler scheduler;
+  private final SamplingTask<T> task;
   
-  private ScheduledFuture<?> currentExecution;
+  private boolean running;
   private long period;  
   
   public StatisticSampler(long time, TimeUnit unit, ValueStatistic<T> statistic, SampleSink<? super Timestamped<T>> sink) {
@@ -51,31 +50,35 @@ public class StatisticSampler<T extends Number> {
       this.exclusiveExecutor = false;
       this.executor = executor;
     }
+    this.scheduler = exclusiveExecutor ? new SamplingScheduler(this.executor) : SamplingScheduler.forExecutor(this.executor);
     this.period = unit.toNanos(time);
-    this.task = new SamplingTask(statistic, sink);
+    this.task = new SamplingTask<T>(statistic, sink);
   }
   
   public synchronized void setPeriod(long time, TimeUnit unit) {
-    this.period = unit.toNanos(time);
-    if (currentExecution != null && !currentExecution.isDone()) {
-      stop();
-      start();
+    long newPeriod = unit.toNanos(time);
+    if (running && newPeriod != period) {
+      scheduler.unregister(period, task);
+      scheduler.register(newPeriod, task);
     }
+    this.period = newPeriod;
   }
 
   public synchronized void start() {
-    if (currentExecution == null || currentExecution.isDone()) {
-      currentExecution = executor.scheduleAtFixedRate(task, period, period, TimeUnit.NANOSECONDS);
-    } else {
+    if (running) {
       throw new IllegalStateException("Sampler is already running");
+    } else {
+      scheduler.register(period, task);
+      running = true;
     }
   }
 
   public synchronized void stop() {
-    if (currentExecution == null || currentExecution.isDone()) {
-      throw new IllegalStateException("Sampler is not running");
+    if (running) {
+      scheduler.unregister(period, task);
+      running = false;
     } else {
-      currentExecution.cancel(false);
+      throw new IllegalStateException("Sampler is not running");
     }
   }
   
@@ -90,19 +93,32 @@ public class StatisticSampler<T extends Number> {
     }
   }
   
-  static class SamplingTask<T extends Number> implements Runnable {
+  /**
+   * Sinks such as {@link PrimitiveStatisticArchive} assume a single writer.
+   * A period change or quick restart can move the task to another scheduler
+   * group while the old group is still sampling it, so overlapping samples
+   * are skipped rather than written concurrently.
+   */
+  static class SamplingTask<T extends Number> implements SamplingScheduler.Task {
 
     private final ValueStatistic<T> statistic;
-    private final SampleSink<Timestamped<T>> sink;
+    private final SampleSink<? super Timestamped<T>> sink;
+    private final AtomicBoolean sampling = new AtomicBoolean();
     
-    SamplingTask(ValueStatistic<T> statistic, SampleSink<Timestamped<T>> sink) {
+    SamplingTask(ValueStatistic<T> statistic, SampleSink<? super Timestamped<T>> sink) {
       this.statistic = statistic;
       this.sink = sink;
     }
     
     @Override
-    public void run() {
-      sink.accept(new Sample(absoluteTime(), statistic.value()));
+    public void sample(long timestamp) {
+      if (sampling.compareAndSet(false, true)) {
+        try {
+          sink.accept(new Sample<T>(timestamp, statistic.value()));
+        } finally {
+          sampling.set(false);
+        }
+      }
     }
   }
   
@@ -0,0 +1,351 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.observer.ChainedEventObserver;
+import org.terracotta.statistics.util.VicariousThreadLocal;
+
+/**
+ * Moves event delivery off the calling thread.
+ * <p>
+ * Each producing thread writes primitive event records in to its own
+ * preallocated single-producer ring, so recording an event allocates nothing.
+ * A single consumer thread drains the rings in batches and applies the events
+ * to the target observers.  When a ring is full the event is either dropped
+ * and counted, or the producer waits for space, depending on the
+ * {@link OverflowPolicy}.  Once the pipeline is stopped a full ring always
+ * drops, as nothing will make space.
+ * <p>
+ * Only the first two event parameters are carried through the pipeline.  An
+ * idle consumer backs off to polling ten times a second.  The consumer thread
+ * exits when {@link #stop()} is called or when the pipeline
+ * becomes unreachable.
+ */
+public class AsynchronousEventPipeline {
+
+  /**
+   * What a producer does when its ring is full.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Discard the event, incrementing the dropped count.
+     */
+    DROP,
+    /**
+     * Wait for the consumer to make space.
+     */
+    BLOCK;
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsynchronousEventPipeline.class);
+
+  private static final long MINIMUM_IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long MAXIMUM_IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long BLOCKED_PARK = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private static final int EVENT = 0;
+  private static final int EVENT_1 = 1;
+  private static final int EVENT_2 = 2;
+  private static final int EVENTS = 3;
+
+  private final int capacity;
+  private final OverflowPolicy policy;
+  private final List<Ring> rings = new CopyOnWriteArrayList<Ring>();
+  private final ThreadLocal<Ring> ring = new VicariousThreadLocal<Ring>() {
+    @Override
+    protected Ring initialValue() {
+      Ring created = new Ring(capacity);
+      rings.add(created);
+      return created;
+    }
+  };
+  private final AtomicLong retiredDropped = new AtomicLong();
+  private final Thread consumer;
+
+  private volatile ChainedEventObserver[] targets = new ChainedEventObserver[0];
+  private volatile boolean stopped;
+
+  /**
+   * Creates a pipeline and starts its consumer thread.
+   *
+   * @param capacity per producer ring capacity, rounded up to a power of two
+   * @param policy the overflow policy
+   */
+  public AsynchronousEventPipeline(int capacity, OverflowPolicy policy) {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Illegal capacity: " + capacity);
+    }
+    this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.policy = policy;
+    this.consumer = new Thread(new Consumer(this), "Statistics Event Pipeline");
+    consumer.setDaemon(true);
+    consumer.start();
+  }
+
+  /**
+   * Returns an observer that delivers its events to the target through this
+   * pipeline.
+   *
+   * @param target the target observer
+   * @return an asynchronous view of the target
+   */
+  public synchronized ChainedEventObserver observerFor(ChainedEventObserver target) {
+    ChainedEventObserver[] current = targets;
+    ChainedEventObserver[] expanded = Arrays.copyOf(current, current.length + 1);
+    expanded[current.length] = target;
+    targets = expanded;
+    return new AsynchronousObserver(current.length);
+  }
+
+  /**
+   * Returns the number of events dropped due to ring overflow.
+   *
+   * @return the dropped event count
+   */
+  public long dropped() {
+    long dropped = retiredDropped.get();
+    for (Ring r : rings) {
+      dropped += r.dropped.get();
+    }
+    return dropped;
+  }
+
+  public ValueStatistic<Long> droppedStatistic() {
+    return new ValueStatistic<Long>() {
+      @Override
+      public Long value() {
+        return dropped();
+      }
+    };
+  }
+
+  /**
+   * Applies all events published so far before returning.
+   */
+  public void flush() {
+    drain();
+  }
+
+  /**
+   * Stops the consumer thread.
+   * <p>
+   * Events published after the consumer exits are only applied by an explicit
+   * {@link #flush()}.
+   */
+  public void stop() {
+    stopped = true;
+    LockSupport.unpark(consumer);
+  }
+
+  /*
+   * Drains every ring, returning true if any events were applied.
+   */
+  synchronized boolean drain() {
+    boolean applied = false;
+    for (Ring r : rings) {
+      long tail = r.tail.get();
+      long head = r.head.get();
+      if (head != tail) {
+        //read after head so that targets registered before publication are visible
+        ChainedEventObserver[] observers = targets;
+        long[] slots = r.slots;
+        int mask = r.mask;
+        for (long i = tail; i < head; i++) {
+          int offset = ((int) i & mask) << 2;
+          long header = slots[offset];
+          ChainedEventObserver target = observers[(int) header];
+          try {
+            apply(target, (int) (header >>> 32), slots[offset + 1], slots[offset + 2], slots[offset + 3]);
+          } catch (RuntimeException e) {
+            LOGGER.warn("Asynchronous event delivery to {} failed", target, e);
+          }
+        }
+        r.tail.lazySet(head);
+        applied = true;
+      } else if (r.isOrphaned()) {
+        rings.remove(r);
+        retiredDropped.addAndGet(r.dropped.get());
+      }
+    }
+    return applied;
+  }
+
+  private static void apply(ChainedEventObserver target, int kind, long time, long parameter0, long parameter1) {
+    switch (kind) {
+      case EVENT:
+        target.event(time);
+        break;
+      case EVENT_1:
+        target.event(time, parameter0);
+        break;
+      case EVENT_2:
+        target.event(time, parameter0, parameter1);
+        break;
+      case EVENTS:
+        target.events(time, parameter0);
+        break;
+      default:
+        throw new AssertionError(kind);
+    }
+  }
+
+  void publish(int kind, int target, long time, long parameter0, long parameter1) {
+    ring.get().publish(this, ((long) kind << 32) | target, time, parameter0, parameter1);
+  }
+
+  /**
+   * A single producer, single consumer ring of four long records.
+   */
+  static final class Ring {
+
+    private final WeakReference<Thread> owner = new WeakReference<Thread>(Thread.currentThread());
+    private final long[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private long cachedTail;
+
+    Ring(int capacity) {
+      this.slots = new long[capacity << 2];
+      this.mask = capacity - 1;
+    }
+
+    void publish(AsynchronousEventPipeline pipeline, long header, long time, long parameter0, long parameter1) {
+      long h = head.get();
+      if (h - cachedTail > mask) {
+        cachedTail = tail.get();
+        if (h - cachedTail > mask) {
+          LockSupport.unpark(pipeline.consumer);
+        }
+        while (h - cachedTail > mask) {
+          if (pipeline.policy == OverflowPolicy.DROP || pipeline.stopped) {
+            dropped.lazySet(dropped.get() + 1);
+            return;
+          } else {
+            LockSupport.parkNanos(BLOCKED_PARK);
+            cachedTail = tail.get();
+          }
+        }
+      }
+      int offset = ((int) h & mask) << 2;
+      slots[offset] = header;
+      slots[offset + 1] = time;
+      slots[offset + 2] = parameter0;
+      slots[offset + 3] = parameter1;
+      head.lazySet(h + 1);
+    }
+
+    boolean isOrphaned() {
+      Thread t = owner.get();
+      return t == null || !t.isAlive();
+    }
+  }
+
+  /**
+   * The observer handed to event sources.
+   */
+  final class AsynchronousObserver implements ChainedEventObserver {
+
+    private final int target;
+
+    AsynchronousObserver(int target) {
+      this.target = target;
+    }
+
+    @Override
+    public void event(long time) {
+      publish(EVENT, target, time, 0L, 0L);
+    }
+
+    @Override
+    public void event(long time, long parameter) {
+      publish(EVENT_1, target, time, parameter, 0L);
+    }
+
+    @Override
+    public void event(long time, long parameter0, long parameter1) {
+      publish(EVENT_2, target, time, parameter0, parameter1);
+    }
+
+    @Override
+    public void event(long time, long ... parameters) {
+      switch (parameters.length) {
+        case 0:
+          event(time);
+          break;
+        case 1:
+          event(time, parameters[0]);
+          break;
+        default:
+          event(time, parameters[0], parameters[1]);
+          break;
+      }
+    }
+
+    @Override
+    public void events(long time, long count) {
+      publish(EVENTS, target, time, count, 0L);
+    }
+  }
+
+  /**
+   * Consumer task, only weakly referencing its pipeline.
+   * <p>
+   * While idle the consumer parks for exponentially longer, up to
+   * {@code MAXIMUM_IDLE_PARK}, and returns to the minimum as soon as it finds
+   * events.  Producers that find their ring full, and {@link #stop()}, wake it
+   * early.
+   */
+  static class Consumer implements Runnable {
+
+    private final WeakReference<AsynchronousEventPipeline> pipeline;
+
+    Consumer(AsynchronousEventPipeline pipeline) {
+      this.pipeline = new WeakReference<AsynchronousEventPipeline>(pipeline);
+    }
+
+    @Override
+    public void run() {
+      long idlePark = MINIMUM_IDLE_PARK;
+      while (true) {
+        AsynchronousEventPipeline p = pipeline.get();
+        if (p == null || p.stopped) {
+          return;
+        } else if (p.drain()) {
+          idlePark = MINIMUM_IDLE_PARK;
+        } else {
+          //don't keep the pipeline reachable while parked
+          p = null;
+          LockSupport.parkNanos(idlePark);
+          idlePark = Math.min(idlePark << 1, MAXIMUM_IDLE_PARK);
+        }
+      }
+    }
+  }
+}
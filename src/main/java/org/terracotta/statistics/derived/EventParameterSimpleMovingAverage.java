@@ -17,27 +17,39 @@ package org.terracotta.statistics.derived;
 
 import static org.terracotta.statistics.Time.time;
 
-import java.util.Iterator;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.terracotta.statistics.ValueStatistic;
 import org.terracotta.statistics.jsr166e.LongAdder;
 import org.terracotta.statistics.jsr166e.LongMaxUpdater;
-import org.terracotta.statistics.observer.ChainedEventObserver;
+import org.terracotta.statistics.observer.WeightedEventObserver;
 
 /**
+ * A moving average (with minimum and maximum) of event parameters.
+ * <p>
+ * The window is split in to partitions aligned on multiples of the partition
+ * size.  Partitions are held in a fixed ring of reusable slots indexed by
+ * {@code time / partitionSize}, a slot being lazily reset when an event for a
+ * newer partition lands on it.  Steady state recording therefore allocates
+ * nothing, reads are a scan of the ring, and memory use is constant.
  *
  * @author cdennis
  */
-public class EventParameterSimpleMovingAverage implements ChainedEventObserver {
+public class EventParameterSimpleMovingAverage implements WeightedEventObserver {
 
   private static final int PARTITION_COUNT = 10;
 
-  private final Queue<AveragePartition> archive = new ConcurrentLinkedQueue<AveragePartition>();
-  private final AtomicReference<AveragePartition> activePartition;
+  /*
+   * A window of PARTITION_COUNT partitions can overlap PARTITION_COUNT + 1
+   * aligned partitions, plus one for the partition being recycled.
+   */
+  private static final int SLOT_COUNT = PARTITION_COUNT + 2;
+
+  private static final long RESETTING = Long.MIN_VALUE;
+  private static final long EMPTY = Long.MIN_VALUE + 1;
+
+  private final AveragePartition[] partitions = new AveragePartition[SLOT_COUNT];
   
   private volatile long windowSize;
   private volatile long partitionSize;
@@ -45,12 +57,26 @@ public class EventParameterSimpleMovingAverage implements ChainedEventObserver {
   public EventParameterSimpleMovingAverage(long time, TimeUnit unit) {
     this.windowSize  = unit.toNanos(time);
     this.partitionSize = windowSize / PARTITION_COUNT;
-    this.activePartition = new AtomicReference<AveragePartition>(new AveragePartition(Long.MIN_VALUE, partitionSize));
+    for (int i = 0; i < partitions.length; i++) {
+      partitions[i] = new AveragePartition();
+    }
   }
 
-  public void setWindow(long time, TimeUnit unit) {
+  /**
+   * Changes the window length, discarding all recorded values.
+   * <p>
+   * Slots are aligned to the partition size, so partitions recorded under the
+   * old size cannot be carried over.
+   *
+   * @param time the window length
+   * @param unit the window length unit
+   */
+  public synchronized void setWindow(long time, TimeUnit unit) {
     this.windowSize = unit.toNanos(time);
     this.partitionSize = windowSize / PARTITION_COUNT;
+    for (AveragePartition partition : partitions) {
+      partition.clear();
+    }
   }
 
   public Double value() {
@@ -89,103 +115,159 @@ public class EventParameterSimpleMovingAverage implements ChainedEventObserver {
   public final double average() {
     long startTime = time() - windowSize;
     
-    AveragePartition current = activePartition.get();
-    if (current.isBefore(startTime)) {
+    long total = 0L;
+    long count = 0L;
+    for (AveragePartition partition : partitions) {
+      long start = partition.start();
+      if (partition.within(start, startTime)) {
+        long partitionTotal = partition.total();
+        long partitionCount = partition.count();
+        if (partition.start() == start) {
+          total += partitionTotal;
+          count += partitionCount;
+        }
+      }
+    }
+
+    if (count == 0L) {
       return Double.NaN;
     } else {
-      Average average = new Average();
-      current.aggregate(average);
-
-      for (Iterator<AveragePartition> it = archive.iterator(); it.hasNext(); ) {
-        AveragePartition partition = it.next();
-        if (partition == current) {
-          break;
-        } else if (partition.isBefore(startTime)) {
-          it.remove();
-        } else {
-          partition.aggregate(average);
+      return ((double) total) / count;
+    }
+  }
+  
+  /**
+   * Returns the (weighted) number of events within the window.
+   *
+   * @return the event count
+   */
+  public final long count() {
+    long startTime = time() - windowSize;
+
+    long count = 0L;
+    for (AveragePartition partition : partitions) {
+      long start = partition.start();
+      if (partition.within(start, startTime)) {
+        long partitionCount = partition.count();
+        if (partition.start() == start) {
+          count += partitionCount;
         }
       }
+    }
+    return count;
+  }
 
-      return ((double) average.total) / average.count;
+  /**
+   * Returns the (weighted) sum of the event parameters within the window.
+   *
+   * @return the parameter total
+   */
+  public final long total() {
+    long startTime = time() - windowSize;
+
+    long total = 0L;
+    for (AveragePartition partition : partitions) {
+      long start = partition.start();
+      if (partition.within(start, startTime)) {
+        long partitionTotal = partition.total();
+        if (partition.start() == start) {
+          total += partitionTotal;
+        }
+      }
     }
+    return total;
   }
-  
+
   public final Long maximum() {
     long startTime = time() - windowSize;
     
-    AveragePartition current = activePartition.get();
-    if (current.isBefore(startTime)) {
-      return null;
-    } else {
-      long maximum = current.maximum();
-      for (Iterator<AveragePartition> it = archive.iterator(); it.hasNext(); ) {
-        AveragePartition partition = it.next();
-        if (partition == current) {
-          break;
-        } else if (partition.isBefore(startTime)) {
-          it.remove();
-        } else {
-          maximum = Math.max(maximum, partition.maximum());
+    boolean found = false;
+    long maximum = Long.MIN_VALUE;
+    for (AveragePartition partition : partitions) {
+      long start = partition.start();
+      if (partition.within(start, startTime)) {
+        long partitionMaximum = partition.maximum();
+        if (partition.start() == start && partition.count() > 0) {
+          found = true;
+          maximum = Math.max(maximum, partitionMaximum);
         }
       }
-
-      return maximum;
     }
+    return found ? Long.valueOf(maximum) : null;
   }
   
   public final Long minimum() {
     long startTime = time() - windowSize;
     
-    AveragePartition current = activePartition.get();
-    if (current.isBefore(startTime)) {
-      return null;
-    } else {
-      long minimum = current.minimum();
-      for (Iterator<AveragePartition> it = archive.iterator(); it.hasNext(); ) {
-        AveragePartition partition = it.next();
-        if (partition == current) {
-          break;
-        } else if (partition.isBefore(startTime)) {
-          it.remove();
-        } else {
-          minimum = Math.min(minimum, partition.minimum());
+    boolean found = false;
+    long minimum = Long.MAX_VALUE;
+    for (AveragePartition partition : partitions) {
+      long start = partition.start();
+      if (partition.within(start, startTime)) {
+        long partitionMinimum = partition.minimum();
+        if (partition.start() == start && partition.count() > 0) {
+          found = true;
+          minimum = Math.min(minimum, partitionMinimum);
         }
       }
-
-      return minimum;
     }
+    return found ? Long.valueOf(minimum) : null;
   }
 
   @Override
-  public void event(long time, long ... parameters) {
+  public void event(long time) {
+    throw new IllegalArgumentException("EventParameterSimpleMovingAverage requires an event parameter");
+  }
+
+  @Override
+  public void events(long time, long count) {
+    throw new IllegalArgumentException("EventParameterSimpleMovingAverage requires an event parameter");
+  }
+
+  @Override
+  public void event(long time, long parameter) {
+    weightedEvent(time, parameter, 1L);
+  }
+
+  @Override
+  public void weightedEvent(long time, long parameter, long weight) {
+    long size = Math.max(1L, partitionSize);
+    long epoch = time >= 0 ? time / size : ((time + 1) / size) - 1;
+    long start = epoch * size;
+    int slot = (int) (epoch % SLOT_COUNT);
+    AveragePartition partition = partitions[slot < 0 ? slot + SLOT_COUNT : slot];
     while (true) {
-      AveragePartition partition = activePartition.get();
-      if (partition.targetFor(time)) {
-        partition.event(parameters[0]);
+      long current = partition.start();
+      if (current == start) {
+        partition.event(parameter, weight);
         return;
-      } else {
-        AveragePartition newPartition = new AveragePartition(time, partitionSize);
-        if (activePartition.compareAndSet(partition, newPartition)) {
-          archive(partition);
-          newPartition.event(parameters[0]);
-          return;
-        }
+      } else if (current == RESETTING) {
+        Thread.yield();
+      } else if (current > start) {
+        //slot already recycled for a later partition
+        return;
+      } else if (partition.claim(current)) {
+        partition.reset(start, size);
       }
     }
   }
 
-  private void archive(AveragePartition partition) {
-    archive.add(partition);
-    
-    long startTime = partition.end() - windowSize;
-    for (AveragePartition earliest = archive.peek(); earliest!=null && earliest.isBefore(startTime); earliest = archive.peek()) {
-      if (archive.remove(earliest)) {
-        break;
-      }
-    }
+  @Override
+  public void event(long time, long parameter0, long parameter1) {
+    event(time, parameter0);
   }
-  
+
+  @Override
+  public void event(long time, long ... parameters) {
+    event(time, parameters[0]);
+  }
+
+  /**
+   * A reusable partition slot.
+   * <p>
+   * The start time doubles as the slot state: it is {@code RESETTING} while
+   * the slot is being recycled and {@code EMPTY} before first use.
+   */
   static class AveragePartition {
 
     private final LongAdder total = new LongAdder();
@@ -193,40 +275,56 @@ public class EventParameterSimpleMovingAverage implements ChainedEventObserver {
     private final LongMaxUpdater maximum = new LongMaxUpdater();
     private final LongMaxUpdater minimum = new LongMaxUpdater();
     
-    private final long start;
-    private final long end;
+    private final AtomicLong start = new AtomicLong(EMPTY);
+    private volatile long end;
     
-    public AveragePartition(long start, long length) {
-      this.start = start;
-      this.end = start + length;
+    public long start() {
+      return start.get();
     }
-    
-    public boolean targetFor(long time) {
-      return end > time;
+
+    boolean claim(long expected) {
+      return start.compareAndSet(expected, RESETTING);
     }
-    
-    public boolean isBefore(long time) {
-      return end < time;
+
+    void reset(long newStart, long length) {
+      total.reset();
+      count.reset();
+      maximum.reset();
+      minimum.reset();
+      end = newStart + length;
+      start.set(newStart);
     }
-    
-    public long start() {
-      return start;
+
+    void clear() {
+      start.set(RESETTING);
+      total.reset();
+      count.reset();
+      maximum.reset();
+      minimum.reset();
+      start.set(EMPTY);
     }
-    
-    public long end() {
-      return end;
+
+    /*
+     * True if a partition that started at start is live and ends no earlier
+     * than time.
+     */
+    boolean within(long start, long time) {
+      return start != RESETTING && start != EMPTY && end >= time;
     }
     
-    public void event(long parameter) {
-      total.add(parameter);
-      count.increment();
+    public void event(long parameter, long weight) {
+      total.add(parameter * weight);
+      count.add(weight);
       maximum.update(parameter);
       minimum.update(-parameter);
     }
     
-    public void aggregate(Average average) {
-      average.total += total.sum();
-      average.count += count.sum();
+    public long total() {
+      return total.sum();
+    }
+
+    public long count() {
+      return count.sum();
     }
 
     public long maximum() {
@@ -237,9 +335,4 @@ public class EventParameterSimpleMovingAverage implements ChainedEventObserver {
       return -minimum.max();
     }
   }
-  
-  static class Average {
-    long total;
-    long count;
-  }
 }
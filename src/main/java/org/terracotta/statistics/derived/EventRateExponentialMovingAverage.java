@@ -0,0 +1,223 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.terracotta.statistics.Time;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.jsr166e.LongAdder;
+import org.terracotta.statistics.observer.ChainedEventObserver;
+
+/**
+ * Exponentially weighted moving averages of event rate over a fixed set of
+ * windows.
+ * <p>
+ * Events are counted in a single striped counter shared by all windows.  The
+ * averages are decayed once per tick interval, the tick being applied lazily
+ * by the first event or read that finds the interval has elapsed; missed ticks
+ * are applied in a single step.  Memory use is constant per window.
+ */
+public class EventRateExponentialMovingAverage implements ChainedEventObserver {
+
+  /**
+   * The classic one, five and fifteen minute windows.
+   */
+  public static final long[] DEFAULT_WINDOWS = new long[] {1, 5, 15};
+  public static final TimeUnit DEFAULT_WINDOW_UNIT = TimeUnit.MINUTES;
+  public static final long DEFAULT_TICK_INTERVAL = 5;
+  public static final TimeUnit DEFAULT_TICK_UNIT = TimeUnit.SECONDS;
+
+  private final LongAdder count = new LongAdder();
+  private final Time.TimeSource timeSource;
+  private final long tickInterval;
+  private final long[] windows;
+  private final double[] alphas;
+
+  /*
+   * Rates in events per nanosecond, stored as raw double bits.
+   */
+  private final AtomicLongArray rates;
+
+  private volatile long lastTick;
+  private long lastCount;
+  private boolean initialized;
+
+  /**
+   * Creates one, five and fifteen minute averages ticking every five seconds.
+   *
+   * @param timeSource the time source events are timestamped from
+   */
+  public EventRateExponentialMovingAverage(Time.TimeSource timeSource) {
+    this(timeSource, DEFAULT_TICK_INTERVAL, DEFAULT_TICK_UNIT, DEFAULT_WINDOW_UNIT, DEFAULT_WINDOWS);
+  }
+
+  /**
+   * Creates averages over the given windows.
+   *
+   * @param timeSource the time source events are timestamped from
+   * @param tickInterval the decay interval
+   * @param tickUnit the decay interval unit
+   * @param windowUnit the window unit
+   * @param windows the window lengths
+   */
+  public EventRateExponentialMovingAverage(Time.TimeSource timeSource, long tickInterval, TimeUnit tickUnit, TimeUnit windowUnit, long ... windows) {
+    if (tickInterval <= 0) {
+      throw new IllegalArgumentException("Tick interval must be positive: " + tickInterval);
+    }
+    if (windows.length == 0) {
+      throw new IllegalArgumentException("At least one window is required");
+    }
+    this.timeSource = timeSource;
+    this.tickInterval = tickUnit.toNanos(tickInterval);
+    this.windows = new long[windows.length];
+    this.alphas = new double[windows.length];
+    for (int i = 0; i < windows.length; i++) {
+      long window = windowUnit.toNanos(windows[i]);
+      if (window <= 0) {
+        throw new IllegalArgumentException("Window must be positive: " + windows[i]);
+      }
+      this.windows[i] = window;
+      this.alphas[i] = -Math.expm1(-((double) this.tickInterval) / window);
+    }
+    this.rates = new AtomicLongArray(windows.length);
+    this.lastTick = timeSource.time();
+  }
+
+  /**
+   * Returns the average rate over the given window.
+   *
+   * @param window the window length
+   * @param windowUnit the window unit
+   * @param base the rate unit
+   * @return the rate in events per {@code base}
+   * @throws IllegalArgumentException if the window is not one of those configured
+   */
+  public double rate(long window, TimeUnit windowUnit, TimeUnit base) {
+    return rate(indexOf(windowUnit.toNanos(window)), base);
+  }
+
+  /**
+   * Returns a statistic of the average per second rate over the given window.
+   *
+   * @param window the window length
+   * @param windowUnit the window unit
+   * @return a per second rate statistic
+   * @throws IllegalArgumentException if the window is not one of those configured
+   */
+  public ValueStatistic<Double> rateStatistic(long window, TimeUnit windowUnit) {
+    final int index = indexOf(windowUnit.toNanos(window));
+    return new ValueStatistic<Double>() {
+      @Override
+      public Double value() {
+        return rate(index, TimeUnit.SECONDS);
+      }
+    };
+  }
+
+  /**
+   * Returns {@code true} if the given window is one of those configured.
+   *
+   * @param window the window length
+   * @param windowUnit the window unit
+   * @return {@code true} if the window is averaged
+   */
+  public boolean hasWindow(long window, TimeUnit windowUnit) {
+    long nanos = windowUnit.toNanos(window);
+    for (long w : windows) {
+      if (w == nanos) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private double rate(int index, TimeUnit base) {
+    tickIfNecessary(timeSource.time());
+    return Double.longBitsToDouble(rates.get(index)) * base.toNanos(1);
+  }
+
+  private int indexOf(long window) {
+    for (int i = 0; i < windows.length; i++) {
+      if (windows[i] == window) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("No average over " + window + "ns, windows are " + Arrays.toString(windows) + "ns");
+  }
+
+  @Override
+  public void event(long time) {
+    events(time, 1L);
+  }
+
+  @Override
+  public void event(long time, long parameter) {
+    events(time, 1L);
+  }
+
+  @Override
+  public void event(long time, long parameter0, long parameter1) {
+    events(time, 1L);
+  }
+
+  @Override
+  public void event(long time, long ... parameters) {
+    events(time, 1L);
+  }
+
+  @Override
+  public void events(long time, long count) {
+    tickIfNecessary(time);
+    this.count.add(count);
+  }
+
+  private void tickIfNecessary(long time) {
+    if (time - lastTick >= tickInterval) {
+      tick(time);
+    }
+  }
+
+  private synchronized void tick(long time) {
+    long ticks = (time - lastTick) / tickInterval;
+    if (ticks <= 0) {
+      return;
+    }
+    lastTick += ticks * tickInterval;
+
+    long total = count.sum();
+    double instant = ((double) (total - lastCount)) / tickInterval;
+    lastCount = total;
+
+    for (int i = 0; i < alphas.length; i++) {
+      double alpha = alphas[i];
+      double rate;
+      if (initialized) {
+        rate = Double.longBitsToDouble(rates.get(i));
+        rate += alpha * (instant - rate);
+      } else {
+        rate = instant;
+      }
+      if (ticks > 1) {
+        rate *= Math.pow(1.0 - alpha, ticks - 1);
+      }
+      rates.set(i, Double.doubleToRawLongBits(rate));
+    }
+    initialized = true;
+  }
+}
@@ -15,19 +15,26 @@
  */
 package org.terracotta.statistics.derived;
 
-import static org.terracotta.statistics.Time.time;
-
-import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.terracotta.statistics.Time;
 import org.terracotta.statistics.ValueStatistic;
 import org.terracotta.statistics.jsr166e.LongAdder;
 import org.terracotta.statistics.observer.ChainedEventObserver;
 
 /**
+ * A moving average of event rate.
+ * <p>
+ * Partitions are counted when they are archived, and the archive keeps a
+ * running total of these counts as partitions roll in and out of the window.
+ * A read is then the sum of the active partition plus the archived total.
+ * Events that race with the archiving of their partition are credited to the
+ * total when the latest archived partition is next read, when the following
+ * partition is archived, or at the latest when their partition is evicted.
  *
  * @author cdennis
  */
@@ -37,14 +44,33 @@ public class EventRateSimpleMovingAverage implements ChainedEventObserver, Value
 
   private final Queue<CounterPartition> archive = new ConcurrentLinkedQueue<CounterPartition>();
   private final AtomicReference<CounterPartition> activePartition;
+  private final AtomicLong archivedTotal = new AtomicLong();
+  private volatile CounterPartition latestArchived;
   
+  private final Time.TimeSource timeSource;
+
   private volatile long windowSize;
   private volatile long partitionSize;
   
   public EventRateSimpleMovingAverage(long time, TimeUnit unit) {
+    this(time, unit, Time.GLOBAL);
+  }
+
+  /**
+   * Creates a moving average whose window is read against the given time source.
+   * <p>
+   * Events must be timestamped from the same source, since only partition
+   * level precision is needed a coarse source is sufficient.
+   *
+   * @param time the window length
+   * @param unit the window length unit
+   * @param timeSource the time source
+   */
+  public EventRateSimpleMovingAverage(long time, TimeUnit unit, Time.TimeSource timeSource) {
+    this.timeSource = timeSource;
     this.windowSize  = unit.toNanos(time);
     this.partitionSize = windowSize / PARTITION_COUNT;
-    this.activePartition = new AtomicReference<CounterPartition>(new CounterPartition(time(), partitionSize));
+    this.activePartition = new AtomicReference<CounterPartition>(new CounterPartition(timeSource.time(), partitionSize));
   }
 
   public void setWindow(long time, TimeUnit unit) {
@@ -58,7 +84,7 @@ public class EventRateSimpleMovingAverage implements ChainedEventObserver, Value
   }
   
   public Double rateUsingSeconds() {
-    final long endTime = time();
+    final long endTime = timeSource.time();
     final long startTime = endTime - windowSize;
     
     CounterPartition current = activePartition.get();
@@ -70,16 +96,15 @@ public class EventRateSimpleMovingAverage implements ChainedEventObserver, Value
       count = current.sum();
       actualStartTime = Math.min(actualStartTime, current.start());
     }
-    for (Iterator<CounterPartition> it = archive.iterator(); it.hasNext(); ) {
-      CounterPartition partition = it.next();
-      if (partition == current) {
-        break;
-      } else if (partition.isBefore(startTime)) {
-        it.remove();
-      } else {
-        actualStartTime = Math.min(actualStartTime, partition.start());
-        count += partition.sum();
-      }
+
+    CounterPartition latest = latestArchived;
+    if (latest != null) {
+      credit(latest);
+    }
+    CounterPartition earliest = expire(startTime);
+    if (earliest != null) {
+      actualStartTime = Math.min(actualStartTime, earliest.start());
+      count += archivedTotal.get();
     }
     
     if (count == 0L) {
@@ -93,39 +118,93 @@ public class EventRateSimpleMovingAverage implements ChainedEventObserver, Value
     return rateUsingSeconds() * ((double) base.toNanos(1) / TimeUnit.SECONDS.toNanos(1));
   }
   
+  @Override
+  public void event(long time, long parameter) {
+    event(time);
+  }
+
+  @Override
+  public void event(long time, long parameter0, long parameter1) {
+    event(time);
+  }
+
   @Override
   public void event(long time, long ... parameters) {
+    event(time);
+  }
+
+  @Override
+  public void event(long time) {
+    events(time, 1L);
+  }
+
+  @Override
+  public void events(long time, long count) {
     while (true) {
       CounterPartition partition = activePartition.get();
       if (partition.targetFor(time)) {
-        partition.increment();
+        partition.add(count);
         return;
       } else {
         CounterPartition newPartition = new CounterPartition(time, partitionSize);
         if (activePartition.compareAndSet(partition, newPartition)) {
           archive(partition);
-          newPartition.increment();
+          newPartition.add(count);
           return;
         }
       }
     }
   }
 
+  /*
+   * The partition is queued before it is credited, so a reader never sees its
+   * count in the total without the partition that bounds the window.
+   */
   private void archive(CounterPartition partition) {
     archive.add(partition);
-    
-    long startTime = partition.end() - windowSize;
-    for (CounterPartition earliest = archive.peek(); earliest!=null && earliest.isBefore(startTime); earliest = archive.peek()) {
-         if (archive.remove(earliest)) {
-            break;
-        }
-    } 
+    credit(partition);
+    CounterPartition previous = latestArchived;
+    latestArchived = partition;
+    if (previous != null) {
+      credit(previous);
+    }
+    expire(partition.end() - windowSize);
+  }
+
+  /*
+   * Credits the total with any events added to the partition since it was
+   * last credited.
+   */
+  private void credit(CounterPartition partition) {
+    long uncredited = partition.uncredited();
+    if (uncredited != 0L) {
+      archivedTotal.addAndGet(uncredited);
+    }
+  }
+
+  /*
+   * Evicts the archived partitions that ended before the given time, and
+   * returns the earliest remaining partition.
+   */
+  private CounterPartition expire(long startTime) {
+    for (CounterPartition earliest = archive.peek(); earliest != null; earliest = archive.peek()) {
+      if (!earliest.isBefore(startTime)) {
+        return earliest;
+      } else if (archive.remove(earliest)) {
+        credit(earliest);
+        archivedTotal.addAndGet(-earliest.retire());
+      }
+    }
+    return null;
   }
   
   static class CounterPartition extends LongAdder {
 
+    private static final long RETIRED = Long.MIN_VALUE;
+
     private final long start;
     private final long end;
+    private final AtomicLong credited = new AtomicLong();
     
     CounterPartition(long start, long length) {
       this.start = start;
@@ -147,5 +226,30 @@ public class EventRateSimpleMovingAverage implements ChainedEventObserver, Value
     public long end() {
       return end;
     }
+
+    /**
+     * Marks the events added since the last call as credited, returning their
+     * number.  Nothing is credited once the partition is retired.
+     */
+    long uncredited() {
+      while (true) {
+        long current = credited.get();
+        if (current == RETIRED) {
+          return 0L;
+        }
+        long sum = sum();
+        if (sum == current || credited.compareAndSet(current, sum)) {
+          return sum - current;
+        }
+      }
+    }
+
+    /**
+     * Retires the partition, returning the number of events ever credited.
+     */
+    long retire() {
+      long last = credited.getAndSet(RETIRED);
+      return last == RETIRED ? 0L : last;
+    }
   }
 }
@@ -0,0 +1,136 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import org.terracotta.statistics.jsr166e.ThreadLocalRandom;
+import org.terracotta.statistics.util.VicariousThreadLocal;
+
+/**
+ * A sampler driven by a per-thread countdown.
+ * <p>
+ * Rather than drawing a random number per operation, each thread draws the
+ * number of operations until its next sample from the geometric distribution
+ * of the current probability.  Deciding is then a single decrement, and a
+ * random number is only drawn when a sample is taken.  The expected sampling
+ * rate is the same as independent per-operation draws.
+ * <p>
+ * Each countdown is stamped with the probability it was drawn under, and is
+ * redrawn on the thread's next decision after the probability changes.  Every
+ * sample is therefore taken at the probability current when it was decided,
+ * which {@link #sampleProbability()} reports to callers that weight samples.
+ */
+public class GeometricSampler implements Sampler {
+
+  private final ThreadLocal<Countdown> countdown = new VicariousThreadLocal<Countdown>() {
+    @Override
+    protected Countdown initialValue() {
+      return new Countdown();
+    }
+  };
+
+  private volatile Probability probability;
+
+  /**
+   * Creates a sampler of the given probability.
+   *
+   * @param probability the sampling probability, from 0 to 1
+   */
+  public GeometricSampler(double probability) {
+    setProbability(probability);
+  }
+
+  /**
+   * Changes the sampling probability.
+   *
+   * @param probability the sampling probability, from 0 to 1
+   */
+  public void setProbability(double probability) {
+    if (probability > 1.0 || probability < 0.0 || Double.isNaN(probability)) {
+      throw new IllegalArgumentException("Illegal probability: " + probability);
+    }
+    this.probability = new Probability(probability);
+  }
+
+  @Override
+  public double probability() {
+    return probability.value;
+  }
+
+  @Override
+  public boolean sample() {
+    return sampleProbability() != 0.0;
+  }
+
+  /**
+   * Decides whether the current operation is sampled, returning the
+   * probability the decision was made at.
+   *
+   * @return the sampling probability if sampled, otherwise zero
+   */
+  public double sampleProbability() {
+    Probability current = probability;
+    double p = current.value;
+    if (p == 1.0 || p == 0.0) {
+      return p;
+    } else {
+      Countdown c = countdown.get();
+      if (c.probability != current) {
+        c.probability = current;
+        c.remaining = skip(p);
+      }
+      if (--c.remaining > 0) {
+        return 0.0;
+      } else {
+        c.remaining = skip(p);
+        return p;
+      }
+    }
+  }
+
+  /*
+   * Number of operations up to and including the next sampled one.
+   */
+  static long skip(double p) {
+    if (p >= 1.0) {
+      return 1L;
+    } else if (p <= 0.0) {
+      return Long.MAX_VALUE;
+    } else {
+      double u = 1.0 - ThreadLocalRandom.current().nextDouble();
+      double skip = Math.floor(Math.log(u) / Math.log1p(-p)) + 1.0;
+      return skip >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) skip;
+    }
+  }
+
+  /**
+   * A probability setting, compared by identity to detect changes.
+   */
+  static final class Probability {
+    final double value;
+
+    Probability(double value) {
+      this.value = value;
+    }
+  }
+
+  /**
+   * Per-thread countdown holder.
+   */
+  static final class Countdown {
+    Probability probability;
+    long remaining;
+  }
+}
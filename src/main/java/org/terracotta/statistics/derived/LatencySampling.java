@@ -15,69 +15,277 @@
  */
 package org.terracotta.statistics.derived;
 
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terracotta.statistics.AbstractSourceStatistic;
-import org.terracotta.statistics.jsr166e.ThreadLocalRandom;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.jsr166e.LongAdder;
 import org.terracotta.statistics.observer.ChainedEventObserver;
-import org.terracotta.statistics.observer.ChainedOperationObserver;
+import org.terracotta.statistics.observer.StartTimeObserver;
+import org.terracotta.statistics.observer.TimedOperationObserver;
+import org.terracotta.statistics.observer.WeightedEventObserver;
+import org.terracotta.statistics.util.VicariousThreadLocal;
 
 /**
+ * Samples the latency of target operations.
+ * <p>
+ * Which operations are sampled is decided by a {@link Sampler}, by default a
+ * {@link GeometricSampler} of fixed probability.  A sampler may be shared with
+ * other derived observers to share its probability, but each observer makes
+ * its own decisions.
+ * <p>
+ * Sampling may instead be adaptive.  An adaptive sampler measures the rate of
+ * target operations and, once per second, picks the largest probability of the
+ * form 2<sup>-k</sup> that keeps the sample rate at or below its target.
+ * Adaptively sampled latencies are delivered to {@link WeightedEventObserver}s
+ * weighted by the inverse of the probability they were sampled at, so their
+ * aggregates remain unbiased as the probability changes.
+ * <p>
+ * When registered on an operation statistic the start time of each operation
+ * is captured once by the statistic, and shared by all latency samplers.  The
+ * {@code begin} and untimed {@code end} methods are only used when driving a
+ * sampler directly.
  *
  * @author cdennis
  */
-public class LatencySampling<T extends Enum<T>> extends AbstractSourceStatistic<ChainedEventObserver> implements ChainedOperationObserver<T> {
+public class LatencySampling<T extends Enum<T>> extends AbstractSourceStatistic<ChainedEventObserver> implements StartTimeObserver<T> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(LatencySampling.class);
 
-  private final ThreadLocal<Long> operationStartTime = new ThreadLocal<Long>();
+  private static final long ADAPTATION_PERIOD = TimeUnit.SECONDS.toNanos(1);
+  private static final int MAXIMUM_SHIFT = 30;
+
+  private final ThreadLocal<SampledStart> operationStartTime = new VicariousThreadLocal<SampledStart>() {
+    @Override
+    protected SampledStart initialValue() {
+      return new SampledStart();
+    }
+  };
   private final Set<T> targetOperations;
-  private final int ceiling;
+  private final Sampler sampler;
+
+  /*
+   * Adaptive sampling state, null for fixed sampling.
+   */
+  private final GeometricSampler adaptiveSampler;
+  private final long samplesPerPeriod;
+  private final LongAdder operations;
+  private volatile long periodStart;
+  private long lastOperations;
   
   public LatencySampling(Set<T> targets, double sampling) {
     if (sampling > 1.0 || sampling < 0.0) {
       throw new IllegalArgumentException();
     }
-    this.ceiling = (int) (Integer.MAX_VALUE * sampling);
+    this.sampler = new GeometricSampler(sampling);
+    this.targetOperations = EnumSet.copyOf(targets);
+    this.adaptiveSampler = null;
+    this.samplesPerPeriod = 0L;
+    this.operations = null;
+  }
+
+  /**
+   * Creates a sampler deciding which operations to sample using the given
+   * strategy.
+   *
+   * @param targets the target results
+   * @param sampler the sampling strategy
+   */
+  public LatencySampling(Set<T> targets, Sampler sampler) {
+    this.sampler = sampler;
+    this.targetOperations = EnumSet.copyOf(targets);
+    this.adaptiveSampler = null;
+    this.samplesPerPeriod = 0L;
+    this.operations = null;
+  }
+
+  /**
+   * Creates an adaptive sampler targeting the given sample rate.
+   *
+   * @param targets the target results
+   * @param samples the target number of samples
+   * @param unit the period the target number of samples is per
+   */
+  public LatencySampling(Set<T> targets, long samples, TimeUnit unit) {
+    if (samples <= 0) {
+      throw new IllegalArgumentException("Sample rate must be positive: " + samples);
+    }
+    this.adaptiveSampler = new GeometricSampler(1.0);
+    this.sampler = adaptiveSampler;
     this.targetOperations = EnumSet.copyOf(targets);
+    this.samplesPerPeriod = Math.max(1L, (long) (((double) samples) * ADAPTATION_PERIOD / unit.toNanos(1)));
+    this.operations = new LongAdder();
+    this.periodStart = Long.MIN_VALUE;
+  }
+
+  /**
+   * Returns the current probability that a target operation is sampled.
+   *
+   * @return the sampling probability
+   */
+  public double samplingRate() {
+    return sampler.probability();
+  }
+
+  public ValueStatistic<Double> samplingRateStatistic() {
+    return new ValueStatistic<Double>() {
+      @Override
+      public Double value() {
+        return samplingRate();
+      }
+    };
+  }
+
+  @Override
+  public Set<T> targets() {
+    return Collections.unmodifiableSet(targetOperations);
+  }
+
+  @Override
+  public boolean requiresBegin() {
+    return true;
   }
 
   @Override
   public void begin(long time) {
-    if (sample()) {
-      operationStartTime.set(time);
-    }
+    /*
+     * Non-target completions are not routed to us, so an unsampled begin must
+     * still clear any stale start left behind for the next target completion.
+     */
+    SampledStart start = operationStartTime.get();
+    start.weight = sample(time, 1L);
+    start.time = time;
   }
 
   @Override
   public void end(long time, T result) {
-    if (targetOperations.contains(result)) {
-      Long start  = operationStartTime.get();
-      if (start != null) {
-        long latency = time - start.longValue();
-        if (!derivedStatistics.isEmpty()) {
-          if (latency < 0) {
-            LOGGER.info("Dropping {} event with negative latency {} (possible backwards nanoTime() movement)", result, time);
-          } else {
-            for (ChainedEventObserver observer : derivedStatistics) {
-              observer.event(time, latency);
-            }
-          }
-        }
-      }
+    SampledStart start = operationStartTime.get();
+    if (start.weight > 0L && targetOperations.contains(result)) {
+      fire(time, start.time, result, start.weight);
     }
-    operationStartTime.remove();
+    start.weight = 0L;
+  }
+
+  @Override
+  public void end(long time, T result, long parameter) {
+    end(time, result);
+  }
+
+  @Override
+  public void end(long time, T result, long parameter0, long parameter1) {
+    end(time, result);
   }
 
   @Override
   public void end(long time, T result, long ... parameters) {
     end(time, result);
   }
+
+  @Override
+  public void end(long time, long startTime, T result) {
+    if (startTime != TimedOperationObserver.UNTIMED && targetOperations.contains(result)) {
+      long weight = sample(time, 1L);
+      if (weight > 0L) {
+        fire(time, startTime, result, weight);
+      }
+    }
+  }
+
+  @Override
+  public void end(long time, long startTime, T result, long parameter) {
+    end(time, startTime, result);
+  }
+
+  @Override
+  public void end(long time, long startTime, T result, long parameter0, long parameter1) {
+    end(time, startTime, result);
+  }
+
+  @Override
+  public void end(long time, long startTime, T result, long ... parameters) {
+    end(time, startTime, result);
+  }
+
+  /**
+   * A batch is sampled as a single decision.  A sampled batch is delivered as
+   * one latency of the mean operation duration ({@code elapsed / count}),
+   * weighted by the batch size for {@link WeightedEventObserver}s.
+   */
+  @Override
+  public void endBatch(long time, T result, long count, long elapsed) {
+    if (count > 0 && targetOperations.contains(result)) {
+      long weight = sample(time, count);
+      if (weight > 0L) {
+        fire(time, time - elapsed / count, result, count * weight);
+      }
+    }
+  }
+
+  private void fire(long time, long startTime, T result, long weight) {
+    long latency = time - startTime;
+    if (!derivedStatistics.isEmpty()) {
+      if (latency < 0) {
+        LOGGER.info("Dropping {} event with negative latency {} (possible backwards nanoTime() movement)", result, latency);
+      } else {
+        for (ChainedEventObserver observer : derivedStatistics) {
+          if (weight != 1L && observer instanceof WeightedEventObserver) {
+            ((WeightedEventObserver) observer).weightedEvent(time, latency, weight);
+          } else {
+            observer.event(time, latency);
+          }
+        }
+      }
+    }
+  }
   
-  private boolean sample() {
-    return ceiling == 1.0 || ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE) < ceiling;
+  /**
+   * Returns the weight of the sample taken, or zero if not sampled.  Adaptive
+   * samples are weighted by the probability they were actually sampled at,
+   * which may differ from the current one if it has since adapted.
+   */
+  private long sample(long time, long count) {
+    if (operations == null) {
+      return sampler.sample() ? 1L : 0L;
+    } else {
+      operations.add(count);
+      long start = periodStart;
+      if (start == Long.MIN_VALUE || time - start >= ADAPTATION_PERIOD) {
+        adapt(time);
+      }
+      double p = adaptiveSampler.sampleProbability();
+      return p == 0.0 ? 0L : Math.round(1.0 / p);
+    }
+  }
+
+  private synchronized void adapt(long time) {
+    long total = operations.sum();
+    if (periodStart != Long.MIN_VALUE) {
+      long elapsed = time - periodStart;
+      if (elapsed < ADAPTATION_PERIOD) {
+        return;
+      }
+      double rate = ((double) (total - lastOperations)) * ADAPTATION_PERIOD / elapsed;
+      int k = 0;
+      while (k < MAXIMUM_SHIFT && rate / (1 << k) > samplesPerPeriod) {
+        k++;
+      }
+      adaptiveSampler.setProbability(1.0 / (1 << k));
+    }
+    lastOperations = total;
+    periodStart = time;
+  }
+
+  /**
+   * Per-thread start of the operation in progress, reused across operations.
+   * A zero weight means the operation is not sampled.
+   */
+  private static final class SampledStart {
+    long time;
+    long weight;
   }
 }
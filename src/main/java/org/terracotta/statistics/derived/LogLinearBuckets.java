@@ -0,0 +1,99 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+/**
+ * The bucket layout shared by the log-linear histograms.
+ * <p>
+ * This follows the HdrHistogram bucketing scheme: values are grouped by their
+ * power of two magnitude, and each magnitude is split into enough linear
+ * sub-buckets that any recorded value is distinguishable from its neighbours
+ * to the configured number of significant decimal digits.
+ */
+final class LogLinearBuckets {
+
+  private final long highestTrackableValue;
+  private final int subBucketHalfCountMagnitude;
+  private final int subBucketHalfCount;
+  private final long subBucketMask;
+  private final int length;
+
+  LogLinearBuckets(long highestTrackableValue, int significantDigits) {
+    if (significantDigits < 1 || significantDigits > 5) {
+      throw new IllegalArgumentException("Significant digits must be between 1 and 5: " + significantDigits);
+    }
+    if (highestTrackableValue < 2) {
+      throw new IllegalArgumentException("Highest trackable value must be at least 2: " + highestTrackableValue);
+    }
+    this.highestTrackableValue = highestTrackableValue;
+
+    long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+    int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+    this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+    this.subBucketHalfCount = 1 << subBucketHalfCountMagnitude;
+    this.subBucketMask = (1L << subBucketCountMagnitude) - 1;
+    this.length = indexOf(highestTrackableValue) + 1;
+  }
+
+  /**
+   * Returns the number of buckets.
+   */
+  int length() {
+    return length;
+  }
+
+  /**
+   * Returns the bucket index for a non-negative value, values above the
+   * highest trackable value map to the last bucket.
+   */
+  int indexOf(long value) {
+    long v = Math.min(value, highestTrackableValue);
+    int bucketIndex = 64 - Long.numberOfLeadingZeros(v | subBucketMask) - (subBucketHalfCountMagnitude + 1);
+    int subBucketIndex = (int) (v >>> bucketIndex);
+    return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+  }
+
+  /**
+   * Returns the highest value (capped at the highest trackable value) that
+   * maps to the given bucket.
+   */
+  long highestEquivalentValue(int index) {
+    int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+    int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+    if (bucketIndex < 0) {
+      subBucketIndex -= subBucketHalfCount;
+      bucketIndex = 0;
+    }
+    return Math.min(((long) (subBucketIndex + 1) << bucketIndex) - 1, highestTrackableValue);
+  }
+
+  long highestTrackableValue() {
+    return highestTrackableValue;
+  }
+
+  /**
+   * Returns the cumulative count that must be reached for the given percentile.
+   */
+  static long targetCount(double percentile, long total) {
+    return Math.max(1L, (long) ((percentile / 100.0) * total + 0.5));
+  }
+
+  static void checkPercentile(double percentile) {
+    if (!(percentile >= 0.0 && percentile <= 100.0)) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+  }
+}
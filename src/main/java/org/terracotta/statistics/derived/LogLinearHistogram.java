@@ -0,0 +1,140 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.observer.WeightedEventObserver;
+
+/**
+ * A fixed memory histogram of event parameter values with log-linear buckets.
+ * <p>
+ * Values are bucketed following the HdrHistogram scheme to the configured
+ * number of significant decimal digits.  Values above the highest trackable
+ * value are recorded as the highest trackable value, and negative values are
+ * ignored.
+ * <p>
+ * All counts are held in a single array sized at construction time.  Recording
+ * is one atomic increment and never allocates.  Reads are not atomic snapshots
+ * and may or may not incorporate concurrent recordings.
+ *
+ * @see SlidingWindowHistogram
+ */
+public class LogLinearHistogram implements WeightedEventObserver {
+
+  private final LogLinearBuckets buckets;
+  private final AtomicLongArray counts;
+
+  /**
+   * Creates a histogram tracking values from zero to {@code highestTrackableValue}.
+   *
+   * @param highestTrackableValue the highest value distinctly recorded
+   * @param significantDigits the precision of recorded values, from 1 to 5
+   */
+  public LogLinearHistogram(long highestTrackableValue, int significantDigits) {
+    this.buckets = new LogLinearBuckets(highestTrackableValue, significantDigits);
+    this.counts = new AtomicLongArray(buckets.length());
+  }
+
+  @Override
+  public void event(long time) {
+    throw new IllegalArgumentException("LogLinearHistogram requires an event parameter");
+  }
+
+  @Override
+  public void event(long time, long parameter) {
+    weightedEvent(time, parameter, 1L);
+  }
+
+  @Override
+  public void weightedEvent(long time, long parameter, long weight) {
+    if (parameter >= 0) {
+      counts.addAndGet(buckets.indexOf(parameter), weight);
+    }
+  }
+
+  @Override
+  public void event(long time, long parameter0, long parameter1) {
+    event(time, parameter0);
+  }
+
+  @Override
+  public void event(long time, long ... parameters) {
+    event(time, parameters[0]);
+  }
+
+  @Override
+  public void events(long time, long count) {
+    throw new IllegalArgumentException("LogLinearHistogram requires an event parameter");
+  }
+
+  /**
+   * Returns the number of recorded values.
+   *
+   * @return the value count
+   */
+  public long count() {
+    long total = 0L;
+    for (int i = 0; i < counts.length(); i++) {
+      total += counts.get(i);
+    }
+    return total;
+  }
+
+  /**
+   * Returns the value below which the given percentage of recorded values fall.
+   * <p>
+   * The returned value is the highest value equivalent (to the configured
+   * precision) to the recorded value at that percentile.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the value at the percentile, or {@code null} if nothing was recorded
+   */
+  public Long percentile(double percentile) {
+    LogLinearBuckets.checkPercentile(percentile);
+    long total = count();
+    if (total == 0L) {
+      return null;
+    }
+
+    long target = LogLinearBuckets.targetCount(percentile, total);
+    long cumulative = 0L;
+    for (int i = 0; i < counts.length(); i++) {
+      cumulative += counts.get(i);
+      if (cumulative >= target) {
+        return buckets.highestEquivalentValue(i);
+      }
+    }
+    return buckets.highestTrackableValue();
+  }
+
+  /**
+   * Returns a statistic tracking the value at the given percentile.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the percentile statistic
+   */
+  public ValueStatistic<Long> percentileStatistic(final double percentile) {
+    LogLinearBuckets.checkPercentile(percentile);
+    return new ValueStatistic<Long>() {
+      @Override
+      public Long value() {
+        return percentile(percentile);
+      }
+    };
+  }
+}
@@ -16,57 +16,91 @@
 package org.terracotta.statistics.derived;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.terracotta.statistics.ValueStatistic;
 import org.terracotta.statistics.observer.ChainedEventObserver;
 import org.terracotta.statistics.util.InThreadExecutor;
-
-import static java.lang.Double.doubleToLongBits;
-import static java.lang.Double.longBitsToDouble;
+import org.terracotta.statistics.util.StripedSummaryStatistics;
+import org.terracotta.statistics.util.StripedSummaryStatistics.Summary;
 
 /**
+ * Tracks the minimum, maximum, mean and variance of event parameters.
+ * <p>
+ * Events are recorded on the calling thread, or asynchronously through an
+ * {@link AsynchronousEventPipeline}, which moves recording off the calling
+ * thread without allocating per event.
  *
  * @author cdennis
  */
 public class MinMaxAverage implements ChainedEventObserver {
 
-  private final AtomicLong maximum = new AtomicLong(Long.MIN_VALUE);
-  private final AtomicLong minimum = new AtomicLong(Long.MAX_VALUE);
-  
-  private final AtomicLong summation = new AtomicLong(doubleToLongBits(0.0));
-  private final AtomicLong count = new AtomicLong(0);
+  private final StripedSummaryStatistics summary = new StripedSummaryStatistics();
+
+  private final ChainedEventObserver recorder;
 
-  private final Executor executor;
-  
   public MinMaxAverage() {
-    this(InThreadExecutor.INSTANCE);
+    this.recorder = new Recorder(summary);
   }
-  
+
+  /**
+   * Creates a statistic recording its events through the given pipeline.
+   *
+   * @param pipeline the pipeline events are delivered through
+   */
+  public MinMaxAverage(AsynchronousEventPipeline pipeline) {
+    this.recorder = pipeline.observerFor(new Recorder(summary));
+  }
+
+  /**
+   * Creates a statistic recording its events on the given executor.
+   * <p>
+   * Every event allocates a task unless the executor is the
+   * {@link InThreadExecutor}, so prefer
+   * {@link #MinMaxAverage(AsynchronousEventPipeline)} for asynchronous
+   * recording.
+   *
+   * @param executor the executor events are recorded on
+   */
   public MinMaxAverage(Executor executor) {
-    this.executor = executor;
+    if (executor == InThreadExecutor.INSTANCE) {
+      this.recorder = new Recorder(summary);
+    } else {
+      this.recorder = new ExecutorRecorder(executor, summary);
+    }
   }
-  
+
   
   @Override
-  public void event(long time, final long ... parameters) {
-    executor.execute(new Runnable() {
+  public void event(long time) {
+    throw new IllegalArgumentException("MinMaxAverage requires an event parameter");
+  }
 
-      @Override
-      public void run() {
-        for (long max = maximum.get(); max < parameters[0] && !maximum.compareAndSet(max, parameters[0]); max = maximum.get());
-        for (long min = minimum.get(); min > parameters[0] && !minimum.compareAndSet(min, parameters[0]); min = minimum.get());
-        for (long sumBits = summation.get(); !summation.compareAndSet(sumBits, doubleToLongBits(longBitsToDouble(sumBits) + parameters[0])); sumBits = summation.get());
-        count.incrementAndGet();
-      }
-    });
+  @Override
+  public void events(long time, long count) {
+    throw new IllegalArgumentException("MinMaxAverage requires an event parameter");
+  }
+
+  @Override
+  public void event(long time, long parameter) {
+    recorder.event(time, parameter);
+  }
+
+  @Override
+  public void event(long time, long parameter0, long parameter1) {
+    event(time, parameter0);
+  }
+
+  @Override
+  public void event(long time, long ... parameters) {
+    event(time, parameters[0]);
   }
 
   public Long min() {
-    if (count.get() == 0) {
+    Summary current = summary.summary();
+    if (current.count() == 0) {
       return null;
     } else {
-      return minimum.get();
+      return current.minimum();
     }
   }
   
@@ -81,10 +115,11 @@ public class MinMaxAverage implements ChainedEventObserver {
   }
   
   public Double mean() {
-    if (count.get() == 0) {
+    Summary current = summary.summary();
+    if (current.count() == 0) {
       return null;
     } else {
-      return longBitsToDouble(summation.get()) / count.get();
+      return current.mean();
     }
   }
   
@@ -99,10 +134,11 @@ public class MinMaxAverage implements ChainedEventObserver {
   }
   
   public Long max() {
-    if (count.get() == 0) {
+    Summary current = summary.summary();
+    if (current.count() == 0) {
       return null;
     } else {
-      return maximum.get();
+      return current.maximum();
     }
   }
   
@@ -115,4 +151,103 @@ public class MinMaxAverage implements ChainedEventObserver {
       }
     };
   }
+
+  public Double variance() {
+    Summary current = summary.summary();
+    if (current.count() == 0) {
+      return null;
+    } else {
+      return current.variance();
+    }
+  }
+
+  public ValueStatistic<Double> varianceStatistic() {
+    return new ValueStatistic<Double>() {
+
+      @Override
+      public Double value() {
+        return variance();
+      }
+    };
+  }
+
+  public Double standardDeviation() {
+    Summary current = summary.summary();
+    if (current.count() == 0) {
+      return null;
+    } else {
+      return current.standardDeviation();
+    }
+  }
+
+  public ValueStatistic<Double> standardDeviationStatistic() {
+    return new ValueStatistic<Double>() {
+
+      @Override
+      public Double value() {
+        return standardDeviation();
+      }
+    };
+  }
+
+  /**
+   * Records event parameters directly in to a summary.
+   */
+  static class Recorder implements ChainedEventObserver {
+
+    private final StripedSummaryStatistics summary;
+
+    Recorder(StripedSummaryStatistics summary) {
+      this.summary = summary;
+    }
+
+    @Override
+    public void event(long time) {
+      throw new IllegalArgumentException("MinMaxAverage requires an event parameter");
+    }
+
+    @Override
+    public void event(long time, long parameter) {
+      summary.add(parameter);
+    }
+
+    @Override
+    public void event(long time, long parameter0, long parameter1) {
+      event(time, parameter0);
+    }
+
+    @Override
+    public void event(long time, long ... parameters) {
+      event(time, parameters[0]);
+    }
+
+    @Override
+    public void events(long time, long count) {
+      throw new IllegalArgumentException("MinMaxAverage requires an event parameter");
+    }
+  }
+
+  /**
+   * Records event parameters in to a summary from an executor.
+   */
+  static class ExecutorRecorder extends Recorder {
+
+    private final Executor executor;
+
+    ExecutorRecorder(Executor executor, StripedSummaryStatistics summary) {
+      super(summary);
+      this.executor = executor;
+    }
+
+    @Override
+    public void event(final long time, final long parameter) {
+      executor.execute(new Runnable() {
+
+        @Override
+        public void run() {
+          ExecutorRecorder.super.event(time, parameter);
+        }
+      });
+    }
+  }
 }
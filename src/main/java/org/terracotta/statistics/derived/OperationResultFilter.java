@@ -15,28 +15,59 @@
  */
 package org.terracotta.statistics.derived;
 
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Set;
 
 import org.terracotta.statistics.AbstractSourceStatistic;
+import org.terracotta.statistics.Time;
 import org.terracotta.statistics.observer.ChainedEventObserver;
-import org.terracotta.statistics.observer.ChainedOperationObserver;
+import org.terracotta.statistics.observer.ClockedObserver;
+import org.terracotta.statistics.observer.TargetedOperationObserver;
 
 /**
  *
  * @author cdennis
  */
-public class OperationResultFilter<T extends Enum<T>> extends AbstractSourceStatistic<ChainedEventObserver> implements ChainedOperationObserver<T> {
+public class OperationResultFilter<T extends Enum<T>> extends AbstractSourceStatistic<ChainedEventObserver> implements TargetedOperationObserver<T>, ClockedObserver {
 
   private final Set<T> targets;
+  private final Time.TimeSource timeSource;
 
   public OperationResultFilter(Set<T> targets, ChainedEventObserver ... observers) {
+    this(targets, null, observers);
+  }
+
+  /**
+   * Creates a filter whose events are timestamped from the given source.
+   *
+   * @param targets the results to forward
+   * @param timeSource the time source, or {@code null} to use the source statistic's
+   * @param observers the downstream observers
+   */
+  public OperationResultFilter(Set<T> targets, Time.TimeSource timeSource, ChainedEventObserver ... observers) {
     this.targets = EnumSet.copyOf(targets);
+    this.timeSource = timeSource;
     for (ChainedEventObserver observer : observers) {
       addDerivedStatistic(observer);
     }
   }
   
+  @Override
+  public Set<T> targets() {
+    return Collections.unmodifiableSet(targets);
+  }
+
+  @Override
+  public Time.TimeSource timeSource() {
+    return timeSource;
+  }
+
+  @Override
+  public boolean requiresBegin() {
+    return false;
+  }
+
   @Override
   public void begin(long time) {
     //no-op
@@ -51,6 +82,24 @@ public class OperationResultFilter<T extends Enum<T>> extends AbstractSourceStat
     }
   }
 
+  @Override
+  public void end(long time, T result, long parameter) {
+    if (!derivedStatistics.isEmpty() && targets.contains(result)) {
+      for (ChainedEventObserver derived : derivedStatistics) {
+        derived.event(time, parameter);
+      }
+    }
+  }
+
+  @Override
+  public void end(long time, T result, long parameter0, long parameter1) {
+    if (!derivedStatistics.isEmpty() && targets.contains(result)) {
+      for (ChainedEventObserver derived : derivedStatistics) {
+        derived.event(time, parameter0, parameter1);
+      }
+    }
+  }
+
   @Override
   public void end(long time, T result, long ... parameters) {
     if (!derivedStatistics.isEmpty() && targets.contains(result)) {
@@ -59,5 +108,33 @@ public class OperationResultFilter<T extends Enum<T>> extends AbstractSourceStat
       }
     }
   }
-  
+
+  @Override
+  public void end(long time, long startTime, T result) {
+    end(time, result);
+  }
+
+  @Override
+  public void end(long time, long startTime, T result, long parameter) {
+    end(time, result, parameter);
+  }
+
+  @Override
+  public void end(long time, long startTime, T result, long parameter0, long parameter1) {
+    end(time, result, parameter0, parameter1);
+  }
+
+  @Override
+  public void end(long time, long startTime, T result, long ... parameters) {
+    end(time, result, parameters);
+  }
+
+  @Override
+  public void endBatch(long time, T result, long count, long elapsed) {
+    if (!derivedStatistics.isEmpty() && targets.contains(result)) {
+      for (ChainedEventObserver derived : derivedStatistics) {
+        derived.events(time, count);
+      }
+    }
+  }
 }
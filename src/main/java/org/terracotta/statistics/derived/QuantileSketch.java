@@ -0,0 +1,274 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.observer.WeightedEventObserver;
+
+/**
+ * A mergeable relative-error quantile sketch of event parameter values.
+ * <p>
+ * This is a DDSketch: positive values are counted in logarithmically sized
+ * bins such that the value reported for any quantile is within the configured
+ * relative accuracy of the true value at that quantile.  Unlike averages,
+ * sketches with the same parameters can be merged, so sketches recorded on
+ * separate nodes can be shipped (see {@link #serialize()}) and combined into
+ * accurate cluster-wide quantiles.
+ * <p>
+ * The bins covering the configured value range are allocated up front, so
+ * memory use is bounded: roughly {@code ln(max/min) / (2 * accuracy)} longs.
+ * Values below the range are counted in the lowest bin, those above in the
+ * highest, and non-positive values in a dedicated zero bin.  Recording is a
+ * logarithm and one atomic increment, and never locks or allocates.  Reads are
+ * not atomic snapshots and may or may not incorporate concurrent recordings.
+ */
+public class QuantileSketch implements WeightedEventObserver {
+
+  private static final byte SERIAL_VERSION = 1;
+
+  private final double relativeAccuracy;
+  private final long minValue;
+  private final long maxValue;
+  private final double logGamma;
+  private final int offset;
+
+  /*
+   * Slot zero counts non-positive values, slot i > 0 counts bin (i - 1 + offset).
+   */
+  private final AtomicLongArray counts;
+
+  /**
+   * Creates an empty sketch.
+   *
+   * @param relativeAccuracy the relative accuracy of reported quantiles, between 0 and 1 exclusive
+   * @param minValue the lowest value accurately tracked, at least 1
+   * @param maxValue the highest value accurately tracked
+   */
+  public QuantileSketch(double relativeAccuracy, long minValue, long maxValue) {
+    if (!(relativeAccuracy > 0.0 && relativeAccuracy < 1.0)) {
+      throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+    }
+    if (minValue < 1) {
+      throw new IllegalArgumentException("Minimum value must be at least 1: " + minValue);
+    }
+    if (maxValue < minValue) {
+      throw new IllegalArgumentException("Maximum value " + maxValue + " is below minimum value " + minValue);
+    }
+    this.relativeAccuracy = relativeAccuracy;
+    this.minValue = minValue;
+    this.maxValue = maxValue;
+    this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+    this.offset = binOf(minValue);
+    this.counts = new AtomicLongArray(binOf(maxValue) - offset + 2);
+  }
+
+  @Override
+  public void event(long time) {
+    throw new IllegalArgumentException("QuantileSketch requires an event parameter");
+  }
+
+  @Override
+  public void event(long time, long parameter) {
+    weightedEvent(time, parameter, 1L);
+  }
+
+  @Override
+  public void weightedEvent(long time, long parameter, long weight) {
+    counts.addAndGet(slotOf(parameter), weight);
+  }
+
+  @Override
+  public void event(long time, long parameter0, long parameter1) {
+    event(time, parameter0);
+  }
+
+  @Override
+  public void event(long time, long ... parameters) {
+    event(time, parameters[0]);
+  }
+
+  @Override
+  public void events(long time, long count) {
+    throw new IllegalArgumentException("QuantileSketch requires an event parameter");
+  }
+
+  /**
+   * Returns the number of recorded values.
+   *
+   * @return the value count
+   */
+  public long count() {
+    long total = 0L;
+    for (int i = 0; i < counts.length(); i++) {
+      total += counts.get(i);
+    }
+    return total;
+  }
+
+  /**
+   * Returns an estimate of the value at the given percentile.
+   * <p>
+   * For percentiles whose true value lies within the tracked range the
+   * estimate is within the relative accuracy of the true value.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the value estimate, or {@code null} if nothing was recorded
+   */
+  public Double percentile(double percentile) {
+    LogLinearBuckets.checkPercentile(percentile);
+    long total = count();
+    if (total == 0L) {
+      return null;
+    }
+
+    long target = LogLinearBuckets.targetCount(percentile, total);
+    long cumulative = 0L;
+    for (int i = 0; i < counts.length(); i++) {
+      cumulative += counts.get(i);
+      if (cumulative >= target) {
+        return valueOf(i);
+      }
+    }
+    return valueOf(counts.length() - 1);
+  }
+
+  /**
+   * Returns a statistic tracking the value at the given percentile.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the percentile statistic
+   */
+  public ValueStatistic<Double> percentileStatistic(final double percentile) {
+    LogLinearBuckets.checkPercentile(percentile);
+    return new ValueStatistic<Double>() {
+      @Override
+      public Double value() {
+        return percentile(percentile);
+      }
+    };
+  }
+
+  /**
+   * Adds the values recorded in another sketch to this one.
+   * <p>
+   * The other sketch must have been created with identical parameters.
+   *
+   * @param other the sketch to merge
+   * @throws IllegalArgumentException if the sketches are not compatible
+   */
+  public void merge(QuantileSketch other) {
+    if (!compatible(other)) {
+      throw new IllegalArgumentException("Incompatible sketch: " + other + " cannot be merged in to " + this);
+    }
+    for (int i = 0; i < counts.length(); i++) {
+      long count = other.counts.get(i);
+      if (count != 0) {
+        counts.addAndGet(i, count);
+      }
+    }
+  }
+
+  /**
+   * Returns a compact serialized form of this sketch.
+   * <p>
+   * Only non-empty bins are written.  The form is independent of the JVM and
+   * can be restored by {@link #deserialize(byte[])}.
+   *
+   * @return the serialized sketch
+   */
+  public byte[] serialize() {
+    long[] snapshot = new long[counts.length()];
+    int populated = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      if ((snapshot[i] = counts.get(i)) != 0) {
+        populated++;
+      }
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + 8 + 8 + 4 + populated * (4 + 8));
+    buffer.put(SERIAL_VERSION).putDouble(relativeAccuracy).putLong(minValue).putLong(maxValue).putInt(populated);
+    for (int i = 0; i < snapshot.length; i++) {
+      if (snapshot[i] != 0) {
+        buffer.putInt(i).putLong(snapshot[i]);
+      }
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Restores a sketch from its serialized form.
+   *
+   * @param serialized a serialized sketch
+   * @return the restored sketch
+   * @throws IllegalArgumentException if the serialized form is not recognized
+   */
+  public static QuantileSketch deserialize(byte[] serialized) {
+    ByteBuffer buffer = ByteBuffer.wrap(serialized);
+    try {
+      byte version = buffer.get();
+      if (version != SERIAL_VERSION) {
+        throw new IllegalArgumentException("Unsupported sketch version: " + version);
+      }
+      QuantileSketch sketch = new QuantileSketch(buffer.getDouble(), buffer.getLong(), buffer.getLong());
+      for (int populated = buffer.getInt(); populated > 0; populated--) {
+        int slot = buffer.getInt();
+        long count = buffer.getLong();
+        if (slot < 0 || slot >= sketch.counts.length()) {
+          throw new IllegalArgumentException("Sketch bin " + slot + " out of range");
+        }
+        sketch.counts.set(slot, count);
+      }
+      return sketch;
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated sketch", e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "QuantileSketch[accuracy=" + relativeAccuracy + ", range=" + minValue + ".." + maxValue + "]";
+  }
+
+  private boolean compatible(QuantileSketch other) {
+    return Double.doubleToLongBits(relativeAccuracy) == Double.doubleToLongBits(other.relativeAccuracy)
+            && minValue == other.minValue && maxValue == other.maxValue;
+  }
+
+  private int binOf(long value) {
+    return (int) Math.ceil(Math.log(value) / logGamma);
+  }
+
+  private int slotOf(long value) {
+    if (value <= 0) {
+      return 0;
+    } else {
+      return binOf(Math.max(minValue, Math.min(value, maxValue))) - offset + 1;
+    }
+  }
+
+  private double valueOf(int slot) {
+    if (slot == 0) {
+      return 0.0;
+    } else {
+      double gamma = Math.exp(logGamma);
+      return 2 * Math.exp((slot - 1 + offset) * logGamma) / (gamma + 1);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+/**
+ * A strategy deciding which operations (or events) are sampled.
+ * <p>
+ * Implementations must be thread safe.  Every call to {@link #sample()} is a
+ * separate decision: observers sharing a sampler share its probability, but
+ * each draws its own decisions, so they will not in general sample the same
+ * operations.
+ */
+public interface Sampler {
+
+  /**
+   * Decides whether the current operation is sampled.
+   * <p>
+   * Callers should invoke this once per operation they observe.
+   *
+   * @return {@code true} if the operation is sampled
+   */
+  boolean sample();
+
+  /**
+   * Returns the current probability that an operation is sampled.
+   *
+   * @return the sampling probability, from 0 to 1
+   */
+  double probability();
+}
@@ -0,0 +1,305 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.terracotta.statistics.Time;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.observer.WeightedEventObserver;
+
+/**
+ * A log-linear histogram of the event parameter values seen over a sliding
+ * time window.
+ * <p>
+ * The window is split into partitions, in the same way as
+ * {@link EventParameterSimpleMovingAverage}.  Each partition is recorded into
+ * one slice of a preallocated ring of histogram slices, the slice being reused
+ * (and cleared) once its partition falls out of the window.  Reads merge the
+ * slices that are within the window into a scratch array owned by the
+ * histogram, so percentile queries never allocate and cost
+ * {@code O(buckets)} regardless of the number of recorded events.
+ * <p>
+ * Slices hold {@code long} counts, so weighted events may carry weights of any
+ * positive {@code long} magnitude.  Events recorded into a slice while it is
+ * being recycled may be lost.
+ *
+ * @see LogLinearHistogram
+ */
+public class SlidingWindowHistogram implements WeightedEventObserver {
+
+  private static final int PARTITION_COUNT = 10;
+
+  private static final long RESETTING = Long.MIN_VALUE;
+  private static final long EMPTY = Long.MIN_VALUE + 1;
+
+  private final LogLinearBuckets buckets;
+  private final Time.TimeSource timeSource;
+  private final Slice[] ring;
+
+  /*
+   * Guarded by this.
+   */
+  private final long[] scratch;
+
+  private volatile long partitionSize;
+
+  /**
+   * Creates a windowed histogram tracking values from zero to
+   * {@code highestTrackableValue}.
+   *
+   * @param time the window length
+   * @param unit the window length unit
+   * @param highestTrackableValue the highest value distinctly recorded
+   * @param significantDigits the precision of recorded values, from 1 to 5
+   */
+  public SlidingWindowHistogram(long time, TimeUnit unit, long highestTrackableValue, int significantDigits) {
+    this(time, unit, highestTrackableValue, significantDigits, Time.GLOBAL);
+  }
+
+  /**
+   * Creates a windowed histogram whose window is read against the given time
+   * source.
+   *
+   * @param time the window length
+   * @param unit the window length unit
+   * @param highestTrackableValue the highest value distinctly recorded
+   * @param significantDigits the precision of recorded values, from 1 to 5
+   * @param timeSource the time source events are timestamped from
+   */
+  public SlidingWindowHistogram(long time, TimeUnit unit, long highestTrackableValue, int significantDigits, Time.TimeSource timeSource) {
+    this.buckets = new LogLinearBuckets(highestTrackableValue, significantDigits);
+    this.timeSource = timeSource;
+    this.scratch = new long[buckets.length()];
+    this.ring = new Slice[PARTITION_COUNT + 1];
+    for (int i = 0; i < ring.length; i++) {
+      ring[i] = new Slice(buckets.length());
+    }
+    this.partitionSize = partitionSize(unit.toNanos(time));
+  }
+
+  /**
+   * Changes the window length, discarding all recorded values.
+   *
+   * @param time the window length
+   * @param unit the window length unit
+   */
+  public synchronized void setWindow(long time, TimeUnit unit) {
+    this.partitionSize = partitionSize(unit.toNanos(time));
+    for (Slice slice : ring) {
+      slice.epoch.set(RESETTING);
+      slice.clear();
+      slice.epoch.set(EMPTY);
+    }
+  }
+
+  @Override
+  public void event(long time) {
+    throw new IllegalArgumentException("SlidingWindowHistogram requires an event parameter");
+  }
+
+  @Override
+  public void event(long time, long parameter) {
+    weightedEvent(time, parameter, 1L);
+  }
+
+  @Override
+  public void weightedEvent(long time, long parameter, long weight) {
+    if (parameter < 0) {
+      return;
+    }
+    int index = buckets.indexOf(parameter);
+    long epoch = epochOf(time);
+    Slice slice = ring[slotOf(epoch)];
+    while (true) {
+      long current = slice.epoch.get();
+      if (current == epoch) {
+        slice.counts.addAndGet(index, weight);
+        return;
+      } else if (current == RESETTING) {
+        Thread.yield();
+      } else if (current > epoch) {
+        //slice already recycled for a later partition
+        return;
+      } else if (slice.epoch.compareAndSet(current, RESETTING)) {
+        slice.clear();
+        slice.epoch.set(epoch);
+      }
+    }
+  }
+
+  @Override
+  public void event(long time, long parameter0, long parameter1) {
+    event(time, parameter0);
+  }
+
+  @Override
+  public void event(long time, long ... parameters) {
+    event(time, parameters[0]);
+  }
+
+  @Override
+  public void events(long time, long count) {
+    throw new IllegalArgumentException("SlidingWindowHistogram requires an event parameter");
+  }
+
+  /**
+   * Returns the number of values recorded within the current window.
+   *
+   * @return the value count
+   */
+  public synchronized long count() {
+    return merge();
+  }
+
+  /**
+   * Returns the value below which the given percentage of the values recorded
+   * within the current window fall.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the value at the percentile, or {@code null} if nothing was recorded
+   */
+  public synchronized Long percentile(double percentile) {
+    LogLinearBuckets.checkPercentile(percentile);
+    return valueAt(buckets, scratch, merge(), percentile);
+  }
+
+  /**
+   * Returns the value at the given percentile across several histograms
+   * sharing the same bucket configuration, within their current windows.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @param histograms the histograms to combine
+   * @return the value at the percentile, or {@code null} if nothing was recorded
+   * @throws IllegalArgumentException if the histograms have different buckets
+   */
+  public static Long percentile(double percentile, SlidingWindowHistogram ... histograms) {
+    LogLinearBuckets.checkPercentile(percentile);
+    if (histograms.length == 0) {
+      return null;
+    }
+    LogLinearBuckets buckets = histograms[0].buckets;
+    long[] combined = new long[buckets.length()];
+    long total = 0L;
+    for (SlidingWindowHistogram histogram : histograms) {
+      if (histogram.buckets.length() != buckets.length() || histogram.buckets.highestTrackableValue() != buckets.highestTrackableValue()) {
+        throw new IllegalArgumentException("Histograms have incompatible buckets");
+      }
+      synchronized (histogram) {
+        total += histogram.merge();
+        long[] counts = histogram.scratch;
+        for (int i = 0; i < combined.length; i++) {
+          combined[i] += counts[i];
+        }
+      }
+    }
+    return valueAt(buckets, combined, total, percentile);
+  }
+
+  private static Long valueAt(LogLinearBuckets buckets, long[] counts, long total, double percentile) {
+    if (total == 0L) {
+      return null;
+    }
+
+    long target = LogLinearBuckets.targetCount(percentile, total);
+    long cumulative = 0L;
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i];
+      if (cumulative >= target) {
+        return buckets.highestEquivalentValue(i);
+      }
+    }
+    return buckets.highestTrackableValue();
+  }
+
+  /**
+   * Returns a statistic tracking the value at the given percentile.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the percentile statistic
+   */
+  public ValueStatistic<Long> percentileStatistic(final double percentile) {
+    LogLinearBuckets.checkPercentile(percentile);
+    return new ValueStatistic<Long>() {
+      @Override
+      public Long value() {
+        return percentile(percentile);
+      }
+    };
+  }
+
+  /*
+   * Merges the in-window slices in to the scratch array, returning the total.
+   */
+  private long merge() {
+    long now = epochOf(timeSource.time());
+    long oldest = now - PARTITION_COUNT;
+    long total = 0L;
+    Arrays.fill(scratch, 0L);
+    for (Slice slice : ring) {
+      long epoch = slice.epoch.get();
+      if (epoch >= oldest && epoch <= now) {
+        AtomicLongArray counts = slice.counts;
+        for (int i = 0; i < scratch.length; i++) {
+          long count = counts.get(i);
+          scratch[i] += count;
+          total += count;
+        }
+      }
+    }
+    return total;
+  }
+
+  private long epochOf(long time) {
+    long size = partitionSize;
+    if (time >= 0) {
+      return time / size;
+    } else {
+      return ((time + 1) / size) - 1;
+    }
+  }
+
+  private int slotOf(long epoch) {
+    int slot = (int) (epoch % ring.length);
+    return slot < 0 ? slot + ring.length : slot;
+  }
+
+  private static long partitionSize(long windowSize) {
+    return Math.max(1L, windowSize / PARTITION_COUNT);
+  }
+
+  /**
+   * A single partition's counts.
+   */
+  static final class Slice {
+
+    final AtomicLong epoch = new AtomicLong(EMPTY);
+    final AtomicLongArray counts;
+
+    Slice(int length) {
+      this.counts = new AtomicLongArray(length);
+    }
+
+    void clear() {
+      for (int i = 0; i < counts.length(); i++) {
+        counts.set(i, 0L);
+      }
+    }
+  }
+}
@@ -16,6 +16,8 @@
 package org.terracotta.statistics.extended;
 
 import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.archive.ArchiveCursor;
+import org.terracotta.statistics.archive.RollupArchive;
 import org.terracotta.statistics.archive.Timestamped;
 
 import java.util.List;
@@ -47,10 +49,11 @@ abstract class AbstractSampledStatistic<T extends Number> implements SampledStat
    * @param historySize     the history size
    * @param historyPeriod   the history period
    * @param historyTimeUnit the history time unit
+   * @param historyRollups  the history rollup resolutions
    */
-  AbstractSampledStatistic(ValueStatistic<T> source, ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
+  AbstractSampledStatistic(ValueStatistic<T> source, ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
     this.source = source;
-    this.history = new StatisticHistory<T>(source, executor, historySize, historyPeriod, historyTimeUnit);
+    this.history = new StatisticHistory<T>(source, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
   }
 
   /**
@@ -69,6 +72,22 @@ abstract class AbstractSampledStatistic<T extends Number> implements SampledStat
     return history.history();
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Timestamped<T>> history(ArchiveCursor cursor) {
+    return history.history(cursor);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<RollupArchive.Rollup> rollups(int resolution) {
+    return history.rollups(resolution);
+  }
+
   /**
    * Start sampling.
    */
@@ -89,8 +108,9 @@ abstract class AbstractSampledStatistic<T extends Number> implements SampledStat
    * @param historySize     the history size
    * @param historyPeriod   the history period
    * @param historyTimeUnit the history time unit
+   * @param historyRollups  the history rollup resolutions
    */
-  final void setHistory(int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
-    history.adjust(historySize, historyPeriod, historyTimeUnit);
+  final void setHistory(int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    history.adjust(historySize, historyPeriod, historyTimeUnit, historyRollups);
   }
 }
@@ -0,0 +1,236 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.extended;
+
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.archive.RollupArchive;
+import org.terracotta.statistics.derived.EventParameterSimpleMovingAverage;
+import org.terracotta.statistics.derived.SlidingWindowHistogram;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency over several operation results, merged at read time from the
+ * windowed latency structures of the component results.
+ *
+ * @param <T> the generic type
+ */
+class CompoundLatencyImpl<T extends Enum<T>> implements Latency {
+
+  private final List<LatencyImpl<T>> components;
+  private final ExpiringSampledStatistic<Long> minimumStatistic;
+  private final ExpiringSampledStatistic<Long> maximumStatistic;
+  private final ExpiringSampledStatistic<Double> averageStatistic;
+  private final ExpiringSampledStatistic<Double> samplingRateStatistic;
+  private final ConcurrentMap<Double, ExpiringSampledStatistic<Long>> percentileStatistics = new ConcurrentHashMap<Double, ExpiringSampledStatistic<Long>>();
+  private final ScheduledExecutorService executor;
+
+  private volatile int historySize;
+  private volatile long historyPeriod;
+  private volatile TimeUnit historyTimeUnit;
+  private volatile RollupArchive.Resolution[] historyRollups;
+
+  /**
+   * Instantiates a new compound latency.
+   *
+   * @param components      the latencies of the individual results
+   * @param executor        the executor
+   * @param historySize     the history size
+   * @param historyPeriod   the history period
+   * @param historyTimeUnit the history time unit
+   * @param historyRollups  the history rollup resolutions
+   */
+  CompoundLatencyImpl(List<LatencyImpl<T>> components, ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    this.components = components;
+    this.executor = executor;
+    this.historySize = historySize;
+    this.historyPeriod = historyPeriod;
+    this.historyTimeUnit = historyTimeUnit;
+    this.historyRollups = historyRollups;
+    this.minimumStatistic = new ExpiringSampledStatistic<Long>(new ValueStatistic<Long>() {
+      @Override
+      public Long value() {
+        return minimum(touchComponents());
+      }
+    }, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    this.maximumStatistic = new ExpiringSampledStatistic<Long>(new ValueStatistic<Long>() {
+      @Override
+      public Long value() {
+        return maximum(touchComponents());
+      }
+    }, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    this.averageStatistic = new ExpiringSampledStatistic<Double>(new ValueStatistic<Double>() {
+      @Override
+      public Double value() {
+        return average(touchComponents());
+      }
+    }, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    this.samplingRateStatistic = new ExpiringSampledStatistic<Double>(new ValueStatistic<Double>() {
+      @Override
+      public Double value() {
+        double rate = 1.0;
+        for (LatencyImpl<T> component : touchComponents()) {
+          rate = Math.min(rate, component.samplingProbability());
+        }
+        return rate;
+      }
+    }, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+  }
+
+  @Override
+  public SampledStatistic<Long> minimum() {
+    return minimumStatistic;
+  }
+
+  @Override
+  public SampledStatistic<Long> maximum() {
+    return maximumStatistic;
+  }
+
+  @Override
+  public SampledStatistic<Double> average() {
+    return averageStatistic;
+  }
+
+  /**
+   * The fraction sampled by the least sampled component.
+   */
+  @Override
+  public SampledStatistic<Double> samplingRate() {
+    return samplingRateStatistic;
+  }
+
+  @Override
+  public synchronized SampledStatistic<Long> percentile(final double percentile) {
+    ExpiringSampledStatistic<Long> existing = percentileStatistics.get(percentile);
+    if (existing != null) {
+      return existing;
+    }
+    if (!(percentile >= 0.0 && percentile <= 100.0)) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+    final SlidingWindowHistogram[] histograms = new SlidingWindowHistogram[components.size()];
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = components.get(i).histogram();
+    }
+    ExpiringSampledStatistic<Long> created = new ExpiringSampledStatistic<Long>(new ValueStatistic<Long>() {
+      @Override
+      public Long value() {
+        touchComponents();
+        return SlidingWindowHistogram.percentile(percentile, histograms);
+      }
+    }, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    percentileStatistics.put(percentile, created);
+    return created;
+  }
+
+  /**
+   * Start.
+   */
+  void start() {
+    minimumStatistic.start();
+    maximumStatistic.start();
+    averageStatistic.start();
+    samplingRateStatistic.start();
+    for (ExpiringSampledStatistic<Long> percentile : percentileStatistics.values()) {
+      percentile.start();
+    }
+  }
+
+  /**
+   * Expire.
+   *
+   * @param expiry the expiry
+   * @return true, if successful
+   */
+  boolean expire(long expiry) {
+    boolean expired = minimumStatistic.expire(expiry) & maximumStatistic.expire(expiry)
+        & averageStatistic.expire(expiry) & samplingRateStatistic.expire(expiry);
+    for (ExpiringSampledStatistic<Long> percentile : percentileStatistics.values()) {
+      expired &= percentile.expire(expiry);
+    }
+    return expired;
+  }
+
+  /**
+   * Sets the history.
+   *
+   * @param historySize     the history size
+   * @param historyPeriod   the history period
+   * @param historyTimeUnit the history unit
+   * @param historyRollups  the history rollup resolutions
+   */
+  void setHistory(int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    this.historySize = historySize;
+    this.historyPeriod = historyPeriod;
+    this.historyTimeUnit = historyTimeUnit;
+    this.historyRollups = historyRollups;
+    minimumStatistic.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    maximumStatistic.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    averageStatistic.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    samplingRateStatistic.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    for (ExpiringSampledStatistic<Long> percentile : percentileStatistics.values()) {
+      percentile.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    }
+  }
+
+  /*
+   * Keeps the component latencies attached while the compound is read.
+   */
+  private List<LatencyImpl<T>> touchComponents() {
+    for (LatencyImpl<T> component : components) {
+      component.touch();
+    }
+    return components;
+  }
+
+  private static <T extends Enum<T>> Long minimum(List<LatencyImpl<T>> components) {
+    Long minimum = null;
+    for (LatencyImpl<T> component : components) {
+      Long value = component.movingAverage().minimum();
+      if (value != null && (minimum == null || value < minimum)) {
+        minimum = value;
+      }
+    }
+    return minimum;
+  }
+
+  private static <T extends Enum<T>> Long maximum(List<LatencyImpl<T>> components) {
+    Long maximum = null;
+    for (LatencyImpl<T> component : components) {
+      Long value = component.movingAverage().maximum();
+      if (value != null && (maximum == null || value > maximum)) {
+        maximum = value;
+      }
+    }
+    return maximum;
+  }
+
+  private static <T extends Enum<T>> Double average(List<LatencyImpl<T>> components) {
+    long total = 0L;
+    long count = 0L;
+    for (LatencyImpl<T> component : components) {
+      EventParameterSimpleMovingAverage average = component.movingAverage();
+      total += average.total();
+      count += average.count();
+    }
+    return count == 0L ? Double.NaN : ((double) total) / count;
+  }
+}
@@ -15,6 +15,8 @@
  */
 package org.terracotta.statistics.extended;
 
+import org.terracotta.statistics.archive.RollupArchive;
+
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -96,6 +98,32 @@ public interface CompoundOperation<T extends Enum<T>> {
    */
   void setHistory(int samples, long time, TimeUnit unit);
 
+  /**
+   * Sets the history, additionally rolling it up at the given resolutions.
+   * <p>
+   * Rollups are read through {@link SampledStatistic#rollups(int)}, indexed
+   * in the order given here.  Passing no resolutions disables rollups.
+   *
+   * @param samples the samples
+   * @param time    the time
+   * @param unit    the unit
+   * @param rollups the rollup resolutions
+   */
+  void setHistory(int samples, long time, TimeUnit unit, RollupArchive.Resolution ... rollups);
+
+  /**
+   * Sets the latency sampling rate.
+   * <p>
+   * By default the latency of every operation is sampled.  A positive rate
+   * instead samples each result adaptively, recording roughly at most
+   * {@code samples} latencies per {@code unit}, at the cost of exact minimum
+   * and maximum latencies.  Passing zero restores sampling every operation.
+   *
+   * @param samples the target number of samples, or zero to sample everything
+   * @param unit    the unit
+   */
+  void setLatencySampling(long samples, TimeUnit unit);
+
   /**
    * Gets the window size.
    *
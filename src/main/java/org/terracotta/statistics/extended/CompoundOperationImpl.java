@@ -17,7 +17,9 @@ package org.terracotta.statistics.extended;
 
 import org.terracotta.statistics.OperationStatistic;
 import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.archive.RollupArchive;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
@@ -42,7 +44,7 @@ public class CompoundOperationImpl<T extends Enum<T>> implements CompoundOperati
 
   private final Class<T> type;
   private final Map<T, ResultImpl<T>> operations;
-  private final ConcurrentMap<Set<T>, ResultImpl<T>> compounds = new ConcurrentHashMap<Set<T>, ResultImpl<T>>();
+  private final ConcurrentMap<Set<T>, CompoundResultImpl<T>> compounds = new ConcurrentHashMap<Set<T>, CompoundResultImpl<T>>();
   private final ConcurrentMap<List<Set<T>>, ExpiringSampledStatistic<Double>> ratios = new ConcurrentHashMap<List<Set<T>>, ExpiringSampledStatistic<Double>>();
 
   private final ScheduledExecutorService executor;
@@ -52,6 +54,7 @@ public class CompoundOperationImpl<T extends Enum<T>> implements CompoundOperati
   private volatile int historySize;
   private volatile long historyPeriod;
   private volatile TimeUnit historyTimeUnit;
+  private volatile RollupArchive.Resolution[] historyRollups;
 
   private volatile boolean alwaysOn = false;
 
@@ -69,6 +72,24 @@ public class CompoundOperationImpl<T extends Enum<T>> implements CompoundOperati
    */
   public CompoundOperationImpl(OperationStatistic<T> source, Class<T> type, long averagePeriod, TimeUnit averageTimeUnit,
                                ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
+    this(source, type, averagePeriod, averageTimeUnit, executor, historySize, historyPeriod, historyTimeUnit, StatisticHistory.NO_ROLLUPS);
+  }
+
+  /**
+   * Instantiates a new compound operation impl with rolled up history.
+   *
+   * @param source        the source
+   * @param type          the type
+   * @param averagePeriod the average period
+   * @param averageTimeUnit   the average unit
+   * @param executor      the executor
+   * @param historySize   the history size
+   * @param historyPeriod the history period
+   * @param historyTimeUnit   the history unit
+   * @param historyRollups    the history rollup resolutions
+   */
+  public CompoundOperationImpl(OperationStatistic<T> source, Class<T> type, long averagePeriod, TimeUnit averageTimeUnit,
+                               ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
     this.type = type;
     this.source = source;
 
@@ -78,10 +99,11 @@ public class CompoundOperationImpl<T extends Enum<T>> implements CompoundOperati
     this.historySize = historySize;
     this.historyPeriod = historyPeriod;
     this.historyTimeUnit = historyTimeUnit;
+    this.historyRollups = historyRollups;
 
     this.operations = new EnumMap<T, ResultImpl<T>>(type);
     for (T result : type.getEnumConstants()) {
-      operations.put(result, new ResultImpl<T>(source, EnumSet.of(result), averagePeriod, averageTimeUnit, executor, historySize, historyPeriod, historyTimeUnit));
+      operations.put(result, new ResultImpl<T>(source, EnumSet.of(result), averagePeriod, averageTimeUnit, executor, historySize, historyPeriod, historyTimeUnit, historyRollups));
     }
   }
 
@@ -101,10 +123,14 @@ public class CompoundOperationImpl<T extends Enum<T>> implements CompoundOperati
       return component(results.iterator().next());
     } else {
       Set<T> key = EnumSet.copyOf(results);
-      ResultImpl<T> existing = compounds.get(key);
+      CompoundResultImpl<T> existing = compounds.get(key);
       if (existing == null) {
-        ResultImpl<T> created = new ResultImpl<T>(source, key, averagePeriod, averageTimeUnit, executor, historySize, historyPeriod, historyTimeUnit);
-        ResultImpl<T> racer = compounds.putIfAbsent(key, created);
+        List<ResultImpl<T>> components = new ArrayList<ResultImpl<T>>(key.size());
+        for (T result : key) {
+          components.add(operations.get(result));
+        }
+        CompoundResultImpl<T> created = new CompoundResultImpl<T>(source, key, components, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+        CompoundResultImpl<T> racer = compounds.putIfAbsent(key, created);
         if (racer == null) {
           return created;
         } else {
@@ -135,7 +161,7 @@ public class CompoundOperationImpl<T extends Enum<T>> implements CompoundOperati
         public Double value() {
           return numeratorRate.value() / denominatorRate.value();
         }
-      }, executor, historySize, historyPeriod, historyTimeUnit);
+      }, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
       ExpiringSampledStatistic<Double> racer = ratios.putIfAbsent(key, created);
       if (racer == null) {
         return created;
@@ -154,7 +180,7 @@ public class CompoundOperationImpl<T extends Enum<T>> implements CompoundOperati
       for (ResultImpl<T> op : operations.values()) {
         op.start();
       }
-      for (ResultImpl<T> op : compounds.values()) {
+      for (CompoundResultImpl<T> op : compounds.values()) {
         op.start();
       }
       for (ExpiringSampledStatistic<Double> ratio : ratios.values()) {
@@ -175,24 +201,37 @@ public class CompoundOperationImpl<T extends Enum<T>> implements CompoundOperati
     for (ResultImpl<T> op : operations.values()) {
       op.setWindow(averagePeriod, averageTimeUnit);
     }
-    for (ResultImpl<T> op : compounds.values()) {
-      op.setWindow(averagePeriod, averageTimeUnit);
-    }
   }
 
   @Override
   public void setHistory(int samples, long time, TimeUnit unit) {
+    setHistory(samples, time, unit, historyRollups);
+  }
+
+  @Override
+  public void setHistory(int samples, long time, TimeUnit unit, RollupArchive.Resolution ... rollups) {
+    historyRollups = rollups.clone();
     historySize = samples;
     historyPeriod = time;
     historyTimeUnit = unit;
     for (ResultImpl<T> op : operations.values()) {
-      op.setHistory(historySize, historyPeriod, historyTimeUnit);
+      op.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
     }
-    for (ResultImpl<T> op : compounds.values()) {
-      op.setHistory(historySize, historyPeriod, historyTimeUnit);
+    for (CompoundResultImpl<T> op : compounds.values()) {
+      op.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
     }
     for (ExpiringSampledStatistic<Double> ratio : ratios.values()) {
-      ratio.setHistory(historySize, historyPeriod, historyTimeUnit);
+      ratio.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    }
+  }
+
+  @Override
+  public void setLatencySampling(long samples, TimeUnit unit) {
+    if (samples < 0) {
+      throw new IllegalArgumentException("Sample rate must not be negative: " + samples);
+    }
+    for (ResultImpl<T> op : operations.values()) {
+      op.setLatencySampling(samples, unit);
     }
   }
 
@@ -231,7 +270,7 @@ public class CompoundOperationImpl<T extends Enum<T>> implements CompoundOperati
       for (ResultImpl<?> o : operations.values()) {
         expired &= o.expire(expiryTime);
       }
-      for (Iterator<ResultImpl<T>> it = compounds.values().iterator(); it.hasNext(); ) {
+      for (Iterator<CompoundResultImpl<T>> it = compounds.values().iterator(); it.hasNext(); ) {
         if (it.next().expire(expiryTime)) {
           it.remove();
         }
@@ -0,0 +1,175 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.extended;
+
+import org.terracotta.statistics.OperationStatistic;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.archive.RollupArchive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A result over several operation results, computed at read time from the
+ * statistics of its component results.
+ * <p>
+ * A compound registers nothing on the source statistic.  Reading a compound
+ * statistic reads (and so keeps active) the corresponding component
+ * statistics.
+ *
+ * @param <T> the generic type
+ */
+class CompoundResultImpl<T extends Enum<T>> implements Result {
+
+  private final List<ResultImpl<T>> components;
+  private final SemiExpiringSampledStatistic<Long> count;
+  private final ExpiringSampledStatistic<Double> rate;
+  private final CompoundLatencyImpl<T> latency;
+  private final Map<Long, ExpiringSampledStatistic<Double>> exponentialRates = new ConcurrentHashMap<Long, ExpiringSampledStatistic<Double>>();
+  private final ScheduledExecutorService executor;
+
+  private volatile int historySize;
+  private volatile long historyPeriod;
+  private volatile TimeUnit historyTimeUnit;
+  private volatile RollupArchive.Resolution[] historyRollups;
+
+  /**
+   * Instantiates a new compound result.
+   *
+   * @param source          the source
+   * @param targets         the targets
+   * @param components      the results of the individual targets
+   * @param executor        the executor
+   * @param historySize     the history size
+   * @param historyPeriod   the history period
+   * @param historyTimeUnit the history time unit
+   * @param historyRollups  the history rollup resolutions
+   */
+  CompoundResultImpl(OperationStatistic<T> source, Set<T> targets, List<ResultImpl<T>> components,
+                     ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    this.components = components;
+    this.executor = executor;
+    this.historySize = historySize;
+    this.historyPeriod = historyPeriod;
+    this.historyTimeUnit = historyTimeUnit;
+    this.historyRollups = historyRollups;
+    this.count = new SemiExpiringSampledStatistic<Long>(source.statistic(targets), executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    final List<SampledStatistic<Double>> rates = new ArrayList<SampledStatistic<Double>>(components.size());
+    List<LatencyImpl<T>> latencies = new ArrayList<LatencyImpl<T>>(components.size());
+    for (ResultImpl<T> component : components) {
+      rates.add(component.rate());
+      latencies.add(component.latencyImpl());
+    }
+    this.rate = new ExpiringSampledStatistic<Double>(sum(rates), executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    this.latency = new CompoundLatencyImpl<T>(latencies, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+  }
+
+  @Override
+  public SampledStatistic<Long> count() {
+    return count;
+  }
+
+  @Override
+  public SampledStatistic<Double> rate() {
+    return rate;
+  }
+
+  @Override
+  public synchronized SampledStatistic<Double> exponentialRate(long window, TimeUnit unit) {
+    Long key = unit.toNanos(window);
+    ExpiringSampledStatistic<Double> existing = exponentialRates.get(key);
+    if (existing != null) {
+      return existing;
+    }
+    List<SampledStatistic<Double>> rates = new ArrayList<SampledStatistic<Double>>(components.size());
+    for (ResultImpl<T> component : components) {
+      rates.add(component.exponentialRate(window, unit));
+    }
+    ExpiringSampledStatistic<Double> created = new ExpiringSampledStatistic<Double>(sum(rates), executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    exponentialRates.put(key, created);
+    return created;
+  }
+
+  @Override
+  public Latency latency() {
+    return latency;
+  }
+
+  /**
+   * Start.
+   */
+  void start() {
+    count.start();
+    rate.start();
+    latency.start();
+    for (ExpiringSampledStatistic<Double> exponentialRate : exponentialRates.values()) {
+      exponentialRate.start();
+    }
+  }
+
+  /**
+   * Expire.
+   *
+   * @param expiryTime the expiry time
+   * @return true, if successful
+   */
+  boolean expire(long expiryTime) {
+    boolean expired = count.expire(expiryTime) & rate.expire(expiryTime) & latency.expire(expiryTime);
+    for (ExpiringSampledStatistic<Double> exponentialRate : exponentialRates.values()) {
+      expired &= exponentialRate.expire(expiryTime);
+    }
+    return expired;
+  }
+
+  /**
+   * Sets the history.
+   *
+   * @param historySize     the history size
+   * @param historyPeriod   the history period
+   * @param historyTimeUnit the history time unit
+   * @param historyRollups  the history rollup resolutions
+   */
+  void setHistory(int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    this.historySize = historySize;
+    this.historyPeriod = historyPeriod;
+    this.historyTimeUnit = historyTimeUnit;
+    this.historyRollups = historyRollups;
+    count.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    rate.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    latency.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    for (ExpiringSampledStatistic<Double> exponentialRate : exponentialRates.values()) {
+      exponentialRate.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    }
+  }
+
+  private static ValueStatistic<Double> sum(final List<SampledStatistic<Double>> rates) {
+    return new ValueStatistic<Double>() {
+      @Override
+      public Double value() {
+        double sum = 0.0;
+        for (SampledStatistic<Double> rate : rates) {
+          sum += rate.value();
+        }
+        return sum;
+      }
+    };
+  }
+}
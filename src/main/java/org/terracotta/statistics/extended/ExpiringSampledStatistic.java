@@ -16,6 +16,7 @@
 package org.terracotta.statistics.extended;
 
 import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.archive.RollupArchive;
 
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -36,8 +37,8 @@ class ExpiringSampledStatistic<T extends Number> extends SemiExpiringSampledStat
    * @param historySize   size of sample history
    * @param historyPeriod period between samples
    */
-  public ExpiringSampledStatistic(ValueStatistic<T> source, ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
-    super(source, executor, historySize, historyPeriod, historyTimeUnit);
+  public ExpiringSampledStatistic(ValueStatistic<T> source, ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    super(source, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
   }
 
   @Override
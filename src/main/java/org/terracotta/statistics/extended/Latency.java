@@ -40,4 +40,26 @@ public interface Latency {
    * @return Average observed latency. NULL if no operation was observed.
    */
   SampledStatistic<Double> average();
+
+  /**
+   * Observed latency at the given percentile over the average window.
+   * <p>
+   * Percentiles are computed from a windowed histogram that is attached on the
+   * first request, and so only cover latencies observed from that point on.
+   *
+   * @param percentile the percentile, from 0 to 100 (e.g. 99.9)
+   * @return Observed latency at the percentile. NULL if no operation was observed.
+   */
+  SampledStatistic<Long> percentile(double percentile);
+
+  /**
+   * Fraction of operations whose latency is currently sampled.
+   * <p>
+   * When below one, as it may be after
+   * {@link CompoundOperation#setLatencySampling(long, java.util.concurrent.TimeUnit)},
+   * the minimum and maximum are those of the sampled operations only.
+   *
+   * @return the effective sampling rate, from 0 to 1
+   */
+  SampledStatistic<Double> samplingRate();
 }
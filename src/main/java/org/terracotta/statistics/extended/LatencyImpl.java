@@ -18,11 +18,16 @@ package org.terracotta.statistics.extended;
 import org.terracotta.statistics.OperationStatistic;
 import org.terracotta.statistics.SourceStatistic;
 import org.terracotta.statistics.Time;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.archive.RollupArchive;
 import org.terracotta.statistics.derived.EventParameterSimpleMovingAverage;
 import org.terracotta.statistics.derived.LatencySampling;
+import org.terracotta.statistics.derived.SlidingWindowHistogram;
 import org.terracotta.statistics.observer.ChainedOperationObserver;
 
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -33,12 +38,36 @@ import java.util.concurrent.TimeUnit;
  * @author cdennis
  */
 class LatencyImpl<T extends Enum<T>> implements Latency {
+
+  /**
+   * Latencies beyond this are recorded as this in the percentile histogram.
+   */
+  private static final long HISTOGRAM_HIGHEST_LATENCY = TimeUnit.MINUTES.toNanos(1);
+  private static final int HISTOGRAM_SIGNIFICANT_DIGITS = 2;
+
+  /**
+   * By default every operation is sampled, so minimum and maximum latencies are exact.
+   */
+  private static final double LATENCY_SAMPLING = 1.0;
+
   private final SourceStatistic<ChainedOperationObserver<? super T>> source;
-  private final LatencySampling<T> latencySampler;
+  private final Set<T> targets;
+  private volatile LatencySampling<T> latencySampler;
   private final EventParameterSimpleMovingAverage average;
   private final SampledStatisticImpl<Long> minimumStatistic;
   private final SampledStatisticImpl<Long> maximumStatistic;
   private final SampledStatisticImpl<Double> averageStatistic;
+  private final SampledStatisticImpl<Double> samplingRateStatistic;
+  private final ConcurrentMap<Double, SampledStatisticImpl<Long>> percentileStatistics = new ConcurrentHashMap<Double, SampledStatisticImpl<Long>>();
+  private final ScheduledExecutorService executor;
+
+  private SlidingWindowHistogram histogram;
+  private long averagePeriod;
+  private TimeUnit averageTimeUnit;
+  private volatile int historySize;
+  private volatile long historyPeriod;
+  private volatile TimeUnit historyTimeUnit;
+  private volatile RollupArchive.Resolution[] historyRollups;
 
   private boolean active = false;
   private long touchTimestamp = -1;
@@ -54,16 +83,31 @@ class LatencyImpl<T extends Enum<T>> implements Latency {
    * @param historySize     the history size
    * @param historyPeriod   the history period
    * @param historyTimeUnit the history time unit
+   * @param historyRollups  the history rollup resolutions
    */
   public LatencyImpl(OperationStatistic<T> statistic, Set<T> targets, long averagePeriod, TimeUnit averageTimeUnit,
-                     ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
+                     ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
     this.average = new EventParameterSimpleMovingAverage(averagePeriod, averageTimeUnit);
-    this.minimumStatistic = new SampledStatisticImpl<Long>(this, average.minimumStatistic(), executor, historySize, historyPeriod, historyTimeUnit);
-    this.maximumStatistic = new SampledStatisticImpl<Long>(this, average.maximumStatistic(), executor, historySize, historyPeriod, historyTimeUnit);
-    this.averageStatistic = new SampledStatisticImpl<Double>(this, average.averageStatistic(), executor, historySize, historyPeriod, historyTimeUnit);
-    this.latencySampler = new LatencySampling<T>(targets, 1.0);
+    this.minimumStatistic = new SampledStatisticImpl<Long>(this, average.minimumStatistic(), executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    this.maximumStatistic = new SampledStatisticImpl<Long>(this, average.maximumStatistic(), executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    this.averageStatistic = new SampledStatisticImpl<Double>(this, average.averageStatistic(), executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    this.latencySampler = new LatencySampling<T>(targets, LATENCY_SAMPLING);
+    this.samplingRateStatistic = new SampledStatisticImpl<Double>(this, new ValueStatistic<Double>() {
+      @Override
+      public Double value() {
+        return latencySampler.samplingRate();
+      }
+    }, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
     this.latencySampler.addDerivedStatistic(average);
     this.source = statistic;
+    this.targets = targets;
+    this.averagePeriod = averagePeriod;
+    this.averageTimeUnit = averageTimeUnit;
+    this.executor = executor;
+    this.historySize = historySize;
+    this.historyPeriod = historyPeriod;
+    this.historyTimeUnit = historyTimeUnit;
+    this.historyRollups = historyRollups;
   }
 
   /**
@@ -75,6 +119,10 @@ class LatencyImpl<T extends Enum<T>> implements Latency {
       minimumStatistic.startSampling();
       maximumStatistic.startSampling();
       averageStatistic.startSampling();
+      samplingRateStatistic.startSampling();
+      for (SampledStatisticImpl<Long> percentile : percentileStatistics.values()) {
+        percentile.startSampling();
+      }
       active = true;
     }
   }
@@ -103,6 +151,79 @@ class LatencyImpl<T extends Enum<T>> implements Latency {
     return averageStatistic;
   }
 
+  /**
+   * Get the sampling rate.
+   */
+  @Override
+  public SampledStatistic<Double> samplingRate() {
+    return samplingRateStatistic;
+  }
+
+  /**
+   * Get a percentile.
+   */
+  @Override
+  public synchronized SampledStatistic<Long> percentile(double percentile) {
+    SampledStatisticImpl<Long> existing = percentileStatistics.get(percentile);
+    if (existing != null) {
+      return existing;
+    }
+    SampledStatisticImpl<Long> created = new SampledStatisticImpl<Long>(this, histogram().percentileStatistic(percentile), executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    if (active) {
+      created.startSampling();
+    }
+    percentileStatistics.put(percentile, created);
+    return created;
+  }
+
+  /**
+   * Returns the percentile histogram, attaching it if necessary.
+   *
+   * @return the windowed histogram
+   */
+  synchronized SlidingWindowHistogram histogram() {
+    if (histogram == null) {
+      histogram = new SlidingWindowHistogram(averagePeriod, averageTimeUnit, HISTOGRAM_HIGHEST_LATENCY, HISTOGRAM_SIGNIFICANT_DIGITS);
+      latencySampler.addDerivedStatistic(histogram);
+    }
+    return histogram;
+  }
+
+  /**
+   * Sets the latency sampling rate.
+   * <p>
+   * A zero rate samples every operation, a positive rate samples adaptively so
+   * as to record roughly at most {@code samples} latencies per {@code unit}.
+   *
+   * @param samples the target number of samples, or zero to sample everything
+   * @param unit    the period the target number of samples is per
+   */
+  synchronized void setSampling(long samples, TimeUnit unit) {
+    LatencySampling<T> sampler;
+    if (samples == 0) {
+      sampler = new LatencySampling<T>(targets, LATENCY_SAMPLING);
+    } else {
+      sampler = new LatencySampling<T>(targets, samples, unit);
+    }
+    sampler.addDerivedStatistic(average);
+    if (histogram != null) {
+      sampler.addDerivedStatistic(histogram);
+    }
+    if (active) {
+      source.removeDerivedStatistic(latencySampler);
+      source.addDerivedStatistic(sampler);
+    }
+    latencySampler = sampler;
+  }
+
+  EventParameterSimpleMovingAverage movingAverage() {
+    return average;
+  }
+
+  double samplingProbability() {
+    return latencySampler.samplingRate();
+  }
+
   synchronized void touch() {
     touchTimestamp = Time.absoluteTime();
     start();
@@ -121,6 +242,10 @@ class LatencyImpl<T extends Enum<T>> implements Latency {
         minimumStatistic.stopSampling();
         maximumStatistic.stopSampling();
         averageStatistic.stopSampling();
+        samplingRateStatistic.stopSampling();
+        for (SampledStatisticImpl<Long> percentile : percentileStatistics.values()) {
+          percentile.stopSampling();
+        }
         active = false;
       }
       return true;
@@ -135,8 +260,13 @@ class LatencyImpl<T extends Enum<T>> implements Latency {
    * @param averagePeriod   the new window
    * @param averageTimeUnit the new window's time unit
    */
-  void setWindow(long averagePeriod, TimeUnit averageTimeUnit) {
+  synchronized void setWindow(long averagePeriod, TimeUnit averageTimeUnit) {
+    this.averagePeriod = averagePeriod;
+    this.averageTimeUnit = averageTimeUnit;
     average.setWindow(averagePeriod, averageTimeUnit);
+    if (histogram != null) {
+      histogram.setWindow(averagePeriod, averageTimeUnit);
+    }
   }
 
   /**
@@ -145,11 +275,20 @@ class LatencyImpl<T extends Enum<T>> implements Latency {
    * @param historySize     the history size
    * @param historyPeriod   the history period
    * @param historyTimeUnit the history unit
+   * @param historyRollups  the history rollup resolutions
    */
-  void setHistory(int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
-    minimumStatistic.setHistory(historySize, historyPeriod, historyTimeUnit);
-    maximumStatistic.setHistory(historySize, historyPeriod, historyTimeUnit);
-    averageStatistic.setHistory(historySize, historyPeriod, historyTimeUnit);
+  void setHistory(int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    this.historySize = historySize;
+    this.historyPeriod = historyPeriod;
+    this.historyTimeUnit = historyTimeUnit;
+    this.historyRollups = historyRollups;
+    minimumStatistic.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    maximumStatistic.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    averageStatistic.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    samplingRateStatistic.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    for (SampledStatisticImpl<Long> percentile : percentileStatistics.values()) {
+      percentile.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    }
   }
 
   public boolean active() {
@@ -15,6 +15,8 @@
  */
 package org.terracotta.statistics.extended;
 
+import org.terracotta.statistics.archive.ArchiveCursor;
+import org.terracotta.statistics.archive.RollupArchive;
 import org.terracotta.statistics.archive.Timestamped;
 
 import java.util.Collections;
@@ -122,6 +124,22 @@ public final class NullCompoundOperation<T extends Enum<T>> implements CompoundO
     //no-op
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setHistory(int samples, long time, TimeUnit unit, RollupArchive.Resolution ... rollups) {
+    //no-op
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void setLatencySampling(long samples, TimeUnit unit) {
+    //no-op
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -196,6 +214,14 @@ public final class NullCompoundOperation<T extends Enum<T>> implements CompoundO
       return NullSampledStatistic.instance(Double.NaN);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SampledStatistic<Double> exponentialRate(long window, TimeUnit unit) {
+      return NullSampledStatistic.instance(Double.NaN);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -252,6 +278,22 @@ public final class NullCompoundOperation<T extends Enum<T>> implements CompoundO
     public SampledStatistic<Double> average() {
       return NullSampledStatistic.instance(Double.NaN);
     }
+
+    /**
+     * percentile
+     */
+    @Override
+    public SampledStatistic<Long> percentile(double percentile) {
+      return NullSampledStatistic.instance(null);
+    }
+
+    /**
+     * sampling rate
+     */
+    @Override
+    public SampledStatistic<Double> samplingRate() {
+      return NullSampledStatistic.instance(Double.NaN);
+    }
   }
 
   /**
@@ -306,6 +348,22 @@ public final class NullCompoundOperation<T extends Enum<T>> implements CompoundO
       return Collections.emptyList();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Timestamped<T>> history(ArchiveCursor cursor) {
+      return Collections.emptyList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<RollupArchive.Rollup> rollups(int resolution) {
+      return Collections.emptyList();
+    }
+
     /**
      * instance
      *
@@ -15,14 +15,21 @@
  */
 package org.terracotta.statistics.extended;
 
+import org.terracotta.statistics.SharedCoarseTimeSource;
 import org.terracotta.statistics.OperationStatistic;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.archive.ArchiveCursor;
+import org.terracotta.statistics.archive.RollupArchive;
 import org.terracotta.statistics.archive.Timestamped;
+import org.terracotta.statistics.derived.EventRateExponentialMovingAverage;
 import org.terracotta.statistics.derived.EventRateSimpleMovingAverage;
 import org.terracotta.statistics.derived.OperationResultFilter;
 import org.terracotta.statistics.observer.ChainedOperationObserver;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -34,6 +41,13 @@ import java.util.concurrent.TimeUnit;
  */
 public class RateImpl<T extends Enum<T>> implements SampledStatistic<Double> {
 
+  /**
+   * Rate windows only need partition level precision, so events are
+   * timestamped from a shared coarse clock rather than {@code System.nanoTime()}.
+   * The clock only ticks while some rate is being recorded.
+   */
+  private static final SharedCoarseTimeSource RATE_TIME_SOURCE = new SharedCoarseTimeSource(10, TimeUnit.MILLISECONDS);
+
   private final ExpiringSampledStatistic<Double> delegate;
 
   /**
@@ -41,6 +55,23 @@ public class RateImpl<T extends Enum<T>> implements SampledStatistic<Double> {
    */
   private final EventRateSimpleMovingAverage rate;
 
+  private final OperationStatistic<T> source;
+  private final Set<T> targets;
+  private final ScheduledExecutorService executor;
+  private final Map<Long, ExpiringSampledStatistic<Double>> exponentialRates = new ConcurrentHashMap<Long, ExpiringSampledStatistic<Double>>();
+
+  /**
+   * The exponential rates, created on first use and shared by all windows.
+   */
+  private EventRateExponentialMovingAverage exponential;
+  private ChainedOperationObserver<T> exponentialObserver;
+  private int exponentialUsers;
+
+  private volatile int historySize;
+  private volatile long historyPeriod;
+  private volatile TimeUnit historyTimeUnit;
+  private volatile RollupArchive.Resolution[] historyRollups;
+
   /**
    * Instantiates a new rate statistic.
    *
@@ -52,20 +83,51 @@ public class RateImpl<T extends Enum<T>> implements SampledStatistic<Double> {
    */
   public RateImpl(final OperationStatistic<T> source, final Set<T> targets, long averagePeriod, TimeUnit averageTimeUnit,
                   ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
-    this.rate = new EventRateSimpleMovingAverage(averagePeriod, averageTimeUnit);
-    this.delegate = new ExpiringSampledStatistic<Double>(rate, executor, historySize, historyPeriod, historyTimeUnit) {
+    this(source, targets, averagePeriod, averageTimeUnit, executor, historySize, historyPeriod, historyTimeUnit, StatisticHistory.NO_ROLLUPS);
+  }
 
-      private final ChainedOperationObserver<T> observer = new OperationResultFilter<T>(targets, rate);
+  /**
+   * Instantiates a new rate statistic with rolled up history.
+   *
+   * @param targets        the targets
+   * @param averagePeriod  the average period
+   * @param executor       the executor
+   * @param historySize    the history size
+   * @param historyPeriod  the history period
+   * @param historyRollups the history rollup resolutions
+   */
+  public RateImpl(final OperationStatistic<T> source, final Set<T> targets, long averagePeriod, TimeUnit averageTimeUnit,
+                  ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    this.source = source;
+    this.targets = targets;
+    this.executor = executor;
+    this.historySize = historySize;
+    this.historyPeriod = historyPeriod;
+    this.historyTimeUnit = historyTimeUnit;
+    this.historyRollups = historyRollups;
+    this.rate = new EventRateSimpleMovingAverage(averagePeriod, averageTimeUnit, RATE_TIME_SOURCE);
+    ValueStatistic<Double> flushingRate = new ValueStatistic<Double>() {
+      @Override
+      public Double value() {
+        source.flush();
+        return rate.value();
+      }
+    };
+    this.delegate = new ExpiringSampledStatistic<Double>(flushingRate, executor, historySize, historyPeriod, historyTimeUnit, historyRollups) {
+
+      private final ChainedOperationObserver<T> observer = new OperationResultFilter<T>(targets, RATE_TIME_SOURCE, rate);
 
       @Override
       protected void stopStatistic() {
         super.stopStatistic();
         source.removeDerivedStatistic(observer);
+        RATE_TIME_SOURCE.release();
       }
 
       @Override
       protected void startStatistic() {
         super.startStatistic();
+        RATE_TIME_SOURCE.acquire();
         source.addDerivedStatistic(observer);
       }
     };
@@ -86,6 +148,74 @@ public class RateImpl<T extends Enum<T>> implements SampledStatistic<Double> {
     return delegate.history();
   }
 
+  @Override
+  public List<Timestamped<Double>> history(ArchiveCursor cursor) {
+    return delegate.history(cursor);
+  }
+
+  @Override
+  public List<RollupArchive.Rollup> rollups(int resolution) {
+    return delegate.rollups(resolution);
+  }
+
+  /**
+   * Returns an exponentially weighted moving average rate over the given window.
+   *
+   * @param window the averaging window
+   * @param unit the window unit
+   * @return the rate statistic
+   * @throws IllegalArgumentException if the window is not supported
+   */
+  public synchronized SampledStatistic<Double> exponentialRate(long window, TimeUnit unit) {
+    Long key = unit.toNanos(window);
+    ExpiringSampledStatistic<Double> existing = exponentialRates.get(key);
+    if (existing != null) {
+      return existing;
+    }
+    if (exponential == null) {
+      exponential = new EventRateExponentialMovingAverage(RATE_TIME_SOURCE);
+      exponentialObserver = new OperationResultFilter<T>(targets, RATE_TIME_SOURCE, exponential);
+    }
+    final ValueStatistic<Double> exponentialRate = exponential.rateStatistic(window, unit);
+    ValueStatistic<Double> flushingRate = new ValueStatistic<Double>() {
+      @Override
+      public Double value() {
+        source.flush();
+        return exponentialRate.value();
+      }
+    };
+    ExpiringSampledStatistic<Double> created = new ExpiringSampledStatistic<Double>(flushingRate, executor, historySize, historyPeriod, historyTimeUnit, historyRollups) {
+
+      @Override
+      protected void stopStatistic() {
+        super.stopStatistic();
+        releaseExponential();
+      }
+
+      @Override
+      protected void startStatistic() {
+        super.startStatistic();
+        acquireExponential();
+      }
+    };
+    exponentialRates.put(key, created);
+    return created;
+  }
+
+  private synchronized void acquireExponential() {
+    if (exponentialUsers++ == 0) {
+      RATE_TIME_SOURCE.acquire();
+      source.addDerivedStatistic(exponentialObserver);
+    }
+  }
+
+  private synchronized void releaseExponential() {
+    if (--exponentialUsers == 0) {
+      source.removeDerivedStatistic(exponentialObserver);
+      RATE_TIME_SOURCE.release();
+    }
+  }
+
   /**
    * Start sampling.
    */
@@ -109,9 +239,17 @@ public class RateImpl<T extends Enum<T>> implements SampledStatistic<Double> {
    * @param historySize     history sample size
    * @param historyPeriod   history sample period
    * @param historyTimeUnit history time unit
+   * @param historyRollups  history rollup resolutions
    */
-  protected void setHistory(int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
-    delegate.setHistory(historySize, historyPeriod, historyTimeUnit);
+  protected void setHistory(int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    this.historySize = historySize;
+    this.historyPeriod = historyPeriod;
+    this.historyTimeUnit = historyTimeUnit;
+    this.historyRollups = historyRollups;
+    delegate.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    for (ExpiringSampledStatistic<Double> exponentialRate : exponentialRates.values()) {
+      exponentialRate.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    }
   }
 
   /**
@@ -121,6 +259,10 @@ public class RateImpl<T extends Enum<T>> implements SampledStatistic<Double> {
    * @return {@code true} if expired
    */
   protected boolean expire(long expiry) {
-    return delegate.expire(expiry);
+    boolean expired = delegate.expire(expiry);
+    for (ExpiringSampledStatistic<Double> exponentialRate : exponentialRates.values()) {
+      expired &= exponentialRate.expire(expiry);
+    }
+    return expired;
   }
 }
@@ -15,6 +15,8 @@
  */
 package org.terracotta.statistics.extended;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author Ludovic Orban
  */
@@ -34,6 +36,18 @@ public interface Result {
    */
   SampledStatistic<Double> rate();
 
+  /**
+   * Exponentially weighted moving average rate.
+   * <p>
+   * The one, five and fifteen minute windows are supported.
+   *
+   * @param window the averaging window
+   * @param unit the window unit
+   * @return the statistic
+   * @throws IllegalArgumentException if the window is not supported
+   */
+  SampledStatistic<Double> exponentialRate(long window, TimeUnit unit);
+
   /**
    * Latency.
    *
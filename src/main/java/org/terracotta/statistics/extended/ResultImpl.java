@@ -16,6 +16,7 @@
 package org.terracotta.statistics.extended;
 
 import org.terracotta.statistics.OperationStatistic;
+import org.terracotta.statistics.archive.RollupArchive;
 
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
@@ -55,10 +56,10 @@ class ResultImpl<T extends Enum<T>> implements Result {
    * @param historyPeriod the history period
    */
   public ResultImpl(OperationStatistic<T> source, Set<T> targets, long averagePeriod, TimeUnit averageTimeUnit,
-                    ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
-    this.count = new SemiExpiringSampledStatistic<Long>(source.statistic(targets), executor, historySize, historyPeriod, historyTimeUnit);
-    this.latency = new LatencyImpl<T>(source, targets, averagePeriod, averageTimeUnit, executor, historySize, historyPeriod, historyTimeUnit);
-    this.rate = new RateImpl<T>(source, targets, averagePeriod, averageTimeUnit, executor, historySize, historyPeriod, historyTimeUnit);
+                    ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    this.count = new SemiExpiringSampledStatistic<Long>(source.statistic(targets), executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    this.latency = new LatencyImpl<T>(source, targets, averagePeriod, averageTimeUnit, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
+    this.rate = new RateImpl<T>(source, targets, averagePeriod, averageTimeUnit, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
   }
 
   @Override
@@ -66,6 +67,11 @@ class ResultImpl<T extends Enum<T>> implements Result {
     return rate;
   }
 
+  @Override
+  public SampledStatistic<Double> exponentialRate(long window, TimeUnit unit) {
+    return rate.exponentialRate(window, unit);
+  }
+
   @Override
   public Latency latency() throws UnsupportedOperationException {
     return latency;
@@ -76,6 +82,10 @@ class ResultImpl<T extends Enum<T>> implements Result {
     return count;
   }
 
+  LatencyImpl<T> latencyImpl() {
+    return latency;
+  }
+
   /**
    * Start.
    */
@@ -106,15 +116,25 @@ class ResultImpl<T extends Enum<T>> implements Result {
     latency.setWindow(averagePeriod, averageTimeUnit);
   }
 
+  /**
+   * Sets the latency sampling rate.
+   *
+   * @param samples the target number of samples, or zero to sample everything
+   * @param unit    the period the target number of samples is per
+   */
+  void setLatencySampling(long samples, TimeUnit unit) {
+    latency.setSampling(samples, unit);
+  }
+
   /**
    * Sets the history.
    *
    * @param historySize   the history size
    * @param historyPeriod the history period
    */
-  void setHistory(int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
-    count.setHistory(historySize, historyPeriod, historyTimeUnit);
-    rate.setHistory(historySize, historyPeriod, historyTimeUnit);
-    latency.setHistory(historySize, historyPeriod, historyTimeUnit);
+  void setHistory(int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    count.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    rate.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
+    latency.setHistory(historySize, historyPeriod, historyTimeUnit, historyRollups);
   }
 }
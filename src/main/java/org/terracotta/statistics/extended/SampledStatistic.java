@@ -15,6 +15,8 @@
  */
 package org.terracotta.statistics.extended;
 
+import org.terracotta.statistics.archive.ArchiveCursor;
+import org.terracotta.statistics.archive.RollupArchive;
 import org.terracotta.statistics.archive.Timestamped;
 
 import java.util.List;
@@ -44,4 +46,20 @@ public interface SampledStatistic<T extends Number> {
    * @return the list
    */
   List<Timestamped<T>> history();
+
+  /**
+   * History samples taken since the cursor's last read.
+   *
+   * @param cursor the read position, advanced by this call
+   * @return the list of new samples
+   */
+  List<Timestamped<T>> history(ArchiveCursor cursor);
+
+  /**
+   * Completed history rollups at one of the configured rollup resolutions.
+   *
+   * @param resolution index of the resolution in configuration order
+   * @return the list of rollups, empty if there is no such resolution
+   */
+  List<RollupArchive.Rollup> rollups(int resolution);
 }
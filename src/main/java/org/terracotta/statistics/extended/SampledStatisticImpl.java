@@ -16,6 +16,8 @@
 package org.terracotta.statistics.extended;
 
 import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.archive.ArchiveCursor;
+import org.terracotta.statistics.archive.RollupArchive;
 import org.terracotta.statistics.archive.Timestamped;
 
 import java.util.List;
@@ -37,9 +39,10 @@ class SampledStatisticImpl<T extends Number> extends AbstractSampledStatistic<T>
    * @param historySize     the history size
    * @param historyPeriod   the history period
    * @param historyTimeUnit the history time unit
+   * @param historyRollups  the history rollup resolutions
    */
-  public SampledStatisticImpl(LatencyImpl latency, ValueStatistic<T> value, ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
-    super(value, executor, historySize, historyPeriod, historyTimeUnit);
+  public SampledStatisticImpl(LatencyImpl latency, ValueStatistic<T> value, ScheduledExecutorService executor, int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] historyRollups) {
+    super(value, executor, historySize, historyPeriod, historyTimeUnit, historyRollups);
     this.latency = latency;
   }
 
@@ -59,4 +62,16 @@ class SampledStatisticImpl<T extends Number> extends AbstractSampledStatistic<T>
     latency.touch();
     return super.history();
   }
+
+  @Override
+  public List<Timestamped<T>> history(ArchiveCursor cursor) {
+    latency.touch();
+    return super.history(cursor);
+  }
+
+  @Override
+  public List<RollupArchive.Rollup> rollups(int resolution) {
+    latency.touch();
+    return super.rollups(resolution);
+  }
 }
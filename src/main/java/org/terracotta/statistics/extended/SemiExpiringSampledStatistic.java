@@ -17,6 +17,8 @@ package org.terracotta.statistics.extended;
 
 import org.terracotta.statistics.Time;
 import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.archive.ArchiveCursor;
+import org.terracotta.statistics.archive.RollupArchive;
 import org.terracotta.statistics.archive.Timestamped;
 
 import java.util.List;
@@ -52,7 +54,22 @@ public class SemiExpiringSampledStatistic<T extends Number> extends AbstractSamp
    * @param historyTimeUnit unit of period between samples
    */
   public SemiExpiringSampledStatistic(ValueStatistic<T> source, ScheduledExecutorService executor, int historySize, long historyTime, TimeUnit historyTimeUnit) {
-    super(source, executor, historySize, historyTime, historyTimeUnit);
+    this(source, executor, historySize, historyTime, historyTimeUnit, StatisticHistory.NO_ROLLUPS);
+  }
+
+  /**
+   * Creates a new semi-expiring statistic with rolled up history.
+   *
+   * @param source          statistic source
+   * @param executor        executor to use for sampling
+   * @param historySize     size of sample history
+   * @param historyTime     period between samples
+   * @param historyTimeUnit unit of period between samples
+   * @param historyRollups  resolutions the history is rolled up at
+   */
+  public SemiExpiringSampledStatistic(ValueStatistic<T> source, ScheduledExecutorService executor, int historySize, long historyTime, TimeUnit historyTimeUnit,
+                                      RollupArchive.Resolution[] historyRollups) {
+    super(source, executor, historySize, historyTime, historyTimeUnit, historyRollups);
   }
 
   @Override
@@ -61,6 +78,18 @@ public class SemiExpiringSampledStatistic<T extends Number> extends AbstractSamp
     return super.history();
   }
 
+  @Override
+  public List<Timestamped<T>> history(ArchiveCursor cursor) {
+    touch();
+    return super.history(cursor);
+  }
+
+  @Override
+  public List<RollupArchive.Rollup> rollups(int resolution) {
+    touch();
+    return super.rollups(resolution);
+  }
+
   @Override
   public final synchronized boolean active() {
     return active;
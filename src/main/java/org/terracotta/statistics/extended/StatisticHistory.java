@@ -16,22 +16,32 @@
 package org.terracotta.statistics.extended;
 
 import org.terracotta.statistics.ValueStatistic;
-import org.terracotta.statistics.archive.StatisticArchive;
+import org.terracotta.statistics.archive.ArchiveCursor;
+import org.terracotta.statistics.archive.PrimitiveStatisticArchive;
+import org.terracotta.statistics.archive.RollupArchive;
+import org.terracotta.statistics.archive.SampleSink;
 import org.terracotta.statistics.archive.StatisticSampler;
 import org.terracotta.statistics.archive.Timestamped;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * The Class StatisticHistory.
+ * <p>
+ * When rollup resolutions are configured the samples are additionally
+ * consolidated in to a {@link RollupArchive} sharing the raw history.
  *
  * @param <T> the generic type
  * @author cdennis
  */
 class StatisticHistory<T extends Number> {
 
+  static final RollupArchive.Resolution[] NO_ROLLUPS = new RollupArchive.Resolution[0];
+
   /**
    * The sampler.
    */
@@ -40,7 +50,13 @@ class StatisticHistory<T extends Number> {
   /**
    * The history.
    */
-  private final StatisticArchive<T> history;
+  private final PrimitiveStatisticArchive<T> history;
+
+  /**
+   * The rollups, {@code null} if none are configured.
+   */
+  private volatile RollupArchive<T> rollups;
+  private RollupArchive.Resolution[] resolutions = NO_ROLLUPS;
 
   /**
    * Instantiates a new sampled statistic.
@@ -50,10 +66,23 @@ class StatisticHistory<T extends Number> {
    * @param historySize    the history size
    * @param period         the period
    * @param periodTimeUnit the period's time unit
+   * @param resolutions    the rollup resolutions
    */
-  public StatisticHistory(ValueStatistic<T> statistic, ScheduledExecutorService executor, int historySize, long period, TimeUnit periodTimeUnit) {
-    this.history = new StatisticArchive<T>(historySize);
-    this.sampler = new StatisticSampler<T>(executor, period, periodTimeUnit, statistic, history);
+  public StatisticHistory(ValueStatistic<T> statistic, ScheduledExecutorService executor, int historySize, long period, TimeUnit periodTimeUnit,
+                          RollupArchive.Resolution[] resolutions) {
+    this.history = new PrimitiveStatisticArchive<T>(historySize);
+    this.sampler = new StatisticSampler<T>(executor, period, periodTimeUnit, statistic, new SampleSink<Timestamped<T>>() {
+      @Override
+      public void accept(Timestamped<T> object) {
+        RollupArchive<T> current = rollups;
+        if (current == null) {
+          history.accept(object);
+        } else {
+          current.accept(object);
+        }
+      }
+    });
+    setRollups(resolutions);
   }
 
   /**
@@ -68,7 +97,12 @@ class StatisticHistory<T extends Number> {
    */
   public void stopSampling() {
     sampler.stop();
-    history.clear();
+    RollupArchive<T> current = rollups;
+    if (current == null) {
+      history.clear();
+    } else {
+      current.clear();
+    }
   }
 
   /**
@@ -80,15 +114,56 @@ class StatisticHistory<T extends Number> {
     return history.getArchive();
   }
 
+  /**
+   * History since the cursor's last read.
+   *
+   * @param cursor the read position
+   * @return the list
+   */
+  public List<Timestamped<T>> history(ArchiveCursor cursor) {
+    return history.getArchive(cursor);
+  }
+
+  /**
+   * Completed rollups at a resolution.
+   *
+   * @param resolution index of the configured resolution
+   * @return the list, empty if there is no such resolution
+   */
+  public List<RollupArchive.Rollup> rollups(int resolution) {
+    RollupArchive<T> current = rollups;
+    if (current == null || resolution < 0 || resolution >= current.resolutions()) {
+      return Collections.emptyList();
+    } else {
+      return current.getRollups(resolution);
+    }
+  }
+
   /**
    * Adjust.
    *
    * @param historySize     the history size
    * @param historyPeriod   the history period
    * @param historyTimeUnit the history period's time unit
+   * @param resolutions     the rollup resolutions
    */
-  void adjust(int historySize, long historyPeriod, TimeUnit historyTimeUnit) {
+  void adjust(int historySize, long historyPeriod, TimeUnit historyTimeUnit, RollupArchive.Resolution[] resolutions) {
     history.setCapacity(historySize);
     sampler.setPeriod(historyPeriod, historyTimeUnit);
+    setRollups(resolutions);
+  }
+
+  /*
+   * Existing rollups are kept unless the resolutions change.
+   */
+  private synchronized void setRollups(RollupArchive.Resolution[] resolutions) {
+    if (!Arrays.equals(this.resolutions, resolutions)) {
+      this.resolutions = resolutions.clone();
+      if (resolutions.length == 0) {
+        rollups = null;
+      } else {
+        rollups = new RollupArchive<T>(history, resolutions);
+      }
+    }
   }
 }
@@ -0,0 +1,54 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.observer;
+
+/**
+ * A convenience base class for event observers that only implement the
+ * variable arity {@link #event(long, long...)} method.
+ * <p>
+ * The fixed arity methods are bridged on to the variable arity form.  Bridging
+ * the parameterless event uses a shared empty array, but the single and two
+ * parameter forms must allocate.  Performance sensitive observers should
+ * therefore implement {@link ChainedEventObserver} directly.
+ * <p>
+ * Batched events are bridged on to one parameterless event per member.
+ */
+public abstract class AbstractChainedEventObserver implements ChainedEventObserver {
+
+  private static final long[] NO_PARAMETERS = new long[0];
+
+  @Override
+  public void event(long time) {
+    event(time, NO_PARAMETERS);
+  }
+
+  @Override
+  public void event(long time, long parameter) {
+    event(time, new long[] {parameter});
+  }
+
+  @Override
+  public void event(long time, long parameter0, long parameter1) {
+    event(time, new long[] {parameter0, parameter1});
+  }
+
+  @Override
+  public void events(long time, long count) {
+    for (long i = 0; i < count; i++) {
+      event(time);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.observer;
+
+/**
+ * A convenience base class for operation observers that only implement the
+ * variable arity {@link #end(long, Enum, long...)} method.
+ * <p>
+ * The fixed arity parameterized methods are bridged on to the variable arity
+ * form, which requires allocating the parameter array.  Performance sensitive
+ * observers should therefore implement {@link ChainedOperationObserver}
+ * directly.
+ * <p>
+ * Timed completions are bridged on to the equivalent untimed method, discarding
+ * the start time.
+ * <p>
+ * Batched completions are bridged on to one timed completion per member of
+ * the batch, each taking the mean duration of the batch's operations.  This
+ * costs one call per operation, so observers receiving large batches should
+ * override {@link #endBatch(long, Enum, long, long)}.
+ *
+ * @param <T> the operation result type
+ */
+public abstract class AbstractChainedOperationObserver<T extends Enum<T>> implements ChainedOperationObserver<T> {
+
+  @Override
+  public void end(long time, T result, long parameter) {
+    end(time, result, new long[] {parameter});
+  }
+
+  @Override
+  public void end(long time, T result, long parameter0, long parameter1) {
+    end(time, result, new long[] {parameter0, parameter1});
+  }
+
+  @Override
+  public void end(long time, long startTime, T result) {
+    end(time, result);
+  }
+
+  @Override
+  public void end(long time, long startTime, T result, long parameter) {
+    end(time, result, parameter);
+  }
+
+  @Override
+  public void end(long time, long startTime, T result, long parameter0, long parameter1) {
+    end(time, result, parameter0, parameter1);
+  }
+
+  @Override
+  public void end(long time, long startTime, T result, long ... parameters) {
+    end(time, result, parameters);
+  }
+
+  @Override
+  public void endBatch(long time, T result, long count, long elapsed) {
+    if (count > 0) {
+      long startTime = time - elapsed / count;
+      for (long i = 0; i < count; i++) {
+        end(time, startTime, result);
+      }
+    }
+  }
+}
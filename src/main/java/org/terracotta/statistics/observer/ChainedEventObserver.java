@@ -29,10 +29,46 @@ public interface ChainedEventObserver extends ChainedObserver {
    * @{code interface EventObserver<T>}
    */
   
+  /**
+   * Called to indicate an event with no parameters happened.
+   *
+   * @param time the event time
+   */
+  void event(long time);
+
+  /**
+   * Called to indicate an event with a single parameter happened.
+   *
+   * @param time the event time
+   * @param parameter the event parameter
+   */
+  void event(long time, long parameter);
+
+  /**
+   * Called to indicate an event with two parameters happened.
+   *
+   * @param time the event time
+   * @param parameter0 the first event parameter
+   * @param parameter1 the second event parameter
+   */
+  void event(long time, long parameter0, long parameter1);
+
   /**
    * Called to indicate an event happened.
+   * <p>
+   * Producers should prefer the fixed arity overloads where possible, since
+   * they avoid allocating the parameter array.
    * 
-   * @param parameter the event parameter
+   * @param time the event time
+   * @param parameters the event parameters
    */
   void event(long time, long ... parameters);
+
+  /**
+   * Called to indicate that a number of events with no parameters happened.
+   *
+   * @param time the event time
+   * @param count the number of events
+   */
+  void events(long time, long count);
 }
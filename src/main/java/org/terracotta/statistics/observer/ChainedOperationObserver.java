@@ -24,6 +24,32 @@ public interface ChainedOperationObserver<T extends Enum<T>> extends ChainedObse
   void begin(long time);
   
   void end(long time, T result);
+
+  void end(long time, T result, long parameter);
+
+  void end(long time, T result, long parameter0, long parameter1);
   
   void end(long time, T result, long ... parameters);
+
+  /*
+   * Timed completions carry the operation start time explicitly, as captured
+   * by a TimedOperationObserver.  The start time is TimedOperationObserver.UNTIMED
+   * if it was not recorded.  These are not preceded by a call to begin(long).
+   */
+
+  void end(long time, long startTime, T result);
+
+  void end(long time, long startTime, T result, long parameter);
+
+  void end(long time, long startTime, T result, long parameter0, long parameter1);
+
+  void end(long time, long startTime, T result, long ... parameters);
+
+  /*
+   * Batched completions of count operations with the same result, sharing one
+   * completion time and the elapsed time of the whole batch.  These are not
+   * preceded by a call to begin(long).
+   */
+
+  void endBatch(long time, T result, long count, long elapsed);
 }
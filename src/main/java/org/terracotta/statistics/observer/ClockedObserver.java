@@ -0,0 +1,40 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.observer;
+
+import org.terracotta.statistics.Time;
+
+/**
+ * A derived observer that wants its event times read from a specific time
+ * source.
+ * <p>
+ * Source statistics read the event time passed to a clocked observer from its
+ * {@link #timeSource()} rather than from their own.  This allows, for example,
+ * a rate observer to run off a cheap coarse clock while a latency observer on
+ * the same statistic keeps full precision.  Observers that do not implement
+ * this interface use the time source of the statistic they observe.
+ */
+public interface ClockedObserver extends ChainedObserver {
+
+  /**
+   * Returns the time source event times should be read from.
+   * <p>
+   * The returned source must not change while the observer is registered.
+   *
+   * @return the time source, or {@code null} to use the source statistic's
+   */
+  Time.TimeSource timeSource();
+}
@@ -44,12 +44,45 @@ public interface OperationObserver<T extends Enum<T>> {
    * @param result the operation result
    */
   void end(T result);
+
+  /**
+   * Called immediately after the operation completes with a single parameter.
+   *
+   * @param result the operation result
+   * @param parameter the operation parameter
+   */
+  void end(T result, long parameter);
+
+  /**
+   * Called immediately after the operation completes with two parameters.
+   *
+   * @param result the operation result
+   * @param parameter0 the first operation parameter
+   * @param parameter1 the second operation parameter
+   */
+  void end(T result, long parameter0, long parameter1);
   
   /**
    * Called immediately after the operation completes.
+   * <p>
+   * Callers should prefer the fixed arity overloads where possible, since
+   * they avoid allocating the parameter array.
    * 
    * @param result the operation result
    * @param parameters the operation parameters
    */
   void end(T result, long ... parameters);
+
+  /**
+   * Called after a batch of operations completes.
+   * <p>
+   * This records {@code counts[result.ordinal()]} completions of each result
+   * in a single call, in place of one {@code begin()}/{@code end(result)} pair
+   * per operation.  Batched operations are not preceded by a call to
+   * {@link #begin()}.
+   *
+   * @param counts completion counts indexed by result ordinal
+   * @param elapsed elapsed time of the whole batch in nanoseconds
+   */
+  void endBatch(long[] counts, long elapsed);
 }
@@ -0,0 +1,35 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.observer;
+
+/**
+ * A targeted observer that measures operations from their start time.
+ * <p>
+ * Source statistics capture the start time of each operation once, on begin,
+ * regardless of how many of these observers are registered, and hand it to
+ * them through the {@code end(time, startTime, result, ...)} methods.  These
+ * observers therefore never receive {@code begin} calls or the untimed
+ * {@code end} calls; completions whose begin was not seen are delivered with a
+ * start time of {@link TimedOperationObserver#UNTIMED}.
+ * <p>
+ * Start times are read from the source statistic's time source, so these
+ * observers should not be {@link ClockedObserver clocked} from a source with a
+ * different origin.
+ *
+ * @param <T> the operation result type
+ */
+public interface StartTimeObserver<T extends Enum<T>> extends TargetedOperationObserver<T> {
+}
@@ -0,0 +1,48 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.observer;
+
+import java.util.Set;
+
+/**
+ * An operation observer that is only interested in a subset of the possible
+ * operation results.
+ * <p>
+ * Source statistics use this information to route calls: a targeted observer
+ * only receives {@code end} calls for its target results, and only receives
+ * {@link #begin(long)} calls if it requires them.  Observers that do not
+ * implement this interface receive every call.
+ *
+ * @param <T> the operation result type
+ */
+public interface TargetedOperationObserver<T extends Enum<T>> extends ChainedOperationObserver<T> {
+
+  /**
+   * Returns the operation results this observer is interested in.
+   * <p>
+   * The returned set must not change while the observer is registered.
+   *
+   * @return the set of target results
+   */
+  Set<T> targets();
+
+  /**
+   * Returns {@code true} if this observer needs to be told when operations begin.
+   *
+   * @return {@code true} if {@code begin} calls are required
+   */
+  boolean requiresBegin();
+}
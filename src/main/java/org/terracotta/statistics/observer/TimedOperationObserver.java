@@ -0,0 +1,81 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.observer;
+
+/**
+ * Timed operation observers track operations whose begin and end are linked
+ * by an explicit token rather than by the calling thread.
+ * <p>
+ * The token returned from {@link #begin()} must be passed back to the matching
+ * {@code end} call.  This allows operations to complete on a different thread
+ * to the one that started them, and allows latency to be derived without any
+ * thread-local state.  Tokens are opaque to the caller; currently they are
+ * either the operation start time, or {@link #UNTIMED} when no derived
+ * statistic requires timing.
+ *
+ * @param <T> Enum type representing the possible operations 'results'
+ * @see OperationObserver
+ */
+public interface TimedOperationObserver<T extends Enum<T>> {
+
+  /**
+   * Token value indicating that the operation start time was not recorded.
+   */
+  long UNTIMED = Long.MIN_VALUE;
+
+  /**
+   * Called immediately prior to the operation beginning.
+   *
+   * @return the token to pass to the matching {@code end} call
+   */
+  long begin();
+
+  /**
+   * Called immediately after the operation completes with no interesting parameters.
+   *
+   * @param token the token returned from the matching {@link #begin()}
+   * @param result the operation result
+   */
+  void end(long token, T result);
+
+  /**
+   * Called immediately after the operation completes with a single parameter.
+   *
+   * @param token the token returned from the matching {@link #begin()}
+   * @param result the operation result
+   * @param parameter the operation parameter
+   */
+  void end(long token, T result, long parameter);
+
+  /**
+   * Called immediately after the operation completes with two parameters.
+   *
+   * @param token the token returned from the matching {@link #begin()}
+   * @param result the operation result
+   * @param parameter0 the first operation parameter
+   * @param parameter1 the second operation parameter
+   */
+  void end(long token, T result, long parameter0, long parameter1);
+
+  /**
+   * Called immediately after the operation completes.
+   *
+   * @param token the token returned from the matching {@link #begin()}
+   * @param result the operation result
+   * @param parameters the operation parameters
+   */
+  void end(long token, T result, long ... parameters);
+}
@@ -0,0 +1,38 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.observer;
+
+/**
+ * An event observer that accepts events standing in for several occurrences.
+ * <p>
+ * Sampling sources deliver each sampled event with a weight equal to the
+ * inverse of its sampling probability, so that observers implementing this
+ * interface can keep their aggregates unbiased when the sampling probability
+ * varies over time.  Observers that do not implement this interface receive
+ * sampled events unweighted.
+ */
+public interface WeightedEventObserver extends ChainedEventObserver {
+
+  /**
+   * Called to indicate an event with a single parameter that represents
+   * {@code weight} occurrences.
+   *
+   * @param time the event time
+   * @param parameter the event parameter
+   * @param weight the number of occurrences this event represents
+   */
+  void weightedEvent(long time, long parameter, long weight);
+}
@@ -0,0 +1,218 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.util;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed width block of {@code long} counters that dynamically stripes under
+ * contention.
+ * <p>
+ * This follows the same scheme as the jsr166e {@code Striped64} but instead
+ * of striping a single value it stripes a whole block of counters at once.
+ * Each stripe holds every counter of the block in adjacent slots, padded at
+ * both ends so that neighbouring stripes do not share cache lines.  An update
+ * is therefore a single offset into the calling thread's stripe followed by a
+ * CAS, and a read is a single pass over the stripes.
+ * <p>
+ * While uncontended all updates go to the initial stripe and no thread-local
+ * lookup is performed.  Upon contention the stripe table is doubled until it
+ * reaches the nearest power of two greater than or equal to the number of
+ * CPUs.
+ */
+public class StripedCounterBlock {
+
+  /*
+   * Number of longs used to pad either end of a stripe (one 64 byte line).
+   */
+  private static final int PADDING = 8;
+
+  private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+  static final ThreadLocal<Probe> THREAD_PROBE = new VicariousThreadLocal<Probe>() {
+    @Override
+    protected Probe initialValue() {
+      return new Probe();
+    }
+  };
+
+  private static final AtomicIntegerFieldUpdater<StripedCounterBlock> BUSY_UPDATER = AtomicIntegerFieldUpdater.newUpdater(StripedCounterBlock.class, "busy");
+
+  private final int width;
+
+  private volatile AtomicLongArray[] stripes;
+  private volatile int busy;
+
+  /**
+   * Creates a block of {@code width} counters, all initially zero.
+   *
+   * @param width number of counters in the block
+   */
+  public StripedCounterBlock(int width) {
+    if (width < 0) {
+      throw new IllegalArgumentException("Negative width: " + width);
+    }
+    this.width = width;
+    this.stripes = new AtomicLongArray[] {newStripe(width)};
+  }
+
+  /**
+   * Returns the number of counters in this block.
+   *
+   * @return the block width
+   */
+  public int width() {
+    return width;
+  }
+
+  /**
+   * Equivalent to {@code add(index, 1)}.
+   *
+   * @param index counter index
+   */
+  public void increment(int index) {
+    add(index, 1L);
+  }
+
+  /**
+   * Adds the given value to the indexed counter.
+   *
+   * @param index counter index
+   * @param x the value to add
+   */
+  public void add(int index, long x) {
+    int slot = PADDING + index;
+    AtomicLongArray[] ss = stripes;
+    long v;
+    if (ss.length == 1) {
+      AtomicLongArray s = ss[0];
+      if (!s.compareAndSet(slot, v = s.get(slot), v + x)) {
+        retryAdd(slot, x, THREAD_PROBE.get());
+      }
+    } else {
+      Probe probe = THREAD_PROBE.get();
+      AtomicLongArray s = ss[(ss.length - 1) & probe.code];
+      if (!s.compareAndSet(slot, v = s.get(slot), v + x)) {
+        retryAdd(slot, x, probe);
+      }
+    }
+  }
+
+  /**
+   * Returns the current value of the indexed counter.
+   * <p>
+   * The returned value is <em>NOT</em> an atomic snapshot; concurrent updates
+   * may or may not be incorporated.
+   *
+   * @param index counter index
+   * @return the counter value
+   */
+  public long sum(int index) {
+    int slot = PADDING + index;
+    long sum = 0L;
+    for (AtomicLongArray s : stripes) {
+      sum += s.get(slot);
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the total of all counters in this block.
+   *
+   * @return the sum of all counters
+   */
+  public long sum() {
+    long sum = 0L;
+    for (AtomicLongArray s : stripes) {
+      for (int i = PADDING, end = PADDING + width; i < end; i++) {
+        sum += s.get(i);
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the current values of all counters in this block.
+   *
+   * @return a new array of counter values indexed by counter index
+   */
+  public long[] sums() {
+    long[] sums = new long[width];
+    for (AtomicLongArray s : stripes) {
+      for (int i = 0; i < width; i++) {
+        sums[i] += s.get(PADDING + i);
+      }
+    }
+    return sums;
+  }
+
+  private void retryAdd(int slot, long x, Probe probe) {
+    int h = probe.code;
+    boolean collide = false;
+    for (;;) {
+      AtomicLongArray[] ss = stripes;
+      int n = ss.length;
+      AtomicLongArray s = ss[(n - 1) & h];
+      long v = s.get(slot);
+      if (s.compareAndSet(slot, v, v + x)) {
+        break;
+      } else if (n >= NCPU || stripes != ss) {
+        collide = false;
+      } else if (!collide) {
+        collide = true;
+      } else if (busy == 0 && BUSY_UPDATER.compareAndSet(this, 0, 1)) {
+        try {
+          if (stripes == ss) {
+            AtomicLongArray[] expanded = new AtomicLongArray[n << 1];
+            System.arraycopy(ss, 0, expanded, 0, n);
+            for (int i = n; i < expanded.length; i++) {
+              expanded[i] = newStripe(width);
+            }
+            stripes = expanded;
+          }
+        } finally {
+          BUSY_UPDATER.set(this, 0);
+        }
+        collide = false;
+        continue;
+      }
+      h ^= h << 13;
+      h ^= h >>> 17;
+      h ^= h << 5;
+    }
+    probe.code = h;
+  }
+
+  private static AtomicLongArray newStripe(int width) {
+    return new AtomicLongArray(PADDING + width + PADDING);
+  }
+
+  /**
+   * Holder for the thread-local stripe probe.
+   */
+  static final class Probe {
+    private static final Random RNG = new Random();
+
+    int code;
+
+    Probe() {
+      int h = RNG.nextInt();
+      code = (h == 0) ? 1 : h;
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.util;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static org.terracotta.statistics.util.StripedCounterBlock.THREAD_PROBE;
+
+/**
+ * A striped accumulator of the count, sum, spread, minimum and maximum of a
+ * stream of {@code long} values.
+ * <p>
+ * This follows the same scheme as the jsr166e {@code Striped64}, but each cell
+ * carries all of the summary fields together.  Since these cannot be updated
+ * with a single CAS each cell is guarded by a CAS acquired flag; failing to
+ * acquire the flag is treated as contention and causes the caller to move to
+ * (and possibly create) another cell.  The spread is held as the sum of squared
+ * deviations from the mean, which is updated with Welford's method and merged
+ * across cells using the pairwise formula of Chan et al., so the variance stays
+ * numerically stable.
+ */
+public class StripedSummaryStatistics {
+
+  private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+  private static final AtomicIntegerFieldUpdater<StripedSummaryStatistics> BUSY_UPDATER = AtomicIntegerFieldUpdater.newUpdater(StripedSummaryStatistics.class, "busy");
+
+  private volatile Cell[] cells = new Cell[] {new Cell()};
+  private volatile int busy;
+
+  /**
+   * Adds a value to the summary.
+   *
+   * @param x the value to add
+   */
+  public void add(long x) {
+    Cell[] cs = cells;
+    if (cs.length == 1) {
+      Cell c = cs[0];
+      if (c.tryAdd(x)) {
+        return;
+      }
+      retryAdd(x, THREAD_PROBE.get());
+    } else {
+      StripedCounterBlock.Probe probe = THREAD_PROBE.get();
+      if (!cs[(cs.length - 1) & probe.code].tryAdd(x)) {
+        retryAdd(x, probe);
+      }
+    }
+  }
+
+  /**
+   * Returns a summary of all the values added so far.
+   * <p>
+   * Each cell is read consistently, but the returned summary is <em>NOT</em> an
+   * atomic snapshot across cells; concurrent updates may or may not be
+   * incorporated.
+   *
+   * @return the merged summary
+   */
+  public Summary summary() {
+    long count = 0L;
+    double sum = 0.0;
+    double squares = 0.0;
+    long minimum = Long.MAX_VALUE;
+    long maximum = Long.MIN_VALUE;
+    for (Cell c : cells) {
+      c.lock();
+      long cCount;
+      double cSum;
+      double cSquares;
+      try {
+        cCount = c.count;
+        cSum = c.sum;
+        cSquares = c.squares;
+        minimum = Math.min(minimum, c.minimum);
+        maximum = Math.max(maximum, c.maximum);
+      } finally {
+        c.unlock();
+      }
+      if (cCount == 0L) {
+        continue;
+      } else if (count == 0L) {
+        squares = cSquares;
+      } else {
+        double delta = (cSum / cCount) - (sum / count);
+        squares += cSquares + delta * delta * ((double) count * cCount / (count + cCount));
+      }
+      count += cCount;
+      sum += cSum;
+    }
+    return new Summary(count, sum, squares, minimum, maximum);
+  }
+
+  private void retryAdd(long x, StripedCounterBlock.Probe probe) {
+    int h = probe.code;
+    boolean collide = false;
+    for (;;) {
+      Cell[] cs = cells;
+      int n = cs.length;
+      if (cs[(n - 1) & h].tryAdd(x)) {
+        break;
+      } else if (n >= NCPU || cells != cs) {
+        collide = false;
+      } else if (!collide) {
+        collide = true;
+      } else if (busy == 0 && BUSY_UPDATER.compareAndSet(this, 0, 1)) {
+        try {
+          if (cells == cs) {
+            Cell[] expanded = new Cell[n << 1];
+            System.arraycopy(cs, 0, expanded, 0, n);
+            for (int i = n; i < expanded.length; i++) {
+              expanded[i] = new Cell();
+            }
+            cells = expanded;
+          }
+        } finally {
+          BUSY_UPDATER.set(this, 0);
+        }
+        collide = false;
+        continue;
+      }
+      h ^= h << 13;
+      h ^= h >>> 17;
+      h ^= h << 5;
+    }
+    probe.code = h;
+  }
+
+  /**
+   * A summary of a set of values.
+   */
+  public static final class Summary {
+
+    private final long count;
+    private final double sum;
+    private final double squares;
+    private final long minimum;
+    private final long maximum;
+
+    Summary(long count, double sum, double squares, long minimum, long maximum) {
+      this.count = count;
+      this.sum = sum;
+      this.squares = squares;
+      this.minimum = minimum;
+      this.maximum = maximum;
+    }
+
+    public long count() {
+      return count;
+    }
+
+    public double sum() {
+      return sum;
+    }
+
+    /**
+     * Returns the minimum, or {@code Long.MAX_VALUE} if the summary is empty.
+     */
+    public long minimum() {
+      return minimum;
+    }
+
+    /**
+     * Returns the maximum, or {@code Long.MIN_VALUE} if the summary is empty.
+     */
+    public long maximum() {
+      return maximum;
+    }
+
+    /**
+     * Returns the mean, or {@code NaN} if the summary is empty.
+     */
+    public double mean() {
+      return sum / count;
+    }
+
+    /**
+     * Returns the population variance, or {@code NaN} if the summary is empty.
+     */
+    public double variance() {
+      return count == 0L ? Double.NaN : Math.max(0.0, squares / count);
+    }
+
+    /**
+     * Returns the population standard deviation, or {@code NaN} if the summary
+     * is empty.
+     */
+    public double standardDeviation() {
+      return Math.sqrt(variance());
+    }
+  }
+
+  /**
+   * A padded cell guarded by a CAS acquired flag.
+   */
+  static final class Cell {
+
+    private static final AtomicIntegerFieldUpdater<Cell> LOCK_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Cell.class, "lock");
+
+    volatile long p0, p1, p2, p3, p4, p5, p6;
+    private volatile int lock;
+    long count;
+    double sum;
+    double squares;
+    long minimum = Long.MAX_VALUE;
+    long maximum = Long.MIN_VALUE;
+    volatile long q0, q1, q2, q3, q4, q5, q6;
+
+    boolean tryAdd(long x) {
+      if (lock == 0 && LOCK_UPDATER.compareAndSet(this, 0, 1)) {
+        try {
+          long n = count;
+          double oldMean = n == 0L ? 0.0 : sum / n;
+          count = n + 1;
+          sum += x;
+          squares += (x - oldMean) * (x - sum / count);
+          if (x < minimum) {
+            minimum = x;
+          }
+          if (x > maximum) {
+            maximum = x;
+          }
+        } finally {
+          LOCK_UPDATER.set(this, 0);
+        }
+        return true;
+      } else {
+        return false;
+      }
+    }
+
+    void lock() {
+      while (!LOCK_UPDATER.compareAndSet(this, 0, 1)) {
+        Thread.yield();
+      }
+    }
+
+    void unlock() {
+      LOCK_UPDATER.set(this, 0);
+    }
+  }
+}
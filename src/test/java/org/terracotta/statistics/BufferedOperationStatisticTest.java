@@ -0,0 +1,149 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.terracotta.statistics.GeneralOperationStatisticTest.CountingObserver;
+import org.terracotta.statistics.GeneralOperationStatisticTest.FooBar;
+import org.terracotta.statistics.derived.OperationResultFilter;
+import org.terracotta.statistics.observer.AbstractChainedEventObserver;
+
+import static java.util.EnumSet.of;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.terracotta.util.RetryAssert.assertBy;
+
+public class BufferedOperationStatisticTest {
+
+  @Test
+  public void testCountsAreExactAcrossThreads() throws InterruptedException {
+    final BufferedOperationStatistic<FooBar> stat = statistic(1000, 1, TimeUnit.HOURS, new MutableTimeSource());
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 1234; j++) {
+            stat.end(FooBar.FOO);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    stat.end(FooBar.BAR);
+    assertThat(stat.count(FooBar.FOO), is(4L * 1234));
+    assertThat(stat.sum(), is(4L * 1234 + 1));
+  }
+
+  @Test
+  public void testBufferIsPublishedWhenFull() {
+    BufferedOperationStatistic<FooBar> stat = statistic(3, 1, TimeUnit.HOURS, new MutableTimeSource());
+    AtomicLong events = attachRateFilter(stat);
+
+    stat.end(FooBar.FOO);
+    stat.end(FooBar.FOO);
+    assertThat(events.get(), is(0L));
+    stat.end(FooBar.FOO);
+    assertThat(events.get(), is(3L));
+  }
+
+  @Test
+  public void testSingleCompletionBufferIsPublishedImmediately() {
+    BufferedOperationStatistic<FooBar> stat = statistic(1, 1, TimeUnit.HOURS, new MutableTimeSource());
+    AtomicLong events = attachRateFilter(stat);
+
+    stat.end(FooBar.FOO);
+    assertThat(events.get(), is(1L));
+  }
+
+  @Test
+  public void testIdleBufferIsPublishedInTheBackground() {
+    BufferedOperationStatistic<FooBar> stat = new BufferedOperationStatistic<FooBar>("foobar", Collections.<String>emptySet(),
+        Collections.<String, Object>emptyMap(), FooBar.class, 1000, 10, TimeUnit.MILLISECONDS);
+    final AtomicLong events = attachRateFilter(stat);
+
+    stat.end(FooBar.FOO);
+    assertThat(BufferedOperationStatistic.StalenessPublisher.running(), is(true));
+    assertBy(10, TimeUnit.SECONDS, new Callable<Long>() {
+      @Override
+      public Long call() {
+        return events.get();
+      }
+    }, is(1L));
+  }
+
+  @Test
+  public void testBufferIsPublishedWhenStale() {
+    MutableTimeSource clock = new MutableTimeSource();
+    BufferedOperationStatistic<FooBar> stat = statistic(1000, 10, TimeUnit.MILLISECONDS, clock);
+    AtomicLong events = attachRateFilter(stat);
+
+    stat.end(FooBar.FOO);
+    clock.advanceTime(5, TimeUnit.MILLISECONDS);
+    stat.end(FooBar.FOO);
+    assertThat(events.get(), is(0L));
+    clock.advanceTime(5, TimeUnit.MILLISECONDS);
+    stat.end(FooBar.FOO);
+    assertThat(events.get(), is(3L));
+  }
+
+  @Test
+  public void testFlushPublishesToDerivedStatistics() {
+    BufferedOperationStatistic<FooBar> stat = statistic(1000, 1, TimeUnit.HOURS, new MutableTimeSource());
+    AtomicLong events = attachRateFilter(stat);
+
+    stat.end(FooBar.FOO);
+    stat.end(FooBar.BAR);
+    assertThat(events.get(), is(0L));
+    stat.flush();
+    assertThat(events.get(), is(1L));
+  }
+
+  @Test
+  public void testResultsObservedWithBeginAreNotBuffered() {
+    BufferedOperationStatistic<FooBar> stat = statistic(1000, 1, TimeUnit.HOURS, new MutableTimeSource());
+    CountingObserver observer = new CountingObserver();
+    stat.addDerivedStatistic(observer);
+
+    stat.begin();
+    stat.end(FooBar.FOO);
+    assertThat(observer.begins.get(), is(1));
+    assertThat(observer.ends.get(), is(1));
+  }
+
+  private static AtomicLong attachRateFilter(OperationStatistic<FooBar> stat) {
+    final AtomicLong events = new AtomicLong();
+    stat.addDerivedStatistic(new OperationResultFilter<FooBar>(of(FooBar.FOO), new AbstractChainedEventObserver() {
+      @Override
+      public void event(long time, long... parameters) {
+        events.incrementAndGet();
+      }
+    }));
+    return events;
+  }
+
+  private static BufferedOperationStatistic<FooBar> statistic(int maxCount, long maxAge, TimeUnit unit, Time.TimeSource clock) {
+    return new BufferedOperationStatistic<FooBar>("foobar", Collections.<String>emptySet(), Collections.<String, Object>emptyMap(), FooBar.class, maxCount, maxAge, unit, clock);
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.terracotta.util.RetryAssert.assertBy;
+
+public class CoarseTimeSourceTest {
+
+  @Test
+  public void testInitialTimeIsDelegateTime() {
+    MutableTimeSource delegate = new MutableTimeSource();
+    delegate.advanceTime(42, TimeUnit.NANOSECONDS);
+    CoarseTimeSource source = new CoarseTimeSource(delegate, 1, TimeUnit.HOURS);
+    try {
+      assertThat(source.time(), is(42L));
+      assertThat(source.resolution(TimeUnit.MINUTES), is(60L));
+    } finally {
+      source.stop();
+    }
+  }
+
+  @Test
+  public void testTimeFollowsDelegate() {
+    MutableTimeSource delegate = new MutableTimeSource();
+    final CoarseTimeSource source = new CoarseTimeSource(delegate, 1, TimeUnit.MILLISECONDS);
+    try {
+      delegate.advanceTime(1, TimeUnit.SECONDS);
+      assertBy(1, TimeUnit.SECONDS, new Callable<Long>() {
+        @Override
+        public Long call() {
+          return source.time();
+        }
+      }, is(TimeUnit.SECONDS.toNanos(1)));
+    } finally {
+      source.stop();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroResolutionIsRejected() {
+    new CoarseTimeSource(0, TimeUnit.MILLISECONDS);
+  }
+}
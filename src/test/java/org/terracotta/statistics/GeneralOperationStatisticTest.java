@@ -0,0 +1,284 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.terracotta.statistics.derived.LatencySampling;
+import org.terracotta.statistics.derived.OperationResultFilter;
+import org.terracotta.statistics.observer.AbstractChainedEventObserver;
+import org.terracotta.statistics.observer.AbstractChainedOperationObserver;
+import org.terracotta.statistics.observer.TimedOperationObserver;
+
+import static java.util.EnumSet.of;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class GeneralOperationStatisticTest {
+
+  @Test
+  public void testCounts() {
+    GeneralOperationStatistic<FooBar> stat = statistic();
+    stat.end(FooBar.FOO);
+    stat.end(FooBar.FOO, 1L);
+    stat.end(FooBar.BAR, 1L, 2L);
+    assertThat(stat.count(FooBar.FOO), is(2L));
+    assertThat(stat.count(FooBar.BAR), is(1L));
+    assertThat(stat.count(FooBar.BAZ), is(0L));
+    assertThat(stat.sum(of(FooBar.FOO, FooBar.BAZ)), is(2L));
+    assertThat(stat.sum(), is(3L));
+  }
+
+  @Test
+  public void testBatchUpdatesCountsAndDispatchesOncePerResult() {
+    GeneralOperationStatistic<FooBar> stat = statistic();
+    final AtomicLong events = new AtomicLong();
+    stat.addDerivedStatistic(new OperationResultFilter<FooBar>(of(FooBar.FOO, FooBar.BAZ), new AbstractChainedEventObserver() {
+      @Override
+      public void event(long time, long... parameters) {
+        throw new AssertionError();
+      }
+
+      @Override
+      public void events(long time, long count) {
+        events.addAndGet(count);
+      }
+    }));
+    CountingObserver observer = new CountingObserver();
+    stat.addDerivedStatistic(observer);
+
+    stat.endBatch(new long[] {3L, 2L, 0L}, 1000L);
+    assertThat(stat.count(FooBar.FOO), is(3L));
+    assertThat(stat.count(FooBar.BAR), is(2L));
+    assertThat(stat.count(FooBar.BAZ), is(0L));
+    assertThat(events.get(), is(3L));
+    assertThat(observer.begins.get(), is(0));
+    assertThat(observer.ends.get(), is(5));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOversizedBatchIsRejected() {
+    statistic().endBatch(new long[4], 0L);
+  }
+
+  @Test
+  public void testNegativeBatchCountIsRejected() {
+    GeneralOperationStatistic<FooBar> stat = statistic();
+    try {
+      stat.endBatch(new long[] {2L, -1L}, 0L);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      //expected
+    }
+    assertThat(stat.sum(), is(0L));
+  }
+
+  @Test
+  public void testBridgedBatchTimesEachOperationAtTheMeanDuration() {
+    GeneralOperationStatistic<FooBar> stat = statistic();
+    final AtomicLong elapsed = new AtomicLong();
+    final AtomicInteger ends = new AtomicInteger();
+    stat.addDerivedStatistic(new AbstractChainedOperationObserver<FooBar>() {
+      @Override
+      public void begin(long time) {
+        //no-op
+      }
+
+      @Override
+      public void end(long time, FooBar result) {
+        throw new AssertionError();
+      }
+
+      @Override
+      public void end(long time, long startTime, FooBar result) {
+        ends.incrementAndGet();
+        elapsed.addAndGet(time - startTime);
+      }
+
+      @Override
+      public void end(long time, FooBar result, long... parameters) {
+        throw new AssertionError();
+      }
+    });
+
+    stat.endBatch(new long[] {4L}, 100L);
+    assertThat(ends.get(), is(4));
+    assertThat(elapsed.get(), is(100L));
+  }
+
+  @Test
+  public void testTargetedObserverOnlyReceivesTargetResults() {
+    GeneralOperationStatistic<FooBar> stat = statistic();
+    final AtomicInteger events = new AtomicInteger();
+    stat.addDerivedStatistic(new OperationResultFilter<FooBar>(of(FooBar.BAR), new AbstractChainedEventObserver() {
+      @Override
+      public void event(long time, long... parameters) {
+        events.incrementAndGet();
+      }
+    }));
+
+    stat.begin();
+    stat.end(FooBar.FOO);
+    stat.begin();
+    stat.end(FooBar.BAR);
+    stat.begin();
+    stat.end(FooBar.BAZ);
+    assertThat(events.get(), is(1));
+  }
+
+  @Test
+  public void testUntargetedObserverReceivesEverything() {
+    GeneralOperationStatistic<FooBar> stat = statistic();
+    CountingObserver observer = new CountingObserver();
+    stat.addDerivedStatistic(observer);
+
+    for (FooBar result : FooBar.values()) {
+      stat.begin();
+      stat.end(result);
+    }
+    assertThat(observer.begins.get(), is(3));
+    assertThat(observer.ends.get(), is(3));
+
+    stat.removeDerivedStatistic(observer);
+    stat.begin();
+    stat.end(FooBar.FOO);
+    assertThat(observer.begins.get(), is(3));
+    assertThat(observer.ends.get(), is(3));
+  }
+
+  @Test
+  public void testTimedObserverOnlyTimesWhenRequired() {
+    GeneralOperationStatistic<FooBar> stat = statistic();
+    TimedOperationObserver<FooBar> timed = stat.asTimedObserver();
+    assertThat(timed.begin(), is(TimedOperationObserver.UNTIMED));
+
+    stat.addDerivedStatistic(new OperationResultFilter<FooBar>(of(FooBar.FOO)));
+    assertThat(timed.begin(), is(TimedOperationObserver.UNTIMED));
+
+    stat.addDerivedStatistic(new CountingObserver());
+    long token = timed.begin();
+    assertThat(token, not(TimedOperationObserver.UNTIMED));
+    timed.end(token, FooBar.FOO);
+    assertThat(stat.count(FooBar.FOO), is(1L));
+  }
+
+  @Test
+  public void testClockedObserverUsesItsOwnTimeSource() {
+    GeneralOperationStatistic<FooBar> stat = statistic();
+    MutableTimeSource statisticSource = new MutableTimeSource();
+    statisticSource.advanceTime(1, TimeUnit.SECONDS);
+    MutableTimeSource filterSource = new MutableTimeSource();
+    filterSource.advanceTime(2, TimeUnit.SECONDS);
+    stat.setTimeSource(statisticSource);
+
+    final AtomicLong filterTime = new AtomicLong();
+    stat.addDerivedStatistic(new OperationResultFilter<FooBar>(of(FooBar.FOO), filterSource, new AbstractChainedEventObserver() {
+      @Override
+      public void event(long time, long... parameters) {
+        filterTime.set(time);
+      }
+    }));
+    CountingObserver observer = new CountingObserver();
+    stat.addDerivedStatistic(observer);
+
+    stat.begin();
+    stat.end(FooBar.FOO);
+    assertThat(filterTime.get(), is(TimeUnit.SECONDS.toNanos(2)));
+    assertThat(observer.lastTime.get(), is(TimeUnit.SECONDS.toNanos(1)));
+  }
+
+  @Test
+  public void testStartTimeIsCapturedOnceAndSharedByLatencyObservers() {
+    GeneralOperationStatistic<FooBar> stat = statistic();
+    MutableTimeSource source = new MutableTimeSource();
+    stat.setTimeSource(source);
+    LatencySampling<FooBar> fooLatency = new LatencySampling<FooBar>(of(FooBar.FOO), 1.0);
+    LatencySampling<FooBar> allLatency = new LatencySampling<FooBar>(of(FooBar.FOO, FooBar.BAR), 1.0);
+    final AtomicLong fooMeasured = new AtomicLong(-1);
+    final AtomicLong allMeasured = new AtomicLong(-1);
+    fooLatency.addDerivedStatistic(new AbstractChainedEventObserver() {
+      @Override
+      public void event(long time, long... parameters) {
+        fooMeasured.set(parameters[0]);
+      }
+    });
+    allLatency.addDerivedStatistic(new AbstractChainedEventObserver() {
+      @Override
+      public void event(long time, long... parameters) {
+        allMeasured.set(parameters[0]);
+      }
+    });
+    stat.addDerivedStatistic(fooLatency);
+    stat.addDerivedStatistic(allLatency);
+    assertThat(stat.dispatcher.deferrable(FooBar.FOO), is(false));
+    assertThat(stat.dispatcher.deferrable(FooBar.BAZ), is(true));
+
+    stat.begin();
+    source.advanceTime(5, TimeUnit.NANOSECONDS);
+    stat.end(FooBar.FOO);
+    assertThat(fooMeasured.get(), is(5L));
+    assertThat(allMeasured.get(), is(5L));
+
+    stat.begin();
+    source.advanceTime(7, TimeUnit.NANOSECONDS);
+    stat.end(FooBar.BAR, 1L);
+    assertThat(fooMeasured.get(), is(5L));
+    assertThat(allMeasured.get(), is(7L));
+
+    stat.end(FooBar.BAR);
+    assertThat(allMeasured.get(), is(7L));
+  }
+
+  private static GeneralOperationStatistic<FooBar> statistic() {
+    return new GeneralOperationStatistic<FooBar>("foobar", Collections.<String>emptySet(), Collections.<String, Object>emptyMap(), FooBar.class);
+  }
+
+  static class CountingObserver extends AbstractChainedOperationObserver<FooBar> {
+
+    final AtomicInteger begins = new AtomicInteger();
+    final AtomicInteger ends = new AtomicInteger();
+
+    final AtomicLong lastTime = new AtomicLong();
+
+    @Override
+    public void begin(long time) {
+      lastTime.set(time);
+      begins.incrementAndGet();
+    }
+
+    @Override
+    public void end(long time, FooBar result) {
+      lastTime.set(time);
+      ends.incrementAndGet();
+    }
+
+    @Override
+    public void end(long time, FooBar result, long... parameters) {
+      lastTime.set(time);
+      ends.incrementAndGet();
+    }
+  }
+
+  static enum FooBar {
+    FOO, BAR, BAZ;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.terracotta.statistics.derived.OperationResultFilter;
+import org.terracotta.statistics.jsr166e.LongAdder;
+import org.terracotta.statistics.util.StripedCounterBlock;
+
+/**
+ * Compares the recording cost of an operation statistic with no derived
+ * statistics against a bare {@code LongAdder} increment.
+ * <p>
+ * Run with {@code java -cp <test-classpath> org.terracotta.statistics.OperationStatisticBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OperationStatisticBenchmark {
+
+  enum Result {
+    SUCCESS, FAILURE;
+  }
+
+  private LongAdder adder;
+  private StripedCounterBlock block;
+  private GeneralOperationStatistic<Result> idle;
+  private GeneralOperationStatistic<Result> filtered;
+
+  @Setup
+  public void setup() {
+    adder = new LongAdder();
+    block = new StripedCounterBlock(Result.values().length);
+    idle = statistic();
+    filtered = statistic();
+    filtered.addDerivedStatistic(new OperationResultFilter<Result>(EnumSet.of(Result.FAILURE)));
+  }
+
+  @Benchmark
+  public void longAdderIncrement() {
+    adder.increment();
+  }
+
+  @Benchmark
+  public void counterBlockIncrement() {
+    block.increment(Result.SUCCESS.ordinal());
+  }
+
+  @Benchmark
+  public void idleEnd() {
+    idle.end(Result.SUCCESS);
+  }
+
+  @Benchmark
+  public void idleBeginEnd() {
+    idle.begin();
+    idle.end(Result.SUCCESS);
+  }
+
+  @Benchmark
+  public void filteredOutBeginEnd() {
+    filtered.begin();
+    filtered.end(Result.SUCCESS);
+  }
+
+  private static GeneralOperationStatistic<Result> statistic() {
+    return new GeneralOperationStatistic<Result>("benchmark", Collections.<String>emptySet(), Collections.<String, Object>emptyMap(), Result.class);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(OperationStatisticBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class SharedCoarseTimeSourceTest {
+
+  @Test
+  public void testIdleSourceReadsDelegateDirectly() {
+    MutableTimeSource delegate = new MutableTimeSource();
+    SharedCoarseTimeSource source = new SharedCoarseTimeSource(delegate, 1, TimeUnit.HOURS);
+    delegate.advanceTime(42, TimeUnit.NANOSECONDS);
+    assertThat(source.ticking(), is(false));
+    assertThat(source.time(), is(42L));
+  }
+
+  @Test
+  public void testTickerRunsWhileAcquired() {
+    MutableTimeSource delegate = new MutableTimeSource();
+    SharedCoarseTimeSource source = new SharedCoarseTimeSource(delegate, 1, TimeUnit.HOURS);
+    source.acquire();
+    source.acquire();
+    assertThat(source.ticking(), is(true));
+    delegate.advanceTime(42, TimeUnit.NANOSECONDS);
+    assertThat(source.time(), is(0L));
+
+    source.release();
+    assertThat(source.ticking(), is(true));
+    source.release();
+    assertThat(source.ticking(), is(false));
+    assertThat(source.time(), is(42L));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnbalancedReleaseIsRejected() {
+    new SharedCoarseTimeSource(1, TimeUnit.MILLISECONDS).release();
+  }
+}
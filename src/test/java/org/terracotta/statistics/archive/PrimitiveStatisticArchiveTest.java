@@ -0,0 +1,248 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hamcrest.collection.IsEmptyCollection;
+import org.junit.Test;
+
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PrimitiveStatisticArchiveTest {
+
+  @Test
+  public void testEmptyArchive() {
+    PrimitiveStatisticArchive<Long> archive = new PrimitiveStatisticArchive<Long>(Long.class, 2);
+    assertThat(archive.size(), is(0));
+    assertThat(archive.getArchive(), IsEmptyCollection.<Timestamped<Long>>empty());
+    assertThat(archive.read(new long[2], new long[2]), is(0));
+  }
+
+  @Test
+  public void testBoxedViewMatchesSamples() {
+    PrimitiveStatisticArchive<Double> archive = new PrimitiveStatisticArchive<Double>(3);
+    archive.accept(new StatisticSampler.Sample<Double>(1L, 0.5));
+    archive.accept(new StatisticSampler.Sample<Double>(2L, 1.5));
+    List<Timestamped<Double>> samples = archive.getArchive();
+    assertThat(samples, hasSize(2));
+    assertThat(samples.get(0).getTimestamp(), is(1L));
+    assertThat(samples.get(0).getSample(), is(0.5));
+    assertThat(samples.get(1).getTimestamp(), is(2L));
+    assertThat(samples.get(1).getSample(), is(1.5));
+  }
+
+  @Test
+  public void testWrappedReadIsOldestFirst() {
+    PrimitiveStatisticArchive<Long> archive = new PrimitiveStatisticArchive<Long>(3);
+    for (long i = 0; i < 5; i++) {
+      archive.accept(new StatisticSampler.Sample<Long>(i, i * 10));
+    }
+    long[] timestamps = new long[4];
+    long[] values = new long[4];
+    assertThat(archive.read(timestamps, values), is(3));
+    assertThat(timestamps, is(new long[] {2L, 3L, 4L, 0L}));
+    assertThat(values, is(new long[] {20L, 30L, 40L, 0L}));
+
+    timestamps = new long[2];
+    double[] doubles = new double[2];
+    assertThat(archive.read(timestamps, doubles), is(2));
+    assertThat(timestamps, is(new long[] {3L, 4L}));
+    assertThat(doubles, is(new double[] {30.0, 40.0}));
+  }
+
+  @Test
+  public void testVisitorSkipsNullSamples() {
+    PrimitiveStatisticArchive<Long> archive = new PrimitiveStatisticArchive<Long>(4);
+    archive.accept(new StatisticSampler.Sample<Long>(0L, null));
+    archive.accept(new StatisticSampler.Sample<Long>(1L, 7L));
+    archive.accept(new StatisticSampler.Sample<Long>(2L, null));
+    archive.accept(new StatisticSampler.Sample<Long>(3L, 9L));
+    final List<Long> visited = new ArrayList<Long>();
+    archive.visitLongs(new PrimitiveStatisticArchive.LongVisitor() {
+      @Override
+      public void visit(long timestamp, long value) {
+        visited.add(timestamp);
+        visited.add(value);
+      }
+    });
+    assertThat(visited.toString(), is("[1, 7, 3, 9]"));
+    assertThat(archive.getArchive().get(2).getSample(), nullValue());
+
+    long[] timestamps = new long[1];
+    long[] values = new long[1];
+    assertThat(archive.read(timestamps, values), is(1));
+    assertThat(timestamps[0], is(3L));
+    assertThat(values[0], is(9L));
+  }
+
+  @Test
+  public void testShrinkingRetainsNewestSamples() {
+    PrimitiveStatisticArchive<Integer> archive = new PrimitiveStatisticArchive<Integer>(3);
+    for (int i = 0; i < 4; i++) {
+      archive.accept(new StatisticSampler.Sample<Integer>(i, i));
+    }
+    archive.setCapacity(2);
+    archive.accept(new StatisticSampler.Sample<Integer>(4L, 4));
+    List<Timestamped<Integer>> samples = archive.getArchive();
+    assertThat(samples, hasSize(2));
+    assertThat(samples.get(0).getSample(), is(3));
+    assertThat(samples.get(1).getSample(), is(4));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testIntegralReadOfFloatingPointArchiveFails() {
+    PrimitiveStatisticArchive<Double> archive = new PrimitiveStatisticArchive<Double>(Double.class, 1);
+    archive.read(new long[1], new long[1]);
+  }
+
+  @Test
+  public void testReadersSeeConsistentSamplesWhileWriting() throws InterruptedException {
+    final PrimitiveStatisticArchive<Long> archive = new PrimitiveStatisticArchive<Long>(Long.class, 16);
+    final long samples = 1000000L;
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        for (long i = 0; i < samples; i++) {
+          archive.accept(new StatisticSampler.Sample<Long>(i, -i));
+        }
+      }
+    };
+    writer.start();
+    try {
+      long[] timestamps = new long[16];
+      long[] values = new long[16];
+      while (writer.isAlive()) {
+        int count = archive.read(timestamps, values);
+        for (int i = 0; i < count; i++) {
+          assertThat(values[i], is(-timestamps[i]));
+          if (i > 0) {
+            assertThat(timestamps[i] > timestamps[i - 1], is(true));
+          }
+        }
+      }
+    } finally {
+      writer.join();
+    }
+    assertThat(archive.getArchive().get(15).getSample(), is(-(samples - 1)));
+  }
+
+  @Test
+  public void testCursorReturnsOnlyNewSamples() {
+    PrimitiveStatisticArchive<Long> archive = new PrimitiveStatisticArchive<Long>(3);
+    ArchiveCursor cursor = new ArchiveCursor();
+    assertThat(archive.getArchive(cursor), IsEmptyCollection.<Timestamped<Long>>empty());
+
+    archive.accept(new StatisticSampler.Sample<Long>(0L, 0L));
+    archive.accept(new StatisticSampler.Sample<Long>(1L, 1L));
+    List<Timestamped<Long>> samples = archive.getArchive(cursor);
+    assertThat(samples, hasSize(2));
+    assertThat(samples.get(1).getSample(), is(1L));
+    assertThat(cursor.overwritten(), is(false));
+    assertThat(archive.getArchive(cursor), IsEmptyCollection.<Timestamped<Long>>empty());
+
+    archive.accept(new StatisticSampler.Sample<Long>(2L, 2L));
+    final List<Long> visited = new ArrayList<Long>();
+    archive.visitLongs(cursor, new PrimitiveStatisticArchive.LongVisitor() {
+      @Override
+      public void visit(long timestamp, long value) {
+        visited.add(value);
+      }
+    });
+    assertThat(visited.toString(), is("[2]"));
+    assertThat(cursor.position(), is(3L));
+  }
+
+  @Test
+  public void testCursorReportsOverwrittenSamples() {
+    PrimitiveStatisticArchive<Long> archive = new PrimitiveStatisticArchive<Long>(2);
+    ArchiveCursor cursor = new ArchiveCursor();
+    for (long i = 0; i < 5; i++) {
+      archive.accept(new StatisticSampler.Sample<Long>(i, i));
+    }
+    List<Timestamped<Long>> samples = archive.getArchive(cursor);
+    assertThat(samples, hasSize(2));
+    assertThat(samples.get(0).getSample(), is(3L));
+    assertThat(cursor.missed(), is(3L));
+    assertThat(cursor.overwritten(), is(true));
+
+    archive.accept(new StatisticSampler.Sample<Long>(5L, 5L));
+    archive.clear();
+    archive.accept(new StatisticSampler.Sample<Long>(6L, 6L));
+    samples = archive.getArchive(cursor);
+    assertThat(samples, hasSize(1));
+    assertThat(samples.get(0).getSample(), is(6L));
+    assertThat(cursor.missed(), is(1L));
+  }
+
+  @Test
+  public void testCursorSurvivesResize() {
+    PrimitiveStatisticArchive<Long> archive = new PrimitiveStatisticArchive<Long>(4);
+    ArchiveCursor cursor = new ArchiveCursor();
+    for (long i = 0; i < 3; i++) {
+      archive.accept(new StatisticSampler.Sample<Long>(i, i));
+    }
+    assertThat(archive.getArchive(cursor), hasSize(3));
+    archive.setCapacity(2);
+    archive.accept(new StatisticSampler.Sample<Long>(3L, 3L));
+    List<Timestamped<Long>> samples = archive.getArchive(cursor);
+    assertThat(samples, hasSize(1));
+    assertThat(samples.get(0).getSample(), is(3L));
+    assertThat(cursor.overwritten(), is(false));
+    assertThat(archive.size(), is(2));
+  }
+
+  @Test
+  public void testUnsupportedTypesFallBackToBoxedStorage() {
+    PrimitiveStatisticArchive<Short> archive = new PrimitiveStatisticArchive<Short>(2);
+    archive.accept(new StatisticSampler.Sample<Short>(0L, null));
+    archive.accept(new StatisticSampler.Sample<Short>(1L, (short) 3));
+    archive.accept(new StatisticSampler.Sample<Short>(2L, (short) 4));
+    List<Timestamped<Short>> samples = archive.getArchive();
+    assertThat(samples, hasSize(2));
+    assertThat(samples.get(1).getSample(), is((short) 4));
+
+    long[] timestamps = new long[2];
+    long[] values = new long[2];
+    assertThat(archive.read(timestamps, values), is(2));
+    assertThat(values, is(new long[] {3L, 4L}));
+
+    ArchiveCursor cursor = new ArchiveCursor();
+    archive.getArchive(cursor);
+    archive.accept(new StatisticSampler.Sample<Short>(3L, (short) 5));
+    assertThat(archive.getArchive(cursor), hasSize(1));
+  }
+
+  @Test
+  public void testUnsupportedDeclaredTypeUsesBoxedStorage() {
+    PrimitiveStatisticArchive<BigDecimal> archive = new PrimitiveStatisticArchive<BigDecimal>(BigDecimal.class, 2);
+    archive.accept(new StatisticSampler.Sample<BigDecimal>(1L, new BigDecimal("1.5")));
+    final List<Double> visited = new ArrayList<Double>();
+    archive.visitDoubles(new PrimitiveStatisticArchive.DoubleVisitor() {
+      @Override
+      public void visit(long timestamp, double value) {
+        visited.add(value);
+      }
+    });
+    assertThat(visited.toString(), is("[1.5]"));
+    assertThat(archive.getArchive().get(0).getSample(), is(new BigDecimal("1.5")));
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class RollupArchiveTest {
+
+  @Test
+  public void testRollupsConsolidateEachPeriod() {
+    RollupArchive<Long> archive = new RollupArchive<Long>(5, new RollupArchive.Resolution(1, TimeUnit.MINUTES, 10));
+    for (long second = 0; second < 150; second++) {
+      archive.accept(new StatisticSampler.Sample<Long>(TimeUnit.SECONDS.toMillis(second), second));
+    }
+
+    assertThat(archive.getArchive(), hasSize(5));
+    List<RollupArchive.Rollup> rollups = archive.getRollups(0);
+    assertThat(rollups, hasSize(2));
+    RollupArchive.Rollup first = rollups.get(0);
+    assertThat(first.getTimestamp(), is(0L));
+    assertThat(first.count(), is(60L));
+    assertThat(first.minimum(), is(0.0));
+    assertThat(first.maximum(), is(59.0));
+    assertThat(first.average(), is(29.5));
+    assertThat(first.last(), is(59.0));
+    assertThat(rollups.get(1).getTimestamp(), is(TimeUnit.MINUTES.toMillis(1)));
+    assertThat(rollups.get(1).getSample(), is(89.5));
+
+    RollupArchive.Rollup current = archive.getCurrentRollup(0);
+    assertThat(current.getTimestamp(), is(TimeUnit.MINUTES.toMillis(2)));
+    assertThat(current.count(), is(30L));
+  }
+
+  @Test
+  public void testResolutionsRetainABoundedNumberOfRollups() {
+    RollupArchive<Double> archive = new RollupArchive<Double>(1,
+        new RollupArchive.Resolution(1, TimeUnit.MINUTES, 3),
+        new RollupArchive.Resolution(1, TimeUnit.HOURS, 2));
+    for (long minute = 0; minute < 24 * 60; minute++) {
+      archive.accept(new StatisticSampler.Sample<Double>(TimeUnit.MINUTES.toMillis(minute), (double) minute));
+    }
+
+    assertThat(archive.resolutions(), is(2));
+    List<RollupArchive.Rollup> minutes = archive.getRollups(0);
+    assertThat(minutes, hasSize(3));
+    assertThat(minutes.get(2).last(), is(1438.0));
+    List<RollupArchive.Rollup> hours = archive.getRollups(1);
+    assertThat(hours, hasSize(2));
+    assertThat(hours.get(0).getTimestamp(), is(TimeUnit.HOURS.toMillis(21)));
+    assertThat(hours.get(1).minimum(), is(22 * 60.0));
+    assertThat(hours.get(1).maximum(), is(23 * 60.0 - 1));
+  }
+
+  @Test
+  public void testNullSamplesAreNotRolledUp() {
+    RollupArchive<Long> archive = new RollupArchive<Long>(2, new RollupArchive.Resolution(1, TimeUnit.SECONDS, 1));
+    archive.accept(new StatisticSampler.Sample<Long>(0L, null));
+    assertThat(archive.getArchive(), hasSize(1));
+    assertThat(archive.getCurrentRollup(0), nullValue());
+
+    archive.accept(new StatisticSampler.Sample<Long>(10L, 4L));
+    archive.clear();
+    assertThat(archive.getArchive(), hasSize(0));
+    assertThat(archive.getCurrentRollup(0), nullValue());
+  }
+
+  @Test
+  public void testNaNSamplesAreNotRolledUp() {
+    RollupArchive<Double> archive = new RollupArchive<Double>(2, new RollupArchive.Resolution(1, TimeUnit.SECONDS, 1));
+    archive.accept(new StatisticSampler.Sample<Double>(0L, 2.0));
+    archive.accept(new StatisticSampler.Sample<Double>(10L, Double.NaN));
+    assertThat(archive.getArchive(), hasSize(2));
+    assertThat(archive.getCurrentRollup(0).count(), is(1L));
+    assertThat(archive.getCurrentRollup(0).average(), is(2.0));
+  }
+
+  @Test
+  public void testLateSamplesAreDroppedAndCounted() {
+    RollupArchive<Long> archive = new RollupArchive<Long>(5,
+        new RollupArchive.Resolution(1, TimeUnit.SECONDS, 10),
+        new RollupArchive.Resolution(1, TimeUnit.MINUTES, 10));
+    archive.accept(new StatisticSampler.Sample<Long>(1000L, 1L));
+    archive.accept(new StatisticSampler.Sample<Long>(2000L, 2L));
+    archive.accept(new StatisticSampler.Sample<Long>(1500L, 100L));
+
+    assertThat(archive.getArchive(), hasSize(3));
+    assertThat(archive.getLateSamples(0), is(1L));
+    assertThat(archive.getRollups(0), hasSize(1));
+    assertThat(archive.getRollups(0).get(0).maximum(), is(1.0));
+    assertThat(archive.getCurrentRollup(0).maximum(), is(2.0));
+    assertThat(archive.getLateSamples(1), is(0L));
+    assertThat(archive.getCurrentRollup(1).maximum(), is(100.0));
+
+    archive.clear();
+    assertThat(archive.getLateSamples(0), is(0L));
+  }
+
+  @Test
+  public void testReadersSeeConsistentRollupsWhileWriting() throws InterruptedException {
+    final RollupArchive<Long> archive = new RollupArchive<Long>(1, new RollupArchive.Resolution(1, TimeUnit.MILLISECONDS, 16));
+    final long samples = 200000L;
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        for (long i = 0; i < samples; i++) {
+          archive.accept(new StatisticSampler.Sample<Long>(i, i));
+        }
+      }
+    };
+    writer.start();
+    try {
+      while (writer.isAlive()) {
+        List<RollupArchive.Rollup> rollups = archive.getRollups(0);
+        for (int i = 0; i < rollups.size(); i++) {
+          RollupArchive.Rollup rollup = rollups.get(i);
+          assertThat(rollup.count(), is(1L));
+          assertThat(rollup.last(), is((double) rollup.getTimestamp()));
+          if (i > 0) {
+            assertThat(rollup.getTimestamp() > rollups.get(i - 1).getTimestamp(), is(true));
+          }
+        }
+        RollupArchive.Rollup current = archive.getCurrentRollup(0);
+        if (current != null) {
+          assertThat(current.minimum(), is((double) current.getTimestamp()));
+        }
+      }
+    } finally {
+      writer.join();
+    }
+    List<RollupArchive.Rollup> rollups = archive.getRollups(0);
+    assertThat(rollups, hasSize(16));
+    assertThat(rollups.get(15).getTimestamp(), is(samples - 2));
+    assertThat(archive.getCurrentRollup(0).getTimestamp(), is(samples - 1));
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.archive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsCollectionContaining.hasItem;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.terracotta.util.RetryAssert.assertBy;
+
+public class SamplingSchedulerTest {
+
+  @Test
+  public void testSamplersWithTheSamePeriodShareOneExecution() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    try {
+      SamplingScheduler scheduler = new SamplingScheduler(executor);
+      List<RecordingTask> tasks = new ArrayList<RecordingTask>();
+      for (int i = 0; i < 100; i++) {
+        RecordingTask task = new RecordingTask(1);
+        tasks.add(task);
+        scheduler.register(TimeUnit.HOURS.toNanos(1), task);
+      }
+      scheduler.register(TimeUnit.HOURS.toNanos(2), new RecordingTask(1));
+      assertThat(scheduler.groupCount(), is(2));
+      assertThat(executor.getQueue().size(), is(2));
+
+      for (RecordingTask task : tasks) {
+        scheduler.unregister(TimeUnit.HOURS.toNanos(1), task);
+      }
+      executor.purge();
+      assertThat(scheduler.groupCount(), is(1));
+      assertThat(executor.getQueue().size(), is(1));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testGroupSharesOneTimestampPerTick() throws Exception {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    try {
+      SamplingScheduler scheduler = new SamplingScheduler(executor);
+      RecordingTask a = new RecordingTask(1);
+      RecordingTask b = new RecordingTask(1);
+      scheduler.register(TimeUnit.MILLISECONDS.toNanos(10), a);
+      scheduler.register(TimeUnit.MILLISECONDS.toNanos(10), new SamplingScheduler.Task() {
+        @Override
+        public void sample(long timestamp) {
+          throw new IllegalStateException();
+        }
+      });
+      scheduler.register(TimeUnit.MILLISECONDS.toNanos(10), b);
+      assertTrue(b.latch.await(10, TimeUnit.SECONDS));
+      assertBy(10, TimeUnit.SECONDS, a.timestamps(), hasItem(b.timestamps().call().get(0)));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSharedExecutorsShareAScheduler() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    try {
+      assertTrue(SamplingScheduler.forExecutor(executor) == SamplingScheduler.forExecutor(executor));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  static class RecordingTask implements SamplingScheduler.Task {
+
+    private final List<Long> timestamps = new ArrayList<Long>();
+    final CountDownLatch latch;
+
+    RecordingTask(int samples) {
+      this.latch = new CountDownLatch(samples);
+    }
+
+    Callable<List<Long>> timestamps() {
+      return new Callable<List<Long>>() {
+        @Override
+        public List<Long> call() {
+          synchronized (RecordingTask.this) {
+            return new ArrayList<Long>(timestamps);
+          }
+        }
+      };
+    }
+
+    @Override
+    public synchronized void sample(long timestamp) {
+      timestamps.add(timestamp);
+      latch.countDown();
+    }
+  }
+}
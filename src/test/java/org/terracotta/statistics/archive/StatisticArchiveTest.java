@@ -20,6 +20,7 @@ import static org.hamcrest.collection.IsIterableContainingInOrder.*;
 import org.hamcrest.core.IsCollectionContaining;
 import org.junit.Test;
 
+import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -56,6 +57,32 @@ public class StatisticArchiveTest {
     assertThat(overspill.getArchive(), contains(sample1));
   }
   
+  @Test
+  public void testCursorReadsOnlyNewSamples() {
+    StatisticArchive<String> archive = new StatisticArchive<String>(2);
+    ArchiveCursor cursor = new ArchiveCursor();
+    Timestamped<String> sample1 = new Sample("foo", 0);
+    Timestamped<String> sample2 = new Sample("bar", 1);
+    archive.accept(sample1);
+    assertThat(archive.getArchive(cursor), contains(sample1));
+    archive.accept(sample2);
+    assertThat(archive.getArchive(cursor), contains(sample2));
+    assertThat(archive.getArchive(cursor), IsEmptyCollection.<Timestamped<String>>empty());
+    assertThat(cursor.overwritten(), is(false));
+  }
+
+  @Test
+  public void testCursorReportsOverwrittenSamples() {
+    StatisticArchive<String> archive = new StatisticArchive<String>(1);
+    ArchiveCursor cursor = new ArchiveCursor();
+    Timestamped<String> sample1 = new Sample("foo", 0);
+    Timestamped<String> sample2 = new Sample("bar", 1);
+    archive.accept(sample1);
+    archive.accept(sample2);
+    assertThat(archive.getArchive(cursor), contains(sample2));
+    assertThat(cursor.missed(), is(1L));
+  }
+
   static class Sample<T> implements Timestamped<T> {
 
     private final T sample;
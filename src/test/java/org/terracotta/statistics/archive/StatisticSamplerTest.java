@@ -17,9 +17,11 @@ package org.terracotta.statistics.archive;
 
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
@@ -31,6 +33,7 @@ import org.terracotta.statistics.ConstantValueStatistic;
 import org.terracotta.statistics.ValueStatistic;
 
 import static org.hamcrest.collection.IsCollectionWithSize.*;
+import static org.hamcrest.core.Is.is;
 import static org.hamcrest.number.OrderingComparison.*;
 import static org.junit.Assert.assertThat;
 import static org.terracotta.util.RetryAssert.assertBy;
@@ -115,6 +118,42 @@ public class StatisticSamplerTest {
     }
   }
   
+  @Test
+  public void testOverlappingSamplesAreSkipped() throws InterruptedException {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger accepted = new AtomicInteger();
+    final StatisticSampler.SamplingTask<Long> task = new StatisticSampler.SamplingTask<Long>(ConstantValueStatistic.instance(1L), new SampleSink<Timestamped<Long>>() {
+      @Override
+      public void accept(Timestamped<Long> object) {
+        accepted.incrementAndGet();
+        writing.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    });
+    Thread slow = new Thread() {
+      @Override
+      public void run() {
+        task.sample(0L);
+      }
+    };
+    slow.start();
+    try {
+      writing.await();
+      task.sample(1L);
+      assertThat(accepted.get(), is(1));
+    } finally {
+      release.countDown();
+      slow.join();
+    }
+    task.sample(2L);
+    assertThat(accepted.get(), is(2));
+  }
+
   static <T> Callable<List<Timestamped<T>>> contentsOf(final StatisticArchive<T> archive) {
     return new Callable<List<Timestamped<T>>>() {
 
@@ -0,0 +1,143 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.terracotta.statistics.derived.AsynchronousEventPipeline.OverflowPolicy;
+import org.terracotta.statistics.observer.AbstractChainedEventObserver;
+import org.terracotta.statistics.observer.ChainedEventObserver;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AsynchronousEventPipelineTest {
+
+  @Test
+  public void testEventsAreDeliveredToTheirTargets() {
+    AsynchronousEventPipeline pipeline = new AsynchronousEventPipeline(16, OverflowPolicy.BLOCK);
+    try {
+      MinMaxAverage first = new MinMaxAverage();
+      MinMaxAverage second = new MinMaxAverage();
+      ChainedEventObserver asyncFirst = pipeline.observerFor(first);
+      ChainedEventObserver asyncSecond = pipeline.observerFor(second);
+
+      asyncFirst.event(0L, 1L);
+      asyncFirst.event(0L, 3L, 7L);
+      asyncSecond.event(0L, new long[] {10L});
+      pipeline.flush();
+
+      assertThat(first.mean(), is(2.0));
+      assertThat(second.mean(), is(10.0));
+      assertThat(pipeline.dropped(), is(0L));
+    } finally {
+      pipeline.stop();
+    }
+  }
+
+  @Test
+  public void testBlockingPolicyLosesNothing() throws InterruptedException {
+    AsynchronousEventPipeline pipeline = new AsynchronousEventPipeline(2, OverflowPolicy.BLOCK);
+    try {
+      final CountingObserver counter = new CountingObserver();
+      final ChainedEventObserver async = pipeline.observerFor(counter);
+      Thread producer = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            async.event(0L);
+            async.events(0L, 2L);
+          }
+        }
+      };
+      producer.start();
+      producer.join();
+      pipeline.flush();
+
+      assertThat(counter.count.get(), is(30000L));
+      assertThat(pipeline.dropped(), is(0L));
+    } finally {
+      pipeline.stop();
+    }
+  }
+
+  @Test
+  public void testDroppingPolicyCountsOverflow() throws InterruptedException {
+    AsynchronousEventPipeline pipeline = new AsynchronousEventPipeline(4, OverflowPolicy.DROP);
+    final CountDownLatch stalled = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    CountingObserver counter = new CountingObserver() {
+      @Override
+      public void events(long time, long count) {
+        stalled.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        super.events(time, count);
+      }
+    };
+    try {
+      ChainedEventObserver async = pipeline.observerFor(counter);
+      async.events(0L, 1L);
+      stalled.await();
+      for (int i = 0; i < 9; i++) {
+        async.event(0L);
+      }
+      assertThat(pipeline.dropped(), is(6L));
+      assertThat(pipeline.droppedStatistic().value(), is(6L));
+
+      release.countDown();
+      pipeline.flush();
+      assertThat(counter.count.get(), is(4L));
+    } finally {
+      release.countDown();
+      pipeline.stop();
+    }
+  }
+
+  @Test
+  public void testBlockingPolicyDropsOnceStopped() {
+    AsynchronousEventPipeline pipeline = new AsynchronousEventPipeline(2, OverflowPolicy.BLOCK);
+    CountingObserver counter = new CountingObserver();
+    ChainedEventObserver async = pipeline.observerFor(counter);
+    pipeline.stop();
+    for (int i = 0; i < 10; i++) {
+      async.event(0L);
+    }
+    pipeline.flush();
+    assertThat(counter.count.get() + pipeline.dropped(), is(10L));
+    assertThat(pipeline.dropped() > 0L, is(true));
+  }
+
+  static class CountingObserver extends AbstractChainedEventObserver {
+
+    final AtomicLong count = new AtomicLong();
+
+    @Override
+    public void event(long time, long... parameters) {
+      count.incrementAndGet();
+    }
+
+    @Override
+    public void events(long time, long count) {
+      this.count.addAndGet(count);
+    }
+  }
+}
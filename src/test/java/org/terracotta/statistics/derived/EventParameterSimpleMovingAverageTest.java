@@ -93,4 +93,53 @@ public class EventParameterSimpleMovingAverageTest {
     assertThat(average.minimum(), nullValue());
     assertThat(average.maximum(), nullValue());
   }
+
+  @Test
+  public void testSlotsAreReusedAcrossManyWindows() {
+    EventParameterSimpleMovingAverage average = new EventParameterSimpleMovingAverage(100, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < 1000; i++) {
+      average.event(Time.time(), i);
+      SOURCE.advanceTime(10, TimeUnit.MILLISECONDS);
+    }
+    assertThat(average.minimum(), is(990L));
+    assertThat(average.maximum(), is(999L));
+    assertThat(average.average(), is(994.5));
+  }
+
+  @Test
+  public void testLateEventOutsideWindowIsIgnored() {
+    EventParameterSimpleMovingAverage average = new EventParameterSimpleMovingAverage(100, TimeUnit.MILLISECONDS);
+    long old = Time.time();
+    SOURCE.advanceTime(1, TimeUnit.SECONDS);
+    average.event(Time.time(), 5L);
+    average.event(old - TimeUnit.MILLISECONDS.toNanos(1200), 1L);
+    assertThat(average.average(), is(5.0));
+    assertThat(average.minimum(), is(5L));
+  }
+
+  @Test
+  public void testWeightedEventAverage() {
+    EventParameterSimpleMovingAverage average = new EventParameterSimpleMovingAverage(1, TimeUnit.DAYS);
+    average.weightedEvent(Time.time(), 10L, 3L);
+    average.event(Time.time(), 2L);
+    assertThat(average.average(), is(8.0));
+    assertThat(average.count(), is(4L));
+    assertThat(average.total(), is(32L));
+    assertThat(average.minimum(), is(2L));
+    assertThat(average.maximum(), is(10L));
+  }
+
+  @Test
+  public void testGrowingTheWindowKeepsRecording() {
+    EventParameterSimpleMovingAverage average = new EventParameterSimpleMovingAverage(100, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < 20; i++) {
+      average.event(Time.time(), 1L);
+      SOURCE.advanceTime(10, TimeUnit.MILLISECONDS);
+    }
+    average.setWindow(1, TimeUnit.DAYS);
+    assertThat(average.count(), is(0L));
+    average.event(Time.time(), 7L);
+    assertThat(average.count(), is(1L));
+    assertThat(average.average(), is(7.0));
+  }
 }
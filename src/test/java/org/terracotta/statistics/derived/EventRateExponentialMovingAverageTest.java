@@ -0,0 +1,96 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.terracotta.statistics.MutableTimeSource;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.hamcrest.number.OrderingComparison.greaterThan;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class EventRateExponentialMovingAverageTest {
+
+  @Test
+  public void testNoEventsIsZero() {
+    MutableTimeSource source = new MutableTimeSource();
+    EventRateExponentialMovingAverage ewma = new EventRateExponentialMovingAverage(source);
+    source.advanceTime(1, TimeUnit.MINUTES);
+    assertThat(ewma.rate(1, TimeUnit.MINUTES, TimeUnit.SECONDS), is(0.0));
+  }
+
+  @Test
+  public void testRateIsOnlyUpdatedOnTick() {
+    MutableTimeSource source = new MutableTimeSource();
+    EventRateExponentialMovingAverage ewma = new EventRateExponentialMovingAverage(source);
+    ewma.events(source.time(), 50);
+    assertThat(ewma.rate(1, TimeUnit.MINUTES, TimeUnit.SECONDS), is(0.0));
+    source.advanceTime(5, TimeUnit.SECONDS);
+    assertThat(ewma.rate(1, TimeUnit.MINUTES, TimeUnit.SECONDS), closeTo(10.0, 0.0001));
+    assertThat(ewma.rate(15, TimeUnit.MINUTES, TimeUnit.SECONDS), closeTo(10.0, 0.0001));
+  }
+
+  @Test
+  public void testConstantRateConverges() {
+    MutableTimeSource source = new MutableTimeSource();
+    EventRateExponentialMovingAverage ewma = new EventRateExponentialMovingAverage(source);
+    for (int i = 0; i < 1000; i++) {
+      ewma.events(source.time(), 20);
+      source.advanceTime(1, TimeUnit.SECONDS);
+    }
+    assertThat(ewma.rate(1, TimeUnit.MINUTES, TimeUnit.SECONDS), closeTo(20.0, 0.5));
+    assertThat(ewma.rate(5, TimeUnit.MINUTES, TimeUnit.SECONDS), closeTo(20.0, 0.5));
+    assertThat(ewma.rate(15, TimeUnit.MINUTES, TimeUnit.SECONDS), closeTo(20.0, 0.5));
+  }
+
+  @Test
+  public void testShorterWindowsDecayFaster() {
+    MutableTimeSource source = new MutableTimeSource();
+    EventRateExponentialMovingAverage ewma = new EventRateExponentialMovingAverage(source);
+    ewma.events(source.time(), 50);
+    source.advanceTime(5, TimeUnit.SECONDS);
+    source.advanceTime(5, TimeUnit.MINUTES);
+
+    double oneMinute = ewma.rate(1, TimeUnit.MINUTES, TimeUnit.SECONDS);
+    double fiveMinute = ewma.rate(5, TimeUnit.MINUTES, TimeUnit.SECONDS);
+    double fifteenMinute = ewma.rate(15, TimeUnit.MINUTES, TimeUnit.SECONDS);
+    assertThat(oneMinute, closeTo(10.0 * Math.exp(-5.0), 0.001));
+    assertThat(oneMinute, lessThan(fiveMinute));
+    assertThat(fiveMinute, lessThan(fifteenMinute));
+    assertThat(fifteenMinute, lessThan(10.0));
+    assertThat(oneMinute, greaterThan(0.0));
+  }
+
+  @Test
+  public void testConfigurableWindows() {
+    MutableTimeSource source = new MutableTimeSource();
+    EventRateExponentialMovingAverage ewma = new EventRateExponentialMovingAverage(source, 1, TimeUnit.SECONDS, TimeUnit.SECONDS, 10);
+    ewma.events(source.time(), 4);
+    source.advanceTime(1, TimeUnit.SECONDS);
+    assertThat(ewma.rateStatistic(10, TimeUnit.SECONDS).value(), closeTo(4.0, 0.0001));
+    assertThat(ewma.hasWindow(10, TimeUnit.SECONDS), is(true));
+    assertThat(ewma.hasWindow(1, TimeUnit.MINUTES), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownWindowIsRejected() {
+    new EventRateExponentialMovingAverage(new MutableTimeSource()).rateStatistic(2, TimeUnit.MINUTES);
+  }
+}
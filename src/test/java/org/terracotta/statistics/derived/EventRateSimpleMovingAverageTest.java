@@ -58,6 +58,20 @@ public class EventRateSimpleMovingAverageTest {
     Assert.assertThat(stat.rateUsingSeconds(), Is.is(0.0));
   }
 
+  @Test
+  public void testBatchedEventsMatchSingleEvents() {
+    EventRateSimpleMovingAverage single = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
+    EventRateSimpleMovingAverage batched = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
+    SOURCE.advanceTime(10, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < 5; i++) {
+      single.event(Time.time());
+    }
+    batched.events(Time.time(), 5);
+    SOURCE.advanceTime(10, TimeUnit.MILLISECONDS);
+    assertThat(batched.rateUsingSeconds(), Is.is(single.rateUsingSeconds()));
+    assertThat(batched.rateUsingSeconds(), greaterThan(0.0));
+  }
+
   @Test
   public void testConsistentRate() throws InterruptedException {
     for (int rate = 1; rate < 10; rate++) {
@@ -122,6 +136,38 @@ public class EventRateSimpleMovingAverageTest {
     }
   }
 
+  @Test
+  public void testArchivedCountsLeaveTheWindow() {
+    EventRateSimpleMovingAverage stat = new EventRateSimpleMovingAverage(1, TimeUnit.SECONDS);
+    for (int i = 0; i < 20; i++) {
+      stat.events(Time.time(), 10);
+      SOURCE.advanceTime(100, TimeUnit.MILLISECONDS);
+    }
+    assertThat(stat.rateUsingSeconds(), closeTo(100.0, EXPECTED_ACCURACY * 100.0));
+
+    stat.setWindow(200, TimeUnit.MILLISECONDS);
+    assertThat(stat.rateUsingSeconds(), closeTo(100.0, EXPECTED_ACCURACY * 100.0));
+
+    SOURCE.advanceTime(1, TimeUnit.SECONDS);
+    Assert.assertThat(stat.rateUsingSeconds(), Is.is(0.0));
+  }
+
+  @Test
+  public void testLateEventsAreCreditedUntilRetirement() {
+    EventRateSimpleMovingAverage.CounterPartition partition = new EventRateSimpleMovingAverage.CounterPartition(0L, 10L);
+    partition.add(5L);
+    Assert.assertThat(partition.uncredited(), Is.is(5L));
+    Assert.assertThat(partition.uncredited(), Is.is(0L));
+
+    partition.add(2L);
+    Assert.assertThat(partition.uncredited(), Is.is(2L));
+    Assert.assertThat(partition.retire(), Is.is(7L));
+
+    partition.add(1L);
+    Assert.assertThat(partition.uncredited(), Is.is(0L));
+    Assert.assertThat(partition.retire(), Is.is(0L));
+  }
+
   static class EventDriver implements Callable<Double> {
 
     private final ChainedEventObserver stat;
@@ -0,0 +1,90 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+public class GeometricSamplerTest {
+
+  @Test
+  public void testProbabilityOfOneAlwaysSamples() {
+    GeometricSampler sampler = new GeometricSampler(1.0);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(sampler.sample(), is(true));
+    }
+  }
+
+  @Test
+  public void testProbabilityOfZeroNeverSamples() {
+    GeometricSampler sampler = new GeometricSampler(0.0);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(sampler.sample(), is(false));
+    }
+  }
+
+  @Test
+  public void testExpectedRateIsHonoured() {
+    GeometricSampler sampler = new GeometricSampler(0.01);
+    int samples = 0;
+    for (int i = 0; i < 10000000; i++) {
+      if (sampler.sample()) {
+        samples++;
+      }
+    }
+    assertThat((double) samples, closeTo(100000, 3000));
+  }
+
+  @Test
+  public void testCountdownIsRedrawnWhenProbabilityChanges() {
+    GeometricSampler sampler = new GeometricSampler(1e-9);
+    sampler.sample();
+    sampler.setProbability(0.5);
+    int samples = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (sampler.sampleProbability() == 0.5) {
+        samples++;
+      }
+    }
+    assertThat((double) samples, closeTo(5000, 300));
+  }
+
+  @Test
+  public void testProbabilityChangesApplyImmediately() {
+    GeometricSampler sampler = new GeometricSampler(0.5);
+    sampler.sample();
+    sampler.setProbability(1.0);
+    assertThat(sampler.probability(), is(1.0));
+    assertThat(sampler.sample(), is(true));
+
+    sampler.setProbability(0.1);
+    int samples = 0;
+    for (int i = 0; i < 1000000; i++) {
+      if (sampler.sample()) {
+        samples++;
+      }
+    }
+    assertThat((double) samples, closeTo(100000, 3000));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIllegalProbabilityIsRejected() {
+    new GeometricSampler(1.5);
+  }
+}
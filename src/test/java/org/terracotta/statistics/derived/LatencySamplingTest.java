@@ -22,10 +22,13 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 import org.terracotta.statistics.Time;
-import org.terracotta.statistics.observer.ChainedEventObserver;
+import org.terracotta.statistics.observer.AbstractChainedEventObserver;
+import org.terracotta.statistics.observer.TimedOperationObserver;
 
 import static java.util.EnumSet.*;
+import static org.hamcrest.core.CombinableMatcher.both;
 import static org.hamcrest.core.Is.*;
+import static org.hamcrest.number.IsCloseTo.closeTo;
 import static org.hamcrest.number.OrderingComparison.*;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
@@ -39,7 +42,7 @@ public class LatencySamplingTest {
   @Test
   public void testRateOfZeroNeverSamples() {
     LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 0.0f);
-    latency.addDerivedStatistic(new ChainedEventObserver() {
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
 
       @Override
       public void event(long time, long ... parameters) {
@@ -57,7 +60,7 @@ public class LatencySamplingTest {
   public void testRateOfOneAlwaysSamples() {
     LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 1.0f);
     final AtomicInteger eventCount = new AtomicInteger();
-    latency.addDerivedStatistic(new ChainedEventObserver() {
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
 
       @Override
       public void event(long time, long ... parameters) {
@@ -76,7 +79,7 @@ public class LatencySamplingTest {
   @Test
   public void testMismatchedResultNeverSamples() {
     LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 1.0f);
-    latency.addDerivedStatistic(new ChainedEventObserver() {
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
 
       @Override
       public void event(long time, long ... parameters) {
@@ -90,12 +93,34 @@ public class LatencySamplingTest {
     }
   }
   
+  @Test
+  public void testCompletedOperationLeavesNoStartBehind() {
+    LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 1.0f);
+    final AtomicInteger eventCount = new AtomicInteger();
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
+
+      @Override
+      public void event(long time, long ... parameters) {
+        eventCount.incrementAndGet();
+      }
+    });
+
+    latency.begin(0);
+    latency.end(1, FooBar.FOO);
+    latency.end(2, FooBar.FOO);
+    latency.begin(3);
+    latency.end(4, FooBar.BAR);
+    latency.end(5, FooBar.FOO);
+
+    assertThat(eventCount.get(), is(1));
+  }
+
   @Test
   public void testLatencyMeasuredAccurately() throws InterruptedException {
     Random random = new Random();
     LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 1.0f);
     final AtomicLong expected = new AtomicLong();
-    latency.addDerivedStatistic(new ChainedEventObserver() {
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
 
       @Override
       public void event(long time, long ... parameters) {
@@ -111,6 +136,146 @@ public class LatencySamplingTest {
     }
   }
   
+  @Test
+  public void testTimedEndMeasuresLatencyWithoutBegin() {
+    LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 1.0f);
+    final AtomicLong measured = new AtomicLong(-1);
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
+
+      @Override
+      public void event(long time, long ... parameters) {
+        measured.set(parameters[0]);
+      }
+    });
+
+    latency.end(15, 10, FooBar.FOO);
+    assertThat(measured.get(), is(5L));
+  }
+
+  @Test
+  public void testUntimedEndNeverSamples() {
+    LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 1.0f);
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
+
+      @Override
+      public void event(long time, long ... parameters) {
+        fail();
+      }
+    });
+
+    for (int i = 0; i < 100; i++) {
+      latency.end(1, TimedOperationObserver.UNTIMED, FooBar.FOO);
+    }
+  }
+
+  @Test
+  public void testTimedEndIgnoresThreadLocalState() {
+    LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 1.0f);
+    final AtomicInteger eventCount = new AtomicInteger();
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
+
+      @Override
+      public void event(long time, long ... parameters) {
+        eventCount.incrementAndGet();
+      }
+    });
+
+    latency.begin(0);
+    latency.end(2, 1, FooBar.FOO);
+    latency.end(3, 1, FooBar.FOO);
+    assertThat(eventCount.get(), is(2));
+    latency.end(4, FooBar.FOO);
+    assertThat(eventCount.get(), is(3));
+  }
+
+  @Test
+  public void testAdaptiveSamplingSamplesEverythingBelowTarget() {
+    LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 100, TimeUnit.SECONDS);
+    final AtomicInteger eventCount = new AtomicInteger();
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
+
+      @Override
+      public void event(long time, long ... parameters) {
+        eventCount.incrementAndGet();
+      }
+    });
+
+    long time = 0;
+    for (int i = 0; i < 500; i++) {
+      latency.end(time + 1, time, FooBar.FOO);
+      time += TimeUnit.MILLISECONDS.toNanos(10);
+    }
+    assertThat(eventCount.get(), is(500));
+    assertThat(latency.samplingRate(), is(1.0));
+  }
+
+  @Test
+  public void testAdaptiveSamplingConvergesOnTargetWithUnbiasedWeights() {
+    LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 1000, TimeUnit.SECONDS);
+    EventParameterSimpleMovingAverage average = new EventParameterSimpleMovingAverage(1, TimeUnit.DAYS);
+    final AtomicInteger eventCount = new AtomicInteger();
+    latency.addDerivedStatistic(average);
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
+
+      @Override
+      public void event(long time, long ... parameters) {
+        eventCount.incrementAndGet();
+      }
+    });
+
+    long time = 0;
+    for (int second = 0; second < 5; second++) {
+      for (int i = 0; i < 100000; i++) {
+        latency.end(time + 100, time, FooBar.FOO);
+        time += TimeUnit.MICROSECONDS.toNanos(10);
+      }
+    }
+    assertThat(latency.samplingRate(), is(1.0 / 128));
+    assertThat(eventCount.get(), both(greaterThan(100000 + 2000)).and(lessThan(100000 + 6000)));
+    assertThat(average.average(), is(100.0));
+  }
+
+  @Test
+  public void testAdaptiveWeightsSumToOperationCount() {
+    LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 1000, TimeUnit.SECONDS);
+    EventParameterSimpleMovingAverage average = new EventParameterSimpleMovingAverage(1, TimeUnit.DAYS);
+    latency.addDerivedStatistic(average);
+
+    long time = 0;
+    for (int second = 0; second < 5; second++) {
+      int operations = (second + 1) * 20000;
+      long interval = TimeUnit.SECONDS.toNanos(1) / operations;
+      for (int i = 0; i < operations; i++) {
+        latency.end(time + 100, time, FooBar.FOO);
+        time += interval;
+      }
+    }
+    assertThat((double) average.count(), closeTo(300000, 20000));
+  }
+
+  @Test
+  public void testSampledBatchIsOneMeanLatencyWeightedByBatchSize() {
+    LatencySampling<FooBar> latency = new LatencySampling<FooBar>(of(FooBar.FOO), 1.0);
+    EventParameterSimpleMovingAverage average = new EventParameterSimpleMovingAverage(1, TimeUnit.DAYS);
+    final AtomicInteger eventCount = new AtomicInteger();
+    latency.addDerivedStatistic(average);
+    latency.addDerivedStatistic(new AbstractChainedEventObserver() {
+
+      @Override
+      public void event(long time, long ... parameters) {
+        eventCount.incrementAndGet();
+        assertThat(parameters[0], is(25L));
+      }
+    });
+
+    latency.endBatch(1000L, FooBar.FOO, 4L, 100L);
+    latency.endBatch(1000L, FooBar.FOO, 0L, 100L);
+    latency.endBatch(1000L, FooBar.BAR, 4L, 100L);
+    assertThat(eventCount.get(), is(1));
+    assertThat(average.count(), is(4L));
+    assertThat(average.average(), is(25.0));
+  }
+
   static enum FooBar {
     FOO, BAR;
   }
@@ -0,0 +1,93 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.hamcrest.number.OrderingComparison.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class LogLinearHistogramTest {
+
+  @Test
+  public void testEmptyHistogram() {
+    LogLinearHistogram histogram = new LogLinearHistogram(1000L, 2);
+    assertThat(histogram.count(), is(0L));
+    assertThat(histogram.percentile(50.0), nullValue());
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LogLinearHistogram histogram = new LogLinearHistogram(1000L, 2);
+    for (long i = 1; i <= 100; i++) {
+      histogram.event(0L, i);
+    }
+    assertThat(histogram.count(), is(100L));
+    assertThat(histogram.percentile(0.0), is(1L));
+    assertThat(histogram.percentile(50.0), is(50L));
+    assertThat(histogram.percentile(99.0), is(99L));
+    assertThat(histogram.percentile(100.0), is(100L));
+  }
+
+  @Test
+  public void testLargeValuesAreWithinPrecision() {
+    Random rndm = new Random();
+    for (int i = 0; i < 1000; i++) {
+      long value = Math.abs(rndm.nextLong()) >>> rndm.nextInt(63);
+      LogLinearHistogram single = new LogLinearHistogram(Long.MAX_VALUE / 2, 2);
+      single.event(0L, value);
+      long recorded = single.percentile(100.0);
+      long expected = Math.min(value, Long.MAX_VALUE / 2);
+      assertThat(recorded, greaterThanOrEqualTo(expected));
+      assertThat((double) recorded, closeTo(expected, expected * 0.01 + 1));
+    }
+  }
+
+  @Test
+  public void testPercentilesOfUniformDistribution() {
+    LogLinearHistogram histogram = new LogLinearHistogram(1000000L, 2);
+    for (long i = 1; i <= 100000; i++) {
+      histogram.event(0L, i);
+    }
+    assertThat((double) histogram.percentile(50.0), closeTo(50000, 500));
+    assertThat((double) histogram.percentile(99.0), closeTo(99000, 990));
+    assertThat((double) histogram.percentile(99.9), closeTo(99900, 999));
+  }
+
+  @Test
+  public void testOutOfRangeValues() {
+    LogLinearHistogram histogram = new LogLinearHistogram(1000L, 2);
+    histogram.event(0L, -1L);
+    assertThat(histogram.count(), is(0L));
+    histogram.event(0L, 5000L);
+    assertThat(histogram.percentile(100.0), is(1000L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPercentileAboveHundredIsRejected() {
+    new LogLinearHistogram(1000L, 2).percentile(100.1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParameterlessEventIsRejected() {
+    new LogLinearHistogram(1000L, 2).event(0L);
+  }
+}
@@ -19,6 +19,7 @@ import org.junit.Test;
 
 import static org.hamcrest.core.Is.*;
 import static org.hamcrest.core.IsNull.*;
+import static org.hamcrest.number.IsCloseTo.closeTo;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -82,4 +83,47 @@ public class MinMaxAverageTest {
     stats.event(0, 0L);
     assertThat(stats.mean(), is(1.0));
   }
+
+  @Test
+  public void testVarianceBehavior() {
+    MinMaxAverage stats = new MinMaxAverage();
+
+    assertThat(stats.variance(), nullValue());
+    assertThat(stats.standardDeviation(), nullValue());
+    stats.event(0, 5L);
+    assertThat(stats.variance(), is(0.0));
+    for (long value : new long[] {2L, 4L, 4L, 4L, 5L, 7L, 9L}) {
+      stats.event(0, value);
+    }
+    stats.event(0, 0L);
+    assertThat(stats.mean(), is(40.0 / 9));
+    assertThat(stats.variance(), closeTo(6.0247, 0.0001));
+    assertThat(stats.standardDeviation(), closeTo(Math.sqrt(6.0247), 0.0001));
+  }
+
+  @Test
+  public void testVarianceIsStableWithLargeOffset() {
+    MinMaxAverage stats = new MinMaxAverage();
+    long offset = 1000000000000L;
+    for (int i = 0; i < 1000; i++) {
+      stats.event(0, offset + (i & 1));
+    }
+    assertThat(stats.variance(), closeTo(0.25, 0.000001));
+  }
+
+  @Test
+  public void testPipelinedEventsAreRecordedOnFlush() {
+    AsynchronousEventPipeline pipeline = new AsynchronousEventPipeline(16, AsynchronousEventPipeline.OverflowPolicy.BLOCK);
+    try {
+      MinMaxAverage stats = new MinMaxAverage(pipeline);
+      stats.event(0, 4L);
+      stats.event(0, 8L, 100L);
+      pipeline.flush();
+      assertThat(stats.min(), is(4L));
+      assertThat(stats.max(), is(8L));
+      assertThat(stats.mean(), is(6.0));
+    } finally {
+      pipeline.stop();
+    }
+  }
 }
@@ -0,0 +1,114 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+public class QuantileSketchTest {
+
+  private static final double ACCURACY = 0.01;
+
+  @Test
+  public void testEmptySketch() {
+    QuantileSketch sketch = new QuantileSketch(ACCURACY, 1L, 1000000L);
+    assertThat(sketch.count(), is(0L));
+    assertThat(sketch.percentile(50.0), nullValue());
+  }
+
+  @Test
+  public void testPercentilesAreWithinRelativeAccuracy() {
+    QuantileSketch sketch = new QuantileSketch(ACCURACY, 1L, Long.MAX_VALUE);
+    long[] values = randomValues(new Random(), 10000);
+    for (long v : values) {
+      sketch.event(0L, v);
+    }
+    assertAccurate(sketch, values);
+  }
+
+  @Test
+  public void testMergedSketchesMatchCombinedValues() {
+    Random rndm = new Random();
+    long[] a = randomValues(rndm, 5000);
+    long[] b = randomValues(rndm, 3000);
+    QuantileSketch sketchA = new QuantileSketch(ACCURACY, 1L, Long.MAX_VALUE);
+    QuantileSketch sketchB = new QuantileSketch(ACCURACY, 1L, Long.MAX_VALUE);
+    for (long v : a) {
+      sketchA.event(0L, v);
+    }
+    for (long v : b) {
+      sketchB.event(0L, v);
+    }
+    sketchA.merge(sketchB);
+
+    long[] combined = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, combined, a.length, b.length);
+    assertThat(sketchA.count(), is((long) combined.length));
+    assertAccurate(sketchA, combined);
+  }
+
+  @Test
+  public void testSerializedFormRoundTrips() {
+    QuantileSketch sketch = new QuantileSketch(ACCURACY, 10L, 1000000L);
+    sketch.event(0L, 0L);
+    sketch.event(0L, 5L);
+    sketch.event(0L, 12345L);
+    sketch.event(0L, 5000000L);
+
+    QuantileSketch copy = QuantileSketch.deserialize(sketch.serialize());
+    assertThat(copy.count(), is(4L));
+    for (double p = 0.0; p <= 100.0; p += 12.5) {
+      assertThat(copy.percentile(p), is(sketch.percentile(p)));
+    }
+    copy.merge(sketch);
+    assertThat(copy.count(), is(8L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIncompatibleSketchesDoNotMerge() {
+    new QuantileSketch(ACCURACY, 1L, 1000L).merge(new QuantileSketch(0.02, 1L, 1000L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTruncatedFormIsRejected() {
+    byte[] serialized = new QuantileSketch(ACCURACY, 1L, 1000L).serialize();
+    QuantileSketch.deserialize(Arrays.copyOf(serialized, serialized.length - 1));
+  }
+
+  private static long[] randomValues(Random rndm, int count) {
+    long[] values = new long[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = 1 + (long) Math.exp(rndm.nextDouble() * 30);
+    }
+    return values;
+  }
+
+  private static void assertAccurate(QuantileSketch sketch, long[] values) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    for (double p : new double[] {0.0, 10.0, 50.0, 90.0, 99.0, 99.9, 100.0}) {
+      long expected = sorted[(int) (Math.max(1L, (long) ((p / 100.0) * sorted.length + 0.5)) - 1)];
+      assertThat(sketch.percentile(p), closeTo(expected, expected * ACCURACY));
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.derived;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.terracotta.statistics.MutableTimeSource;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SlidingWindowHistogramTest {
+
+  @Test
+  public void testEmptyHistogram() {
+    SlidingWindowHistogram histogram = new SlidingWindowHistogram(1, TimeUnit.SECONDS, 1000L, 2, new MutableTimeSource());
+    assertThat(histogram.count(), is(0L));
+    assertThat(histogram.percentile(99.0), nullValue());
+  }
+
+  @Test
+  public void testPercentilesWithinWindow() {
+    MutableTimeSource source = new MutableTimeSource();
+    SlidingWindowHistogram histogram = new SlidingWindowHistogram(1, TimeUnit.SECONDS, 1000L, 2, source);
+    for (long i = 1; i <= 100; i++) {
+      histogram.event(source.time(), i);
+      source.advanceTime(5, TimeUnit.MILLISECONDS);
+    }
+    assertThat(histogram.count(), is(100L));
+    assertThat(histogram.percentile(50.0), is(50L));
+    assertThat(histogram.percentile(99.0), is(99L));
+  }
+
+  @Test
+  public void testValuesExpireWithTheWindow() {
+    MutableTimeSource source = new MutableTimeSource();
+    SlidingWindowHistogram histogram = new SlidingWindowHistogram(1, TimeUnit.SECONDS, 1000L, 2, source);
+    histogram.event(source.time(), 900L);
+    source.advanceTime(600, TimeUnit.MILLISECONDS);
+    histogram.event(source.time(), 10L);
+    assertThat(histogram.count(), is(2L));
+    assertThat(histogram.percentile(100.0), is(903L));
+
+    source.advanceTime(600, TimeUnit.MILLISECONDS);
+    assertThat(histogram.count(), is(1L));
+    assertThat(histogram.percentile(100.0), is(10L));
+
+    source.advanceTime(2, TimeUnit.SECONDS);
+    assertThat(histogram.count(), is(0L));
+  }
+
+  @Test
+  public void testSlicesAreRecycled() {
+    MutableTimeSource source = new MutableTimeSource();
+    SlidingWindowHistogram histogram = new SlidingWindowHistogram(1, TimeUnit.SECONDS, 1000L, 2, source);
+    for (int i = 0; i < 100; i++) {
+      histogram.event(source.time(), i);
+      source.advanceTime(100, TimeUnit.MILLISECONDS);
+    }
+    assertThat(histogram.count(), is(10L));
+    assertThat(histogram.percentile(0.0), is(90L));
+  }
+
+  @Test
+  public void testLargeWeightsDoNotOverflowBuckets() {
+    MutableTimeSource source = new MutableTimeSource();
+    SlidingWindowHistogram histogram = new SlidingWindowHistogram(1, TimeUnit.SECONDS, 1000L, 2, source);
+    histogram.weightedEvent(0L, 10L, 1L << 30);
+    histogram.weightedEvent(0L, 10L, 1L << 30);
+    histogram.weightedEvent(0L, 10L, 1L << 30);
+    histogram.event(0L, 900L);
+    assertThat(histogram.count(), is((3L << 30) + 1));
+    assertThat(histogram.percentile(50.0), is(10L));
+  }
+
+  @Test
+  public void testSetWindowDiscardsValues() {
+    MutableTimeSource source = new MutableTimeSource();
+    SlidingWindowHistogram histogram = new SlidingWindowHistogram(1, TimeUnit.SECONDS, 1000L, 2, source);
+    histogram.event(source.time(), 5L);
+    histogram.setWindow(1, TimeUnit.MINUTES);
+    assertThat(histogram.count(), is(0L));
+    histogram.event(source.time(), 5L);
+    assertThat(histogram.count(), is(1L));
+  }
+
+  @Test
+  public void testCombinedPercentiles() {
+    MutableTimeSource source = new MutableTimeSource();
+    SlidingWindowHistogram low = new SlidingWindowHistogram(1, TimeUnit.SECONDS, 1000L, 2, source);
+    SlidingWindowHistogram high = new SlidingWindowHistogram(1, TimeUnit.SECONDS, 1000L, 2, source);
+    for (long i = 1; i <= 50; i++) {
+      low.event(source.time(), i);
+      high.event(source.time(), 50 + i);
+    }
+    assertThat(SlidingWindowHistogram.percentile(50.0, low, high), is(50L));
+    assertThat(SlidingWindowHistogram.percentile(100.0, low, high), is(100L));
+    assertThat(SlidingWindowHistogram.percentile(50.0, low), is(25L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCombiningIncompatibleHistogramsFails() {
+    MutableTimeSource source = new MutableTimeSource();
+    SlidingWindowHistogram.percentile(50.0,
+        new SlidingWindowHistogram(1, TimeUnit.SECONDS, 1000L, 2, source),
+        new SlidingWindowHistogram(1, TimeUnit.SECONDS, 1000000L, 2, source));
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.extended;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.terracotta.statistics.MutableTimeSource;
+import org.terracotta.statistics.OperationStatistic;
+import org.terracotta.statistics.StatisticBuilder;
+import org.terracotta.statistics.StatisticsManager;
+import org.terracotta.statistics.TimeMocking;
+import org.terracotta.statistics.observer.OperationObserver;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class CompoundOperationImplTest {
+
+  private MutableTimeSource time;
+  private ScheduledExecutorService executor;
+  private OperationObserver<FooBar> observer;
+  private CompoundOperationImpl<FooBar> operation;
+
+  @Before
+  public void setUp() {
+    time = TimeMocking.push(new MutableTimeSource());
+    executor = Executors.newSingleThreadScheduledExecutor();
+    observer = StatisticBuilder.operation(FooBar.class).of(this).named("foobar").build();
+    OperationStatistic<FooBar> statistic = StatisticsManager.getOperationStatisticFor(observer);
+    operation = new CompoundOperationImpl<FooBar>(statistic, FooBar.class, 1, TimeUnit.DAYS, executor, 10, 1, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    operation.expire(Long.MAX_VALUE);
+    executor.shutdownNow();
+    TimeMocking.pop();
+  }
+
+  @Test
+  public void testEveryLatencyIsSampledByDefault() {
+    Latency latency = operation.component(FooBar.FOO).latency();
+    latency.samplingRate().value();
+    load(1000);
+    time.advanceTime(1, TimeUnit.SECONDS);
+    load(1);
+
+    assertThat(latency.samplingRate().value(), is(1.0));
+    assertThat(latency.maximum().value(), is(10L));
+  }
+
+  @Test
+  public void testLatencySamplingRateDropsUnderLoad() {
+    operation.setLatencySampling(10, TimeUnit.SECONDS);
+    Latency latency = operation.component(FooBar.FOO).latency();
+    latency.samplingRate().value();
+    load(1000);
+    time.advanceTime(1, TimeUnit.SECONDS);
+    load(1);
+
+    assertThat(latency.samplingRate().value(), lessThan(1.0));
+  }
+
+  @Test
+  public void testZeroLatencySamplingRestoresSamplingEverything() {
+    operation.setLatencySampling(10, TimeUnit.SECONDS);
+    Latency latency = operation.component(FooBar.FOO).latency();
+    latency.samplingRate().value();
+    load(1000);
+    time.advanceTime(1, TimeUnit.SECONDS);
+    load(1);
+    operation.setLatencySampling(0, TimeUnit.SECONDS);
+
+    assertThat(latency.samplingRate().value(), is(1.0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeLatencySamplingIsRejected() {
+    operation.setLatencySampling(-1, TimeUnit.SECONDS);
+  }
+
+  private void load(int operations) {
+    for (int i = 0; i < operations; i++) {
+      observer.begin();
+      time.advanceTime(10, TimeUnit.NANOSECONDS);
+      observer.end(FooBar.FOO);
+    }
+  }
+
+  enum FooBar {
+    FOO, BAR
+  }
+}
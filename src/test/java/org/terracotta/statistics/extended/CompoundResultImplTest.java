@@ -0,0 +1,157 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.extended;
+
+import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.terracotta.statistics.MutableTimeSource;
+import org.terracotta.statistics.OperationStatistic;
+import org.terracotta.statistics.StatisticBuilder;
+import org.terracotta.statistics.StatisticsManager;
+import org.terracotta.statistics.TimeMocking;
+import org.terracotta.statistics.derived.EventParameterSimpleMovingAverage;
+import org.terracotta.statistics.observer.OperationObserver;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.OrderingComparison.greaterThan;
+import static org.junit.Assert.assertThat;
+import static org.terracotta.util.RetryAssert.assertBy;
+
+public class CompoundResultImplTest {
+
+  private MutableTimeSource time;
+  private ScheduledExecutorService executor;
+  private OperationObserver<FooBar> observer;
+  private CompoundOperationImpl<FooBar> operation;
+
+  @Before
+  public void setUp() {
+    time = TimeMocking.push(new MutableTimeSource());
+    executor = Executors.newSingleThreadScheduledExecutor();
+    observer = StatisticBuilder.operation(FooBar.class).of(this).named("foobar").build();
+    OperationStatistic<FooBar> statistic = StatisticsManager.getOperationStatisticFor(observer);
+    operation = new CompoundOperationImpl<FooBar>(statistic, FooBar.class, 1, TimeUnit.DAYS, executor, 10, 1, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    operation.expire(Long.MAX_VALUE);
+    executor.shutdownNow();
+    TimeMocking.pop();
+  }
+
+  @Test
+  public void testCountIsTheSumOfTheComponentCounts() {
+    Result compound = operation.compound(EnumSet.of(FooBar.FOO, FooBar.BAR));
+    operate(FooBar.FOO, 10L);
+    operate(FooBar.FOO, 30L);
+    operate(FooBar.BAR, 100L);
+    operate(FooBar.BAZ, 1000L);
+
+    assertThat(compound.count().value(), is(3L));
+    assertThat(compound.count().value(), is(component(FooBar.FOO).count().value() + component(FooBar.BAR).count().value()));
+  }
+
+  @Test
+  public void testRateIsTheSumOfTheComponentRates() {
+    final Result compound = operation.compound(EnumSet.of(FooBar.FOO, FooBar.BAR));
+    compound.rate().value();
+    operate(FooBar.FOO, 10L);
+    operate(FooBar.FOO, 30L);
+    operate(FooBar.BAR, 100L);
+    time.advanceTime(1, TimeUnit.SECONDS);
+
+    assertBy(1, TimeUnit.SECONDS, new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        double foo = component(FooBar.FOO).rate().value();
+        double bar = component(FooBar.BAR).rate().value();
+        return foo > 0.0 && bar > 0.0 && compound.rate().value() == foo + bar;
+      }
+    }, is(true));
+  }
+
+  @Test
+  public void testMinimumAndMaximumSpanTheComponents() {
+    Latency compound = operation.compound(EnumSet.of(FooBar.FOO, FooBar.BAR)).latency();
+    compound.minimum().value();
+    operate(FooBar.FOO, 10L);
+    operate(FooBar.FOO, 30L);
+    operate(FooBar.BAR, 100L);
+    operate(FooBar.BAZ, 1000L);
+
+    assertThat(component(FooBar.FOO).latency().minimum().value(), is(10L));
+    assertThat(component(FooBar.BAR).latency().maximum().value(), is(100L));
+    assertThat(compound.minimum().value(), is(10L));
+    assertThat(compound.maximum().value(), is(100L));
+    assertThat(compound.samplingRate().value(), is(1.0));
+  }
+
+  @Test
+  public void testAverageIsWeightedByComponentCounts() {
+    Latency compound = operation.compound(EnumSet.of(FooBar.FOO, FooBar.BAR)).latency();
+    compound.average().value();
+    operate(FooBar.FOO, 10L);
+    operate(FooBar.FOO, 30L);
+    operate(FooBar.BAR, 100L);
+
+    EventParameterSimpleMovingAverage foo = latency(FooBar.FOO).movingAverage();
+    EventParameterSimpleMovingAverage bar = latency(FooBar.BAR).movingAverage();
+    assertThat(foo.total() + bar.total(), is(140L));
+    assertThat(foo.count() + bar.count(), is(3L));
+    assertThat(compound.average().value(), is(140.0 / 3));
+    assertThat(compound.average().value() < (foo.average() + bar.average()) / 2, is(true));
+  }
+
+  @Test
+  public void testPercentilesMergeTheComponentHistograms() {
+    Latency compound = operation.compound(EnumSet.of(FooBar.FOO, FooBar.BAR)).latency();
+    compound.percentile(50.0).value();
+    operate(FooBar.FOO, 10L);
+    operate(FooBar.FOO, 30L);
+    operate(FooBar.BAR, 100L);
+
+    assertThat(compound.percentile(0.0).value(), is(component(FooBar.FOO).latency().percentile(0.0).value()));
+    assertThat(compound.percentile(50.0).value(), is(component(FooBar.FOO).latency().percentile(100.0).value()));
+    assertThat(compound.percentile(100.0).value(), is(component(FooBar.BAR).latency().percentile(100.0).value()));
+    assertThat(compound.percentile(100.0).value(), greaterThan(compound.percentile(50.0).value()));
+  }
+
+  private void operate(FooBar result, long latency) {
+    observer.begin();
+    time.advanceTime(latency, TimeUnit.NANOSECONDS);
+    observer.end(result);
+  }
+
+  private Result component(FooBar result) {
+    return operation.component(result);
+  }
+
+  private LatencyImpl<FooBar> latency(FooBar result) {
+    return ((ResultImpl<FooBar>) operation.component(result)).latencyImpl();
+  }
+
+  enum FooBar {
+    FOO, BAR, BAZ
+  }
+}
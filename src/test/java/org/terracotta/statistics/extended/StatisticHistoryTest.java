@@ -0,0 +1,79 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.extended;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.terracotta.statistics.ValueStatistic;
+import org.terracotta.statistics.archive.RollupArchive;
+
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+import static org.terracotta.util.RetryAssert.assertBy;
+
+public class StatisticHistoryTest {
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testHistoryIsNotRolledUpByDefault() {
+    StatisticHistory<Long> history = new StatisticHistory<Long>(constant(1L), executor, 10, 1, TimeUnit.MILLISECONDS, StatisticHistory.NO_ROLLUPS);
+    assertThat(history.rollups(0), is(empty()));
+  }
+
+  @Test
+  public void testConfiguredRollupsAreRecorded() {
+    final StatisticHistory<Long> history = new StatisticHistory<Long>(constant(3L), executor, 10, 1, TimeUnit.MILLISECONDS, StatisticHistory.NO_ROLLUPS);
+    history.adjust(10, 1, TimeUnit.MILLISECONDS, new RollupArchive.Resolution[] {new RollupArchive.Resolution(10, TimeUnit.MILLISECONDS, 5)});
+    history.startSampling();
+    try {
+      assertBy(10, TimeUnit.SECONDS, new Callable<List<RollupArchive.Rollup>>() {
+        @Override
+        public List<RollupArchive.Rollup> call() {
+          return history.rollups(0);
+        }
+      }, not(empty()));
+      assertThat(history.rollups(0).get(0).average(), is(3.0));
+      assertThat(history.rollups(1), is(empty()));
+      assertThat(history.history(), not(empty()));
+    } finally {
+      history.stopSampling();
+    }
+    assertThat(history.rollups(0), is(empty()));
+  }
+
+  private static ValueStatistic<Long> constant(final long value) {
+    return new ValueStatistic<Long>() {
+      @Override
+      public Long value() {
+        return value;
+      }
+    };
+  }
+}
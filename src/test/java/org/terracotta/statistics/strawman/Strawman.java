@@ -25,7 +25,7 @@ import org.terracotta.statistics.OperationStatistic;
 import org.terracotta.statistics.StatisticsManager;
 import org.terracotta.statistics.derived.LatencySampling;
 import org.terracotta.statistics.derived.MinMaxAverage;
-import org.terracotta.statistics.observer.ChainedEventObserver;
+import org.terracotta.statistics.observer.AbstractChainedEventObserver;
 import org.terracotta.statistics.strawman.Cache.GetResult;
 
 import static java.util.EnumSet.*;
@@ -63,7 +63,7 @@ public final class Strawman {
     System.err.println("MISSES      : " + getStatistic.count(GetResult.MISS));
     System.err.println("HIT LATENCY : " + hitLatencyStats.mean());
 
-    hitLatency.addDerivedStatistic(new ChainedEventObserver() {
+    hitLatency.addDerivedStatistic(new AbstractChainedEventObserver() {
 
       @Override
       public void event(long time, long ... parameters) {
@@ -0,0 +1,82 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class StripedCounterBlockTest {
+
+  @Test
+  public void testEmptyBlock() {
+    StripedCounterBlock block = new StripedCounterBlock(3);
+    assertThat(block.sum(), is(0L));
+    assertThat(block.sum(0), is(0L));
+    assertThat(block.sums(), is(new long[3]));
+  }
+
+  @Test
+  public void testCountersAreIndependent() {
+    StripedCounterBlock block = new StripedCounterBlock(3);
+    block.increment(0);
+    block.add(2, 5L);
+    block.increment(2);
+    assertThat(block.sum(0), is(1L));
+    assertThat(block.sum(1), is(0L));
+    assertThat(block.sum(2), is(6L));
+    assertThat(block.sum(), is(7L));
+    assertThat(block.sums(), is(new long[] {1L, 0L, 6L}));
+  }
+
+  @Test
+  public void testContendedUpdatesAreNotLost() throws Exception {
+    final StripedCounterBlock block = new StripedCounterBlock(2);
+    final int threads = 8;
+    final int increments = 100000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+      for (int i = 0; i < threads; i++) {
+        final int index = i & 1;
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int j = 0; j < increments; j++) {
+              block.increment(index);
+            }
+            return null;
+          }
+        });
+      }
+      for (Future<Void> f : executor.invokeAll(tasks)) {
+        f.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(block.sum(0), is((long) (threads / 2) * increments));
+    assertThat(block.sum(1), is((long) (threads / 2) * increments));
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * All content copyright Terracotta, Inc., unless otherwise indicated.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terracotta.statistics.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.terracotta.statistics.util.StripedSummaryStatistics.Summary;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.number.IsCloseTo.closeTo;
+import static org.junit.Assert.assertThat;
+
+public class StripedSummaryStatisticsTest {
+
+  @Test
+  public void testEmptySummary() {
+    Summary summary = new StripedSummaryStatistics().summary();
+    assertThat(summary.count(), is(0L));
+    assertThat(Double.isNaN(summary.mean()), is(true));
+    assertThat(Double.isNaN(summary.variance()), is(true));
+  }
+
+  @Test
+  public void testContendedUpdatesMergeCorrectly() throws Exception {
+    final StripedSummaryStatistics statistics = new StripedSummaryStatistics();
+    final int threads = 8;
+    final int values = 100000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+      for (int i = 0; i < threads; i++) {
+        final long value = i;
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int j = 0; j < values; j++) {
+              statistics.add(value);
+            }
+            return null;
+          }
+        });
+      }
+      for (Future<Void> f : executor.invokeAll(tasks)) {
+        f.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    Summary summary = statistics.summary();
+    assertThat(summary.count(), is((long) threads * values));
+    assertThat(summary.minimum(), is(0L));
+    assertThat(summary.maximum(), is((long) threads - 1));
+    assertThat(summary.mean(), closeTo(3.5, 0.000001));
+    assertThat(summary.variance(), closeTo(5.25, 0.000001));
+  }
+}